@@ -0,0 +1,56 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the memory allocated by the physics tick with the per-thread allocation counter of the JVM.
+ * After warm-up, PhysicEngine.update(), including the contacts of a tracked hero, and
+ * HeroWithHealth.checkCollisionWithObstacles() must not allocate.
+ *
+ * Usage: java AllocationBenchmark [levelSize] [spriteCount] [ticks]
+ */
+public class AllocationBenchmark {
+
+    public static void main(String[] args) {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int spriteCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        ArrayList<Sprite> solids = CollisionBenchmark.generateLevel(levelSize, new Random(42));
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setEnvironment(solids);
+        for (DynamicSprite sprite : CollisionBenchmark.generateMovers(levelSize, spriteCount, new Random(7))) {
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        HeroWithHealth hero = new HeroWithHealth(64, 64, null, 48, 50, null);
+        physicEngine.addToMovingSpriteList(hero);
+        physicEngine.trackContacts(hero);
+        physicEngine.addContactListener(new DamageListener());
+        ArrayList<Sprite> neighbourhood = new ArrayList<>(solids.subList(0, Math.min(solids.size(), 1000)));
+
+        for (int tick = 0; tick < ticks; tick++) {
+            physicEngine.update(); // Warm up so that the measured ticks run JIT-compiled code
+            hero.checkCollisionWithObstacles(neighbourhood);
+            hero.heal(100);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int tick = 0; tick < ticks; tick++) {
+            physicEngine.update();
+            hero.checkCollisionWithObstacles(neighbourhood);
+            hero.heal(100);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.printf("%d ticks, %d sprites: %d bytes allocated (%.3f bytes/tick)%n",
+                ticks, spriteCount + 1, allocated, allocated / (double) ticks);
+        if (allocated / (double) ticks >= 1) {
+            System.out.println("FAILED: the physics tick allocates");
+            System.exit(1);
+        }
+    }
+}
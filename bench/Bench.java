@@ -0,0 +1,186 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark harness following the JMH methodology: each benchmark and each combination of parameters runs in
+ * its own forked JVM, with warm-up iterations followed by measured iterations of fixed duration. The result is
+ * the average time per operation with a 99.9% confidence interval over the measured iterations.
+ *
+ * Usage: java Bench [options]   or   mvn -Pbench compile exec:java -Dexec.args="[options]"
+ *   --benchmark name,...   benchmarks to run (default: all), see BENCHMARKS
+ *   --levelSize n,...      level sizes in tiles (default 100,1000)
+ *   --spriteCount n,...    numbers of dynamic sprites (default 1,1000)
+ *   --warmup n             warm-up iterations (default 5)
+ *   --iterations n         measured iterations (default 10)
+ *   --time ms              duration of an iteration (default 500)
+ *   --forks n              forked JVMs per combination, 0 to run in this JVM (default 1)
+ */
+public class Bench {
+    /**
+     * A benchmark: set up once for a combination of parameters, then its operation is timed repeatedly.
+     */
+    public interface Case {
+        void setup(int levelSize, int spriteCount) throws Exception;
+
+        /**
+         * Runs the measured operation once.
+         *
+         * @return A value depending on the work done, consumed so that the JIT cannot remove the operation.
+         */
+        long operation();
+    }
+
+    static final Map<String, Supplier<Case>> BENCHMARKS = new LinkedHashMap<>();
+
+    static {
+        BENCHMARKS.put("moveIfPossible", Benchmarks.MoveIfPossible::new);
+        BENCHMARKS.put("checkCollisionWithObstacles", Benchmarks.CheckCollisionWithObstacles::new);
+        BENCHMARKS.put("playgroundConstruction", Benchmarks.PlaygroundConstruction::new);
+        BENCHMARKS.put("renderPaint", Benchmarks.RenderPaint::new);
+    }
+
+    private static long sink; // Consumes the results of the operations
+
+    public static void main(String[] args) throws Exception {
+        List<String> benchmarks = new ArrayList<>(BENCHMARKS.keySet());
+        int[] levelSizes = {100, 1000};
+        int[] spriteCounts = {1, 1000};
+        int warmup = 5;
+        int iterations = 10;
+        long iterationMillis = 500;
+        int forks = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--benchmark" -> benchmarks = List.of(args[++i].split(","));
+                case "--levelSize" -> levelSizes = parseInts(args[++i]);
+                case "--spriteCount" -> spriteCounts = parseInts(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--time" -> iterationMillis = Long.parseLong(args[++i]);
+                case "--forks" -> forks = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%-30s %10s %12s %16s %12s%n",
+                "Benchmark", "levelSize", "spriteCount", "Score (us/op)", "Error");
+        for (String benchmark : benchmarks) {
+            if (!BENCHMARKS.containsKey(benchmark)) {
+                throw new IllegalArgumentException("Unknown benchmark " + benchmark + ", expected one of "
+                        + BENCHMARKS.keySet());
+            }
+            for (int levelSize : levelSizes) {
+                for (int spriteCount : spriteCounts) {
+                    ArrayList<Double> samples = new ArrayList<>();
+                    if (forks == 0) {
+                        samples.addAll(measure(benchmark, levelSize, spriteCount, warmup, iterations, iterationMillis));
+                    }
+                    for (int fork = 0; fork < forks; fork++) {
+                        samples.addAll(fork(benchmark, levelSize, spriteCount, warmup, iterations, iterationMillis));
+                    }
+                    report(benchmark, levelSize, spriteCount, samples);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one combination in this JVM and returns the time per operation of each measured iteration, in ns.
+     */
+    static List<Double> measure(String benchmark, int levelSize, int spriteCount, int warmup, int iterations,
+                                long iterationMillis) throws Exception {
+        Case benchmarkCase = BENCHMARKS.get(benchmark).get();
+        benchmarkCase.setup(levelSize, spriteCount);
+        ArrayList<Double> samples = new ArrayList<>();
+        for (int iteration = 0; iteration < warmup + iterations; iteration++) {
+            long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+            long operations = 0;
+            long start = System.nanoTime();
+            long now;
+            do {
+                sink += benchmarkCase.operation();
+                operations++;
+                now = System.nanoTime();
+            } while (now < deadline);
+            if (iteration >= warmup) {
+                samples.add((now - start) / (double) operations);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Runs one combination in a fresh JVM, so that the profile of a benchmark does not leak into the next one.
+     */
+    private static List<Double> fork(String benchmark, int levelSize, int spriteCount, int warmup, int iterations,
+                                     long iterationMillis) throws Exception {
+        String classPath = new File(Bench.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", classPath, "Bench$Fork", benchmark,
+                String.valueOf(levelSize), String.valueOf(spriteCount), String.valueOf(warmup),
+                String.valueOf(iterations), String.valueOf(iterationMillis))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        ArrayList<Double> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("sample ")) {
+                    samples.add(Double.parseDouble(line.substring(7)));
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Fork of " + benchmark + " failed");
+        }
+        return samples;
+    }
+
+    /**
+     * Entry point of the forked JVMs: prints one "sample" line per measured iteration.
+     */
+    public static class Fork {
+        public static void main(String[] args) throws Exception {
+            System.setProperty("java.awt.headless", "true");
+            for (double sample : measure(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), Integer.parseInt(args[4]), Long.parseLong(args[5]))) {
+                System.out.println("sample " + sample);
+            }
+            if (sink == Long.MIN_VALUE) {
+                System.err.println(sink); // Never true: only makes the results of the operations observable
+            }
+        }
+    }
+
+    private static void report(String benchmark, int levelSize, int spriteCount, List<Double> samples) {
+        double mean = 0;
+        for (double sample : samples) {
+            mean += sample;
+        }
+        mean /= samples.size();
+        double variance = 0;
+        for (double sample : samples) {
+            variance += (sample - mean) * (sample - mean);
+        }
+        double error = samples.size() > 1
+                ? 3.29 * Math.sqrt(variance / (samples.size() - 1)) / Math.sqrt(samples.size()) : Double.NaN;
+        System.out.printf(Locale.ROOT, "%-30s %10d %12d %16.3f %12.3f%n",
+                benchmark, levelSize, spriteCount, mean / 1000, error / 1000);
+    }
+
+    private static int[] parseInts(String values) {
+        String[] fields = values.split(",");
+        int[] result = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            result[i] = Integer.parseInt(fields[i].trim());
+        }
+        return result;
+    }
+}
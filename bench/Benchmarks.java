@@ -0,0 +1,151 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The benchmarks run by Bench, each one parameterized by level size (in tiles) and number of dynamic sprites.
+ * Levels are generated with a fixed seed, so every run measures the same work.
+ */
+public class Benchmarks {
+
+    /**
+     * Generates a level file of levelSize x levelSize tiles and loads it.
+     */
+    static Playground generatePlayground(int levelSize) throws Exception {
+        File levelFile = File.createTempFile("level", ".txt");
+        levelFile.deleteOnExit();
+        ChunkedLevelBenchmark.writeTextLevel(levelFile, levelSize, new Random(42));
+        return new Playground(levelFile.getPath());
+    }
+
+    /**
+     * Creates dynamic sprites on free tiles of a level, each one walking in a random direction.
+     */
+    static ArrayList<DynamicSprite> generateSprites(TileMap tileMap, int spriteCount, Image image, Random random) {
+        ArrayList<DynamicSprite> sprites = new ArrayList<>();
+        Direction[] directions = Direction.values();
+        while (sprites.size() < spriteCount) {
+            int column = random.nextInt(tileMap.getColumns());
+            int row = random.nextInt(tileMap.getRows());
+            if (!tileMap.isSolid(column, row)) {
+                DynamicSprite sprite = new DynamicSprite(column * tileMap.getTileWidth() + 8,
+                        row * tileMap.getTileHeight() + 7, image, 48, 50);
+                sprite.setDirection(directions[random.nextInt(directions.length)]);
+                sprites.add(sprite);
+            }
+        }
+        return sprites;
+    }
+
+    /**
+     * One physics tick: DynamicSprite.moveIfPossible for every sprite, through PhysicEngine.update().
+     */
+    static class MoveIfPossible implements Bench.Case {
+        private PhysicEngine physicEngine;
+        private ArrayList<DynamicSprite> sprites;
+        private final Random random = new Random(7);
+
+        @Override
+        public void setup(int levelSize, int spriteCount) throws Exception {
+            Playground level = generatePlayground(levelSize);
+            physicEngine = new PhysicEngine();
+            physicEngine.setTileMap(level.getTileMap());
+            sprites = generateSprites(level.getTileMap(), spriteCount, null, random);
+            for (DynamicSprite sprite : sprites) {
+                physicEngine.addToMovingSpriteList(sprite);
+            }
+        }
+
+        @Override
+        public long operation() {
+            // Turn one sprite per tick so that sprites do not all end up blocked against walls
+            sprites.get(random.nextInt(sprites.size())).setDirection(Direction.values()[random.nextInt(4)]);
+            physicEngine.update();
+            return (long) sprites.get(0).getX();
+        }
+    }
+
+    /**
+     * HeroWithHealth.checkCollisionWithObstacles against the solid tiles of the level, for spriteCount heroes.
+     */
+    static class CheckCollisionWithObstacles implements Bench.Case {
+        private ArrayList<Sprite> environment;
+        private ArrayList<HeroWithHealth> heroes;
+
+        @Override
+        public void setup(int levelSize, int spriteCount) throws Exception {
+            Playground level = generatePlayground(levelSize);
+            environment = level.getSolidSpriteList();
+            heroes = new ArrayList<>();
+            for (DynamicSprite sprite : generateSprites(level.getTileMap(), spriteCount, null, new Random(7))) {
+                heroes.add(new HeroWithHealth((int) sprite.getX(), (int) sprite.getY(), null, 48, 50, null));
+            }
+        }
+
+        @Override
+        public long operation() {
+            long health = 0;
+            for (HeroWithHealth hero : heroes) {
+                hero.checkCollisionWithObstacles(environment);
+                health += hero.getHealth();
+                hero.heal(100);
+            }
+            return health;
+        }
+    }
+
+    /**
+     * Playground construction from a text level file. The sprite count does not apply.
+     */
+    static class PlaygroundConstruction implements Bench.Case {
+        private String pathName;
+
+        @Override
+        public void setup(int levelSize, int spriteCount) throws Exception {
+            File levelFile = File.createTempFile("level", ".txt");
+            levelFile.deleteOnExit();
+            ChunkedLevelBenchmark.writeTextLevel(levelFile, levelSize, new Random(42));
+            pathName = levelFile.getPath();
+        }
+
+        @Override
+        public long operation() {
+            return new Playground(pathName).getTileMap().getColumns();
+        }
+    }
+
+    /**
+     * RenderEngine.paint of a 1800x1056 view following a hero, into an offscreen image.
+     */
+    static class RenderPaint implements Bench.Case {
+        private RenderEngine renderEngine;
+        private Graphics2D graphics;
+
+        @Override
+        public void setup(int levelSize, int spriteCount) throws Exception {
+            Playground level = generatePlayground(levelSize);
+            Image heroSheet = Assets.getImage("./img/heroTileSheetLowRes.png");
+            renderEngine = new RenderEngine(null);
+            renderEngine.setSize(1800, 1056);
+            renderEngine.setTileMap(level.getTileMap());
+            ArrayList<DynamicSprite> sprites = generateSprites(level.getTileMap(), spriteCount, heroSheet,
+                    new Random(7));
+            for (DynamicSprite sprite : sprites) {
+                renderEngine.addToRenderList(sprite);
+            }
+            Camera camera = new Camera();
+            camera.follow(sprites.get(0));
+            renderEngine.setCamera(camera);
+            BufferedImage offscreen = Assets.createCompatibleImage(1800, 1056);
+            graphics = offscreen.createGraphics();
+        }
+
+        @Override
+        public long operation() {
+            renderEngine.paint(graphics);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Walks a sprite across a generated level streamed by a ChunkedPlayground and reports the used heap,
+ * which must stay bounded by the resident chunk limit whatever the size of the level.
+ *
+ * Usage: java ChunkedLevelBenchmark [levelSize] [chunkSize] [maxResidentChunks]
+ */
+public class ChunkedLevelBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int maxResidentChunks = args.length > 2 ? Integer.parseInt(args[2]) : 25;
+
+        File levelFile = File.createTempFile("level", ".txt");
+        levelFile.deleteOnExit();
+        writeTextLevel(levelFile, levelSize, new Random(42));
+
+        ChunkedPlayground level = new ChunkedPlayground(levelFile.getPath(), chunkSize, maxResidentChunks);
+        DynamicSprite walker = new DynamicSprite(0, 0, null, 48, 50);
+        level.follow(walker, 1);
+        long maxUsedHeap = 0;
+        long start = System.nanoTime();
+        int steps = 200;
+        for (int step = 0; step <= steps; step++) {
+            // Walk along the diagonal of the level
+            walker.setPosition((double) level.getLevelWidth() * step / steps,
+                    (double) level.getLevelHeight() * step / steps);
+            level.update();
+            if (step % 20 == 0) {
+                System.gc();
+                Runtime runtime = Runtime.getRuntime();
+                maxUsedHeap = Math.max(maxUsedHeap, runtime.totalMemory() - runtime.freeMemory());
+            }
+        }
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Level %dx%d: %d chunks loaded, %d evicted, %d resident, max used heap %.1f MB, %.0f ms%n",
+                levelSize, levelSize, level.getLoadCount(), level.getEvictionCount(),
+                level.getResidentChunkCount(), maxUsedHeap / 1e6, elapsedMs);
+    }
+
+    /**
+     * Writes a level in the text format read by Playground: trees on the borders, rocks and grass inside.
+     */
+    static void writeTextLevel(File file, int levelSize, Random random) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            byte[] line = new byte[levelSize + 1];
+            for (int row = 0; row < levelSize; row++) {
+                for (int column = 0; column < levelSize; column++) {
+                    boolean border = row == 0 || column == 0 || row == levelSize - 1 || column == levelSize - 1;
+                    line[column] = (byte) (border ? 'T' : random.nextInt(10) == 0 ? 'R' : ' ');
+                }
+                line[levelSize] = '\n';
+                output.write(line);
+            }
+        }
+    }
+}
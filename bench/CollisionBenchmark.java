@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Before/after benchmark of the collision checks of DynamicSprite.
+ * Generates a square level of solid tiles and moves thousands of dynamic sprites through it, first with the
+ * linear scan of the environment list, then with the spatial grid owned by the PhysicEngine.
+ *
+ * Usage: java CollisionBenchmark [levelSize] [spriteCount]
+ */
+public class CollisionBenchmark {
+    private static final int TILE_SIZE = 64;
+
+    public static void main(String[] args) {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int spriteCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        ArrayList<Sprite> solids = generateLevel(levelSize, new Random(42));
+        System.out.println("Level: " + levelSize + "x" + levelSize + " tiles, " + solids.size()
+                + " solid tiles, " + spriteCount + " dynamic sprites");
+
+        // Before: every mover scans the whole environment list
+        ArrayList<DynamicSprite> linearMovers = generateMovers(levelSize, spriteCount, new Random(7));
+        int linearTicks = 3;
+        long start = System.nanoTime();
+        for (int tick = 0; tick < linearTicks; tick++) {
+            for (DynamicSprite sprite : linearMovers) {
+                sprite.moveIfPossible(solids, false);
+            }
+        }
+        double linearMs = (System.nanoTime() - start) / 1e6 / linearTicks;
+        System.out.printf("Linear scan : %10.3f ms/tick%n", linearMs);
+
+        // After: the physic engine only queries the cells overlapped by the moved hitbox
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setEnvironment(solids);
+        for (DynamicSprite sprite : generateMovers(levelSize, spriteCount, new Random(7))) {
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        for (int tick = 0; tick < 200; tick++) {
+            physicEngine.update(); // Warm up
+        }
+        int gridTicks = 1000;
+        start = System.nanoTime();
+        for (int tick = 0; tick < gridTicks; tick++) {
+            physicEngine.update();
+        }
+        double gridMs = (System.nanoTime() - start) / 1e6 / gridTicks;
+        System.out.printf("Spatial grid: %10.3f ms/tick (x%.0f)%n", gridMs, linearMs / gridMs);
+    }
+
+    /**
+     * Generates the solid tiles of a level surrounded by trees, with rocks scattered on 10% of the tiles.
+     */
+    static ArrayList<Sprite> generateLevel(int levelSize, Random random) {
+        ArrayList<Sprite> solids = new ArrayList<>();
+        for (int row = 0; row < levelSize; row++) {
+            for (int column = 0; column < levelSize; column++) {
+                boolean border = row == 0 || column == 0 || row == levelSize - 1 || column == levelSize - 1;
+                if (border || random.nextInt(10) == 0) {
+                    solids.add(new SolidSprite(column * TILE_SIZE, row * TILE_SIZE, null, TILE_SIZE, TILE_SIZE));
+                }
+            }
+        }
+        return solids;
+    }
+
+    /**
+     * Generates dynamic sprites spread over the level, each one walking in a random direction.
+     */
+    static ArrayList<DynamicSprite> generateMovers(int levelSize, int spriteCount, Random random) {
+        ArrayList<DynamicSprite> movers = new ArrayList<>();
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < spriteCount; i++) {
+            double x = (1 + random.nextInt(levelSize - 2)) * TILE_SIZE + 8;
+            double y = (1 + random.nextInt(levelSize - 2)) * TILE_SIZE + 7;
+            DynamicSprite sprite = new DynamicSprite(x, y, null, 48, 50);
+            sprite.setDirection(directions[random.nextInt(directions.length)]);
+            movers.add(sprite);
+        }
+        return movers;
+    }
+}
@@ -0,0 +1,85 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares, in passive mode, repainting the whole panel on every frame with repainting only the dirty region
+ * computed by RenderEngine.update(). Frames are produced at 60 per second for real, so that the animations
+ * advance like in the game, and only the time spent preparing and painting them is measured.
+ * Two scenes are measured: an idle hero (speed 0, only its animation changes), and an idle hero watching
+ * wandering sprites.
+ *
+ * Usage: java DirtyRectBenchmark [frames] [wanderers]
+ */
+public class DirtyRectBenchmark {
+    private static final int VIEW_WIDTH = 1800;
+    private static final int VIEW_HEIGHT = 1056;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 180;
+        int wanderers = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Playground level = Benchmarks.generatePlayground(100);
+
+        System.out.printf("%d frames at 60 FPS, %dx%d view%n", frames, VIEW_WIDTH, VIEW_HEIGHT);
+        run("idle hero", level, 0, frames);
+        run("idle hero, " + wanderers + " wanderers", level, wanderers, frames);
+    }
+
+    private static void run(String name, Playground level, int wandererCount, int frames) throws Exception {
+        Image heroSheet = Assets.getImage("./img/heroTileSheetLowRes.png");
+        HeroWithHealth hero = new HeroWithHealth(64 * 10, 64 * 10, heroSheet, 48, 50,
+                Assets.getImage("./img/life_bar_remove.png"));
+        hero.setSpeed(0);
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(level.getTileMap());
+        physicEngine.addToMovingSpriteList(hero);
+        RenderEngine renderEngine = new RenderEngine(null);
+        renderEngine.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        renderEngine.setTileMap(level.getTileMap());
+        renderEngine.addToRenderList(hero);
+        ArrayList<DynamicSprite> wanderers = Benchmarks.generateSprites(level.getTileMap(), wandererCount, heroSheet,
+                new Random(7));
+        for (DynamicSprite wanderer : wanderers) {
+            physicEngine.addToMovingSpriteList(wanderer);
+            renderEngine.addToRenderList(wanderer);
+        }
+        Camera camera = new Camera();
+        camera.follow(hero);
+        renderEngine.setCamera(camera);
+        Graphics2D graphics = Assets.createCompatibleImage(VIEW_WIDTH, VIEW_HEIGHT).createGraphics();
+
+        long fullNanos = 0;
+        long dirtyNanos = 0;
+        long dirtyPixels = 0;
+        long skippedBefore = renderEngine.getSkippedFrames();
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame % 3 == 0) { // 20 ticks per second
+                physicEngine.update();
+                renderEngine.captureSnapshot(frame / 3, false);
+            }
+            renderEngine.setInterpolation((frame % 3) / 3.0);
+
+            long start = System.nanoTime();
+            renderEngine.update();
+            Rectangle dirty = renderEngine.getDirtyRegion();
+            if (dirty != null) {
+                graphics.setClip(dirty);
+                renderEngine.paint(graphics);
+                dirtyPixels += (long) dirty.width * dirty.height;
+            }
+            dirtyNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            graphics.setClip(null);
+            renderEngine.paint(graphics); // What repaint() of the whole panel costs
+            fullNanos += System.nanoTime() - start;
+
+            Thread.sleep(16);
+        }
+        long skipped = renderEngine.getSkippedFrames() - skippedBefore;
+        System.out.printf("%-28s full repaint %7.3f ms/frame | dirty rectangles %7.3f ms/frame, %d skipped frames, "
+                        + "%.1f%% of the pixels repainted%n", name, fullNanos / 1e6 / frames, dirtyNanos / 1e6 / frames,
+                skipped, 100.0 * dirtyPixels / ((double) frames * VIEW_WIDTH * VIEW_HEIGHT));
+    }
+}
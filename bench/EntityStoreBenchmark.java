@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Moves a crowd of sprites with the PhysicEngine, whose tick walks the arrays of its EntityStore, and reports
+ * the time per tick and the heap used per moving sprite, then checks that every sprite reads its position
+ * from the store. One in ten moving sprites is also an obstacle, like in ParallelPhysicsBenchmark.
+ *
+ * Usage: java EntityStoreBenchmark [levelSize] [spriteCount] [ticks]
+ */
+public class EntityStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int spriteCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Playground level = Benchmarks.generatePlayground(levelSize);
+        TileMap tileMap = level.getTileMap();
+
+        long heapBefore = usedHeap();
+        ArrayList<DynamicSprite> sprites = Benchmarks.generateSprites(tileMap, spriteCount, null, new Random(7));
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(tileMap);
+        for (int i = 0; i < sprites.size(); i++) {
+            physicEngine.addToMovingSpriteList(sprites.get(i));
+            if (i % 10 == 0) {
+                physicEngine.addToEnvironmentList(sprites.get(i));
+            }
+        }
+        long spriteBytes = usedHeap() - heapBefore;
+
+        long start = 0;
+        for (int tick = 0; tick < 2 * ticks; tick++) { // The first half is warm-up
+            if (tick == ticks) {
+                start = System.nanoTime();
+            }
+            if (tick % 10 == 0) {
+                turn(sprites, tick);
+            }
+            physicEngine.update();
+        }
+        double tickMs = (System.nanoTime() - start) / 1e6 / ticks;
+
+        EntityStore store = physicEngine.getEntities();
+        for (int i = 0; i < sprites.size(); i++) {
+            DynamicSprite sprite = sprites.get(i);
+            if (store.getSprite(i) != sprite || sprite.getX() != store.getX(i) || sprite.getY() != store.getY(i)) {
+                throw new IllegalStateException("Sprite " + i + " is not a view of entity " + i);
+            }
+        }
+        System.out.printf("%d sprites, one in ten being an obstacle, every sprite a view of its entity%n",
+                spriteCount);
+        System.out.printf("PhysicEngine over the EntityStore: %8.3f ms/tick, %6.1f bytes/sprite%n",
+                tickMs, (double) spriteBytes / spriteCount);
+    }
+
+    /**
+     * Changes the direction of some sprites, deterministically.
+     */
+    private static void turn(ArrayList<DynamicSprite> sprites, int tick) {
+        Random random = new Random(tick);
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < sprites.size(); i += 7) {
+            sprites.get(i).setDirection(directions[random.nextInt(directions.length)]);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
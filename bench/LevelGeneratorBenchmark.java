@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Generates the same level with several numbers of threads, into a stream that only computes a checksum of
+ * the bytes, and reports the throughput of each run and the heap used. Every run must give the same bytes.
+ *
+ * Usage: java LevelGeneratorBenchmark [levelSize] [threads,...]   (20000 gives a 400M-tile level)
+ */
+public class LevelGeneratorBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+        String[] threadCounts = (args.length > 1 ? args[1] : "1,2,4," + Runtime.getRuntime().availableProcessors())
+                .split(",");
+        LevelGenerator generator = new LevelGenerator(42, levelSize, levelSize, 48);
+        generator.writeText(new ChecksumStream(), 1); // Warm-up
+
+        long expected = -1;
+        boolean identical = true;
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount);
+            ChecksumStream output = new ChecksumStream();
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            generator.writeText(output, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.printf("%2d threads: %.2f s, %.0f M tiles/s, %.0f MB/s, heap grew by %.1f MB, crc %08x%n",
+                    threads, seconds, (double) levelSize * levelSize / seconds / 1e6,
+                    output.size / seconds / 1e6, (usedAfter - usedBefore) / 1e6, output.crc.getValue());
+            if (expected >= 0 && output.crc.getValue() != expected) {
+                identical = false;
+            }
+            expected = output.crc.getValue();
+        }
+        System.out.println("Identical output for every thread count: " + identical);
+    }
+
+    /**
+     * Discards the bytes written to it, keeping their number and checksum.
+     */
+    private static final class ChecksumStream extends OutputStream {
+        private final CRC32 crc = new CRC32();
+        private long size = 0;
+
+        @Override
+        public void write(int b) {
+            crc.update(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            crc.update(bytes, offset, length);
+            size += length;
+        }
+    }
+}
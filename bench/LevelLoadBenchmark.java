@@ -0,0 +1,53 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares the load time of a generated level in the text format and in the memory-mapped binary format.
+ *
+ * Usage: java LevelLoadBenchmark [levelSize]   (10000 gives a 100M-tile level, run it with -Xmx2g or more)
+ */
+public class LevelLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+
+        File textFile = File.createTempFile("level", ".txt");
+        File binaryFile = File.createTempFile("level", ".dcl");
+        textFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+        ChunkedLevelBenchmark.writeTextLevel(textFile, levelSize, new Random(42));
+
+        Playground tileTypes = new Playground();
+        long start = System.nanoTime();
+        BinaryLevel.convert(textFile.getPath(), binaryFile.getPath(), tileTypes.getPalette(),
+                tileTypes.getTileWidth(), tileTypes.getTileHeight());
+        double convertMs = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        Playground textLevel = new Playground(textFile.getPath());
+        double textMs = (System.nanoTime() - start) / 1e6;
+        TileMap textTiles = textLevel.getTileMap();
+        textLevel = null;
+
+        start = System.nanoTime();
+        Playground binaryLevel = new Playground(binaryFile.getPath());
+        double binaryMs = (System.nanoTime() - start) / 1e6;
+
+        // Both loaders must give the same tiles
+        TileMap binaryTiles = binaryLevel.getTileMap();
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            int column = random.nextInt(levelSize);
+            int row = random.nextInt(levelSize);
+            if (textTiles.getTileType(column, row).getSymbol() != binaryTiles.getTileType(column, row).getSymbol()) {
+                throw new IllegalStateException("Tile " + column + "," + row + " differs");
+            }
+        }
+
+        System.out.printf("Level %dx%d (%d tiles)%n", levelSize, levelSize, (long) levelSize * levelSize);
+        System.out.printf("Conversion  : %10.1f ms%n", convertMs);
+        System.out.printf("Text load   : %10.1f ms%n", textMs);
+        System.out.printf("Binary load : %10.1f ms%n", binaryMs);
+    }
+}
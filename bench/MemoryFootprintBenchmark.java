@@ -0,0 +1,44 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the heap used by a generated level stored as one Sprite per tile and as a TileMap.
+ *
+ * Usage: java MemoryFootprintBenchmark [levelSize]
+ */
+public class MemoryFootprintBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        File levelFile = File.createTempFile("level", ".txt");
+        levelFile.deleteOnExit();
+        ChunkedLevelBenchmark.writeTextLevel(levelFile, levelSize, new Random(42));
+        long tileCount = (long) levelSize * levelSize;
+
+        long baseline = usedHeap();
+        Playground level = new Playground(levelFile.getPath());
+        long tileMapBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        ArrayList<Sprite> sprites = level.getTileMap().toSprites(false);
+        long spriteBytes = usedHeap() - baseline;
+
+        System.out.printf("Level %dx%d (%d tiles)%n", levelSize, levelSize, tileCount);
+        System.out.printf("One Sprite per tile: %10.1f MB (%.1f bytes/tile)%n", spriteBytes / 1e6,
+                spriteBytes / (double) tileCount);
+        System.out.printf("TileMap            : %10.1f MB (%.1f bytes/tile)%n", tileMapBytes / 1e6,
+                tileMapBytes / (double) tileCount);
+        System.out.println(sprites.size() + " sprites, " + level.getTileMap().getColumns() + " columns"); // Keep both alive
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
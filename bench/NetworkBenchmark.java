@@ -0,0 +1,94 @@
+import java.awt.event.KeyEvent;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+
+/**
+ * Runs a NetworkServer and many simulated NetworkClients on the loopback interface, the clients pressing
+ * random keys like the HeadlessRunner, and reports the bandwidth per client, the size of full and delta
+ * snapshots, the duration of the server ticks, the round trip of a command and the prediction corrections.
+ * All the clients are ticked by one thread at the tick rate of the server. A packet loss rate can be
+ * simulated on the clients, for both directions.
+ *
+ * Usage: java NetworkBenchmark [clientCount] [seconds] [npcCount] [lossRate]
+ */
+public class NetworkBenchmark {
+    private static final int TICK_RATE = 20;
+    private static final int[] RANDOM_KEYS = {KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT,
+            KeyEvent.VK_SHIFT, KeyEvent.VK_SPACE, KeyEvent.VK_H};
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int npcCount = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        double lossRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        SharedLevel level = SharedLevel.load("./data/level1.txt");
+        NetworkServer server = new NetworkServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), level,
+                npcCount, 42, false, true, TICK_RATE, null);
+        server.setMaxConnectionsPerHost(clientCount); // Every client comes from the loopback address
+        server.start();
+        NetworkClient[] clients = new NetworkClient[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new NetworkClient(server.getLocalAddress(), level, null, null, null);
+            if (lossRate > 0) {
+                clients[i].setPacketLoss(lossRate, i);
+            }
+        }
+        // The clients do not wait for the server: the first commands are predicted from the starting position,
+        // and sent once the server answered the CONNECT datagram of the first tick
+
+        Random random = new Random(42);
+        long tickNanos = 1_000_000_000L / TICK_RATE;
+        long ticks = (long) seconds * TICK_RATE;
+        long start = System.nanoTime();
+        for (long tick = 0; tick < ticks; tick++) {
+            for (NetworkClient client : clients) {
+                if (random.nextInt(10) == 0) {
+                    client.submit(new InputCommand(random.nextBoolean(), RANDOM_KEYS[random.nextInt(RANDOM_KEYS.length)]));
+                }
+                client.tick();
+            }
+            long remaining = start + (tick + 1) * tickNanos - System.nanoTime();
+            if (remaining > 0) {
+                Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        LatencyHistogram serverTicks = server.getTickHistogram().copy();
+        server.close();
+
+        long snapshots = 0;
+        long received = 0;
+        long sent = 0;
+        long corrections = 0;
+        double maxCorrection = 0;
+        double roundTrip = 0;
+        for (NetworkClient client : clients) {
+            snapshots += client.getSnapshotCount();
+            received += client.getBytesReceived();
+            sent += client.getBytesSent();
+            corrections += client.getCorrectionCount();
+            maxCorrection = Math.max(maxCorrection, client.getMaxCorrection());
+            roundTrip += client.getMeanRoundTripNanos() / clientCount;
+            client.close();
+        }
+        long datagramsPerClient = (long) (TICK_RATE * elapsed);
+        System.out.printf("%d clients, %d NPCs each, %.0f%% packet loss, %.1f s at %d ticks/s%n", clientCount,
+                npcCount, lossRate * 100, elapsed, TICK_RATE);
+        System.out.printf("Snapshots: %,d full of %.1f bytes, %,d deltas of %.1f bytes, %,d received%n",
+                server.getFullSnapshotCount(), server.getMeanFullSnapshotSize(), server.getDeltaSnapshotCount(),
+                server.getMeanDeltaSnapshotSize(), snapshots);
+        System.out.printf("Per client: down %.0f B/s (%.0f B/s with UDP/IP headers), up %.0f B/s (%.0f B/s)%n",
+                received / elapsed / clientCount,
+                (received / elapsed + NetProtocol.UDP_OVERHEAD * snapshots / elapsed) / clientCount,
+                sent / elapsed / clientCount,
+                (sent / elapsed / clientCount + NetProtocol.UDP_OVERHEAD * datagramsPerClient / elapsed));
+        System.out.printf("Server tick: p50 %.3f ms, p99 %.3f ms, max %.3f ms, %d overruns, %d lost commands%n",
+                serverTicks.getPercentile(50) / 1e6, serverTicks.getPercentile(99) / 1e6, serverTicks.getMax() / 1e6,
+                server.getOverrunCount(), server.getLostCommandCount());
+        System.out.printf("Round trip %.1f ms, %,d prediction corrections (largest %.2f px)%n", roundTrip / 1e6,
+                corrections, maxCorrection);
+    }
+}
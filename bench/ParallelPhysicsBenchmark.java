@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Runs the same scenario with the sequential and the parallel physics, checks that every sprite ends in the
+ * same state, and reports the time per tick for increasing numbers of threads.
+ * Some of the moving sprites are also obstacles, so the resolution of conflicting moves is exercised.
+ *
+ * Usage: java ParallelPhysicsBenchmark [levelSize] [spriteCount] [ticks]
+ */
+public class ParallelPhysicsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int spriteCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Playground level = Benchmarks.generatePlayground(levelSize);
+
+        ArrayList<DynamicSprite> reference = null;
+        double sequentialMs = 0;
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 0; parallelism <= processors; parallelism = parallelism == 0 ? 1 : parallelism * 2) {
+            ArrayList<DynamicSprite> sprites = new ArrayList<>();
+            PhysicEngine physicEngine = createScenario(level, spriteCount, sprites);
+            physicEngine.setParallelism(parallelism);
+
+            long start = 0;
+            for (int tick = 0; tick < 2 * ticks; tick++) {
+                if (tick == ticks) {
+                    start = System.nanoTime(); // First half is warm-up
+                }
+                if (tick % 10 == 0) {
+                    turn(sprites, tick);
+                }
+                physicEngine.update();
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / ticks;
+            physicEngine.setParallelism(0);
+
+            if (reference == null) {
+                reference = sprites;
+                sequentialMs = ms;
+                System.out.printf("sequential : %8.3f ms/tick%n", ms);
+                continue;
+            }
+            for (int i = 0; i < sprites.size(); i++) {
+                DynamicSprite expected = reference.get(i);
+                DynamicSprite actual = sprites.get(i);
+                if (expected.getX() != actual.getX() || expected.getY() != actual.getY()) {
+                    throw new IllegalStateException("Sprite " + i + " differs from the sequential mode");
+                }
+            }
+            System.out.printf("%2d threads : %8.3f ms/tick (x%.2f), same result as sequential%n",
+                    parallelism, ms, sequentialMs / ms);
+        }
+    }
+
+    /**
+     * Creates an engine with spriteCount moving sprites, one in ten being an obstacle for the others.
+     */
+    private static PhysicEngine createScenario(Playground level, int spriteCount, ArrayList<DynamicSprite> sprites) {
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(level.getTileMap());
+        sprites.addAll(Benchmarks.generateSprites(level.getTileMap(), spriteCount, null, new Random(7)));
+        for (int i = 0; i < sprites.size(); i++) {
+            physicEngine.addToMovingSpriteList(sprites.get(i));
+            if (i % 10 == 0) {
+                physicEngine.addToEnvironmentList(sprites.get(i));
+            }
+        }
+        return physicEngine;
+    }
+
+    /**
+     * Changes the direction of some sprites, deterministically.
+     */
+    private static void turn(ArrayList<DynamicSprite> sprites, int tick) {
+        Random random = new Random(tick);
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < sprites.size(); i += 7) {
+            sprites.get(i).setDirection(directions[random.nextInt(directions.length)]);
+        }
+    }
+}
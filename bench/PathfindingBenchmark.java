@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the pathfinding: the cost of a tick of a ChaseSystem steering thousands of chasers towards a
+ * walking hero, and A* queries with and without the path cache. Every A* path is checked to be as long as
+ * the distance given by a flow field towards the same goal.
+ *
+ * Usage: java PathfindingBenchmark [levelSize] [chasers] [ticks]
+ */
+public class PathfindingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int chaserCount = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        Playground level = Benchmarks.generatePlayground(levelSize);
+        TileMap tileMap = level.getTileMap();
+        NavigationGrid grid = new NavigationGrid(tileMap);
+
+        // Chasers following a hero walking around the level
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(tileMap);
+        Random random = new Random(7);
+        DynamicSprite hero = Benchmarks.generateSprites(tileMap, 1, null, random).get(0);
+        physicEngine.addToMovingSpriteList(hero);
+        ChaseSystem chaseSystem = new ChaseSystem(grid, Integer.MAX_VALUE);
+        chaseSystem.setTarget(hero);
+        ArrayList<DynamicSprite> chasers = Benchmarks.generateSprites(tileMap, chaserCount, null, random);
+        for (DynamicSprite chaser : chasers) {
+            chaseSystem.addChaser(chaser);
+            physicEngine.addToMovingSpriteList(chaser);
+        }
+        long chaseNanos = 0;
+        long physicsNanos = 0;
+        for (int tick = 0; tick < ticks; tick++) {
+            if (tick % 20 == 0) {
+                hero.setDirection(Direction.values()[random.nextInt(4)]);
+            }
+            long start = System.nanoTime();
+            chaseSystem.update();
+            long middle = System.nanoTime();
+            physicEngine.update();
+            chaseNanos += middle - start;
+            physicsNanos += System.nanoTime() - middle;
+        }
+        int columnsFromHero = grid.columnAt(hero.getX());
+        int rowsFromHero = grid.rowAt(hero.getY());
+        long closeChasers = chasers.stream().filter(chaser -> {
+            int distance = chaseSystem.getFlowField().getDistance(grid.columnAt(chaser.getX()),
+                    grid.rowAt(chaser.getY()));
+            return distance >= 0 && distance <= 3;
+        }).count();
+        System.out.printf("%dx%d level, %d chasers, %d ticks%n", levelSize, levelSize, chaserCount, ticks);
+        System.out.printf("chase     : %8.3f ms/tick (%d flow field computations), physics %8.3f ms/tick%n",
+                chaseNanos / 1e6 / ticks, chaseSystem.getFlowField().getComputationCount(), physicsNanos / 1e6 / ticks);
+        System.out.printf("            %d chasers within 3 tiles of the hero at (%d, %d)%n",
+                closeChasers, columnsFromHero, rowsFromHero);
+
+        // A* queries between random pairs of tiles, then the same queries again from the cache
+        int queries = 2000;
+        int[][] pairs = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            pairs[i] = new int[]{randomFreeTile(grid, random), randomFreeTile(grid, random)};
+        }
+        Pathfinder pathfinder = new Pathfinder(grid, queries);
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            long steps = 0;
+            for (int[] pair : pairs) {
+                int[] path = pathfinder.findPath(grid.columnOf(pair[0]), grid.rowOf(pair[0]),
+                        grid.columnOf(pair[1]), grid.rowOf(pair[1]));
+                steps += path == null ? 0 : path.length - 1;
+            }
+            System.out.printf("A* %s : %8.3f ms/query, %.1f steps/path%n", pass == 0 ? "     " : "cache",
+                    (System.nanoTime() - start) / 1e6 / queries, (double) steps / queries);
+        }
+
+        FlowField check = new FlowField(grid, Integer.MAX_VALUE);
+        for (int i = 0; i < 50; i++) {
+            int[] pair = pairs[i];
+            check.update(grid.columnOf(pair[1]), grid.rowOf(pair[1]));
+            int[] path = pathfinder.findPath(grid.columnOf(pair[0]), grid.rowOf(pair[0]),
+                    grid.columnOf(pair[1]), grid.rowOf(pair[1]));
+            int expected = check.getDistance(grid.columnOf(pair[0]), grid.rowOf(pair[0]));
+            if ((path == null ? -1 : path.length - 1) != expected) {
+                throw new IllegalStateException("A* and the flow field disagree on query " + i);
+            }
+        }
+        System.out.println("A* path lengths match the flow field distances");
+    }
+
+    private static int randomFreeTile(NavigationGrid grid, Random random) {
+        while (true) {
+            int index = grid.index(random.nextInt(grid.getColumns()), random.nextInt(grid.getRows()));
+            if (grid.isWalkable(index)) {
+                return index;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Saves a large generated world in the background while it runs at 200 ticks per second, then loads it into
+ * a second copy of the world. Reports the ticks with and without the autosave (the capture is the only part
+ * on the simulation thread), the time to write and force the save to the disk, and the time to load it. The
+ * tiles are not saved, only checked against the level, so the size of the save does not depend on the size of
+ * the level. Both worlds must end up with the same state checksum. Every measure is taken twice, the first
+ * time to warm up.
+ *
+ * Usage: java SaveLoadBenchmark [levelSize] [spriteCount] [autosaveTicks]   (4000 gives a 16M-tile level)
+ */
+public class SaveLoadBenchmark {
+    private static final int TICKS = 400;
+    private static final long TICK_NANOS = 5_000_000; // Duration of a tick, the saves are written meanwhile
+
+    public static void main(String[] args) throws Exception {
+        int levelSize = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int spriteCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int autosaveTicks = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        System.setProperty("java.awt.headless", "true");
+
+        Playground level = Benchmarks.generatePlayground(levelSize);
+        HeroWithHealth hero = new HeroWithHealth(64, 64, null, 48, 50, null);
+        PhysicEngine physicEngine = createWorld(level, hero, spriteCount);
+        GameEngine gameEngine = new GameEngine(hero, physicEngine.getEnvironment());
+        gameEngine.setPhysicEngine(physicEngine);
+
+        File saveFile = File.createTempFile("world", ".sav");
+        saveFile.deleteOnExit();
+        Path path = saveFile.toPath();
+        Autosave autosave = new Autosave(gameEngine, physicEngine, path, autosaveTicks);
+        runTicks(gameEngine, physicEngine, autosave, new LatencyHistogram("warmup"));
+        LatencyHistogram plainTicks = new LatencyHistogram("tick");
+        runTicks(gameEngine, physicEngine, null, plainTicks);
+        LatencyHistogram savedTicks = new LatencyHistogram("tick.autosave");
+        long savesBefore = autosave.getSaveCount();
+        long skippedBefore = autosave.getSkippedCount();
+        long maxCapture = runTicks(gameEngine, physicEngine, autosave, savedTicks);
+        autosave.saveAndWait();
+        autosave.close();
+        long size = Files.size(path);
+
+        System.out.printf("Level %dx%d, %,d moving sprites, save of %,.1f kB every %d ticks%n", levelSize,
+                levelSize, spriteCount + 1, size / 1e3, autosaveTicks);
+        System.out.printf("Tick without saves: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                plainTicks.getPercentile(50) / 1e6, plainTicks.getPercentile(99) / 1e6, plainTicks.getMax() / 1e6);
+        System.out.printf("Tick with saves:    p50 %.3f ms, p99 %.3f ms, max %.3f ms (capture at most %.3f ms)%n",
+                savedTicks.getPercentile(50) / 1e6, savedTicks.getPercentile(99) / 1e6, savedTicks.getMax() / 1e6,
+                maxCapture / 1e6);
+        System.out.printf("Background: %d saves written, %d ticks skipped while writing, last write and fsync "
+                        + "%.1f ms (%.0f MB/s)%n", autosave.getSaveCount() - savesBefore, autosave.getSkippedCount() - skippedBefore,
+                autosave.getLastWriteNanos() / 1e6, size / (autosave.getLastWriteNanos() / 1e9) / 1e6);
+
+        // Load the save into a second world built from the same level
+        Playground loadedLevel = Benchmarks.generatePlayground(levelSize);
+        HeroWithHealth loadedHero = new HeroWithHealth(64, 64, null, 48, 50, null);
+        PhysicEngine loadedPhysics = createWorld(loadedLevel, loadedHero, spriteCount);
+        GameEngine loadedGame = new GameEngine(loadedHero, loadedPhysics.getEnvironment());
+        loadedGame.setPhysicEngine(loadedPhysics);
+        loadedLevel.getTileMap().getChecksum(); // Computed once per level, like the first capture of the game
+        double loadMs = 0;
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            WorldSave.load(path, loadedGame, loadedPhysics);
+            loadMs = (System.nanoTime() - start) / 1e6;
+        }
+        System.out.printf("Load: %.2f ms%n", loadMs);
+
+        boolean sameState = loadedGame.getStateChecksum() == gameEngine.getStateChecksum()
+                && loadedGame.getTickCount() == gameEngine.getTickCount();
+        System.out.println("Loaded world identical: " + sameState);
+    }
+
+    /**
+     * Builds a world on a level: the hero, then sprites walking in random directions.
+     */
+    private static PhysicEngine createWorld(Playground level, HeroWithHealth hero, int spriteCount) {
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(level.getTileMap());
+        physicEngine.addToMovingSpriteList(hero);
+        ArrayList<DynamicSprite> sprites = Benchmarks.generateSprites(level.getTileMap(), spriteCount, null,
+                new Random(7));
+        for (DynamicSprite sprite : sprites) {
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        return physicEngine;
+    }
+
+    /**
+     * Runs TICKS ticks like the GameLoop, the autosave before the input, one every TICK_NANOS at most.
+     *
+     * @return The longest capture of the autosave, in nanoseconds.
+     */
+    private static long runTicks(GameEngine gameEngine, PhysicEngine physicEngine, Autosave autosave,
+                                 LatencyHistogram histogram) {
+        long maxCapture = 0;
+        for (int tick = 0; tick < TICKS; tick++) {
+            long start = System.nanoTime();
+            if (autosave != null) {
+                autosave.update();
+            }
+            gameEngine.processInput();
+            physicEngine.update();
+            gameEngine.update();
+            histogram.record(System.nanoTime() - start);
+            if (autosave != null) {
+                maxCapture = Math.max(maxCapture, autosave.getLastCaptureNanos());
+            }
+            LockSupport.parkNanos(TICK_NANOS - (System.nanoTime() - start)); // Leaves the CPU to the writer
+        }
+        return maxCapture;
+    }
+}
@@ -0,0 +1,135 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Assets class is the shared cache of the images of the game. Each image is read from disk once and
+ * converted to the pixel format of the screen, so that drawing it is a hardware-accelerated blit.
+ */
+public final class Assets {
+    private static final ConcurrentHashMap<String, Image> images = new ConcurrentHashMap<>(); // Cache by path
+    private static final AtomicLong requestCount = new AtomicLong(); // Requests of an image, preloads included
+    private static final AtomicLong missCount = new AtomicLong(); // Requests that read the image from disk
+
+    private Assets() {
+    }
+
+    /**
+     * Returns an image, reading and converting it on the first request only.
+     *
+     * @param pathName The path of the image file.
+     * @return The image, in a format compatible with the screen.
+     * @throws IOException If the image cannot be read.
+     */
+    public static Image getImage(String pathName) throws IOException {
+        try {
+            return lookup(pathName);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns a cached image, loading it if needed. Only the request that runs the loader counts as a miss,
+     * even when several threads ask for the same image at once.
+     */
+    private static Image lookup(String pathName) {
+        requestCount.incrementAndGet();
+        Image image = images.get(pathName);
+        return image != null ? image : images.computeIfAbsent(pathName, Assets::load);
+    }
+
+    private static Image load(String pathName) {
+        missCount.incrementAndGet(); // Called by computeIfAbsent at most once per image that is loaded
+        try {
+            BufferedImage image = ImageIO.read(new File(pathName));
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + pathName);
+            }
+            return toCompatibleImage(image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads several images in parallel, typically all the images of the game at startup.
+     *
+     * @param pathNames The paths of the image files.
+     * @throws IOException If one of the images cannot be read.
+     */
+    public static void preload(String... pathNames) throws IOException {
+        try {
+            Arrays.stream(pathNames).parallel().forEach(Assets::lookup);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Copies an image into the pixel format of the screen. Images are returned unchanged when headless.
+     *
+     * @param image The image to convert.
+     * @return The converted image.
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return image;
+        }
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        if (image.getColorModel().equals(configuration.getColorModel(image.getTransparency()))) {
+            return image; // Already compatible
+        }
+        BufferedImage compatible = configuration.createCompatibleImage(image.getWidth(), image.getHeight(),
+                image.getTransparency());
+        Graphics2D g = compatible.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+
+    /**
+     * Creates a translucent image in the pixel format of the screen, or a plain ARGB image when headless.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The new image.
+     */
+    public static BufferedImage createCompatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * @return The number of requests, preloads included, served from the cache without reading the disk.
+     */
+    public static long getHitCount() {
+        long misses = missCount.get(); // Read first: a request is counted before its miss
+        return requestCount.get() - misses;
+    }
+
+    /**
+     * @return The number of requests that read their image from the disk.
+     */
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The number of images in the cache.
+     */
+    public static int size() {
+        return images.size();
+    }
+}
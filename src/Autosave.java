@@ -0,0 +1,197 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Autosave class saves a world at a fixed interval of ticks, and when asked to, from a tick engine of
+ * the game loop. On the simulation thread it only captures the world (see WorldSave.capture); the file is
+ * written and forced to the disk by a background thread, so the loop never waits for the disk. A save is
+ * skipped, and tried again on the next tick, while the previous one is still being written.
+ * A load asked from any thread, such as the input thread, is applied at the start of the next tick, before
+ * its input (see GameLoop.addPreInputEngine).
+ */
+public class Autosave implements Engine, Closeable {
+    private final GameEngine gameEngine;
+    private final PhysicEngine physicEngine;
+    private final Path path; // Save file
+    private final long intervalTicks; // Ticks between two automatic saves, 0 to only save when asked
+    private final ExecutorService writer;
+    private long ticksSinceSave = 0;
+    private volatile boolean saveRequested = false; // Set by requestSave, from any thread
+    private volatile boolean loadRequested = false; // Set by requestLoad, from any thread
+    private volatile boolean writing = false; // Indicates whether a save is being written
+    private volatile long saveCount = 0; // Saves written to the disk
+    private volatile long skippedCount = 0; // Ticks a save was due while the previous one was being written
+    private volatile long lastCaptureNanos = 0; // Time the simulation spent capturing the last save
+    private volatile long lastWriteNanos = 0; // Time the background thread spent writing the last save
+    private volatile long lastSize = 0; // Size of the last save in bytes
+    private volatile IOException lastError; // Failure of the last save or load, null if it succeeded
+    private boolean streamedLevel = false; // Indicates if the level is streamed by chunks, see WorldSave.load
+
+    /**
+     * Constructs an Autosave and starts its writing thread.
+     *
+     * @param gameEngine    The game rules of the world to save.
+     * @param physicEngine  The physics of the world to save.
+     * @param path          The save file.
+     * @param intervalTicks The number of ticks between two automatic saves, 0 to only save when asked.
+     */
+    public Autosave(GameEngine gameEngine, PhysicEngine physicEngine, Path path, long intervalTicks) {
+        this.gameEngine = gameEngine;
+        this.physicEngine = physicEngine;
+        this.path = path;
+        this.intervalTicks = intervalTicks;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Applies a pending load, then saves the world if a save is due. Must be called by the simulation thread,
+     * at the start of a tick, before the input is applied.
+     */
+    @Override
+    public void update() {
+        if (loadRequested && !writing) { // The save file is complete once no write is in progress
+            loadRequested = false;
+            try {
+                WorldSave.load(path, gameEngine, physicEngine, streamedLevel);
+                lastError = null;
+            } catch (IOException e) {
+                lastError = e;
+                System.out.println("Error: the autosave " + path + " could not be loaded: " + e.getMessage());
+            }
+            ticksSinceSave = 0;
+            return;
+        }
+        ticksSinceSave++;
+        if (saveRequested || (intervalTicks > 0 && ticksSinceSave >= intervalTicks)) {
+            if (writing) {
+                skippedCount++;
+                return;
+            }
+            saveRequested = false;
+            ticksSinceSave = 0;
+            save();
+        }
+    }
+
+    /**
+     * Captures the world and hands it to the writing thread.
+     */
+    private void save() {
+        long start = System.nanoTime();
+        WorldSave save = WorldSave.capture(gameEngine, physicEngine);
+        lastCaptureNanos = System.nanoTime() - start;
+        writing = true;
+        writer.execute(() -> {
+            long writeStart = System.nanoTime();
+            try {
+                save.writeTo(path);
+                lastWriteNanos = System.nanoTime() - writeStart;
+                lastSize = save.getSize();
+                lastError = null;
+                saveCount++;
+            } catch (IOException e) {
+                lastError = e;
+                System.out.println("Error: the autosave " + path + " could not be written: " + e.getMessage());
+            } finally {
+                writing = false;
+            }
+        });
+    }
+
+    /**
+     * Tells whether the level of the world is streamed by chunks, so that the loads ignore the chunks of the
+     * save that are not resident. Must be called before the game loop starts.
+     *
+     * @param streamedLevel True if the level is streamed by chunks.
+     */
+    public void setStreamedLevel(boolean streamedLevel) {
+        this.streamedLevel = streamedLevel;
+    }
+
+    /**
+     * Asks for a save on the next tick. Can be called by any thread.
+     */
+    public void requestSave() {
+        saveRequested = true;
+    }
+
+    /**
+     * Asks for the save file to be loaded on the next tick. Can be called by any thread.
+     */
+    public void requestLoad() {
+        loadRequested = true;
+    }
+
+    /**
+     * Captures the world now and waits until it is on the disk, for instance before the game exits. Must be
+     * called by the simulation thread, or once the simulation has stopped.
+     *
+     * @throws IOException If the save cannot be written.
+     */
+    public void saveAndWait() throws IOException {
+        waitForWrite();
+        save();
+        waitForWrite();
+        if (lastError != null) {
+            throw lastError;
+        }
+    }
+
+    private void waitForWrite() throws IOException {
+        try {
+            writer.submit(() -> {
+            }).get(); // The writer runs its tasks in order
+        } catch (Exception e) {
+            throw new IOException("Interrupted while saving " + path, e);
+        }
+    }
+
+    public long getSaveCount() {
+        return saveCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public long getLastCaptureNanos() {
+        return lastCaptureNanos;
+    }
+
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    public long getLastSize() {
+        return lastSize;
+    }
+
+    /**
+     * @return The failure of the last save or load, or null if it succeeded.
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Waits for the save being written, if any, and stops the writing thread.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving " + path, e);
+        }
+    }
+}
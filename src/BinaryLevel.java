@@ -0,0 +1,209 @@
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The BinaryLevel class reads and writes the binary level format, which is loaded without parsing:
+ * the tile ids of the file are memory-mapped and used as they are by a TileMap.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int    magic        'DCLV'
+ * int    version      1
+ * int    columns, rows
+ * int    tileWidth, tileHeight
+ * int    paletteSize  number of tile types, at most 256
+ * paletteSize x { byte symbol, byte solid, int damage }
+ * columns x rows bytes: tile ids, line by line
+ * </pre>
+ * Tile types are identified by their symbol in the text format, images are resolved when loading.
+ */
+public class BinaryLevel {
+    public static final int MAGIC = 0x44434C56; // "DCLV"
+    public static final int VERSION = 1;
+    private static final int PALETTE_ENTRY_SIZE = 6;
+    private static final int HEADER_SIZE = 28;
+
+    /**
+     * Checks whether a file starts with the magic number of the binary format.
+     *
+     * @param pathName The path of the file.
+     * @return True if the file is a binary level, false otherwise.
+     */
+    public static boolean isBinaryLevel(String pathName) {
+        try (InputStream input = new FileInputStream(pathName)) {
+            byte[] magic = input.readNBytes(4);
+            return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Memory-maps a binary level. The tile ids are not copied: the returned TileMap reads them from the file,
+     * until a tile is set (see TileMap.setTileId).
+     *
+     * @param pathName The path of the binary level.
+     * @param images   The tile types providing the image of each symbol, usually the palette of a Playground.
+     * @return The tiles of the level.
+     * @throws IOException If the file cannot be read, or is not a valid binary level.
+     */
+    public static TileMap load(String pathName, TileType[] images) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(pathName), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(fileSize, HEADER_SIZE + 256 * PALETTE_ENTRY_SIZE)); // Header and palette only
+            if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC) {
+                throw new IOException(pathName + " is not a binary level");
+            }
+            int version = file.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary level version " + version);
+            }
+            int columns = file.getInt();
+            int rows = file.getInt();
+            int tileWidth = file.getInt();
+            int tileHeight = file.getInt();
+            int paletteSize = file.getInt();
+            if (columns < 0 || rows < 0 || tileWidth < 1 || tileHeight < 1 || paletteSize < 1
+                    || paletteSize > 256) {
+                throw new IOException("Corrupted binary level header in " + pathName);
+            }
+            if (file.remaining() < paletteSize * PALETTE_ENTRY_SIZE) {
+                throw new IOException("Truncated binary level " + pathName);
+            }
+
+            // Unused ids map to the empty tile so that any byte of the file is a valid id
+            TileType[] palette = new TileType[256];
+            for (int id = 0; id < paletteSize; id++) {
+                byte symbol = file.get();
+                boolean solid = file.get() != 0;
+                int damage = file.getInt();
+                palette[id] = new TileType((char) (symbol & 0xFF), imageOf(images, symbol), solid, damage);
+            }
+            for (int id = paletteSize; id < palette.length; id++) {
+                palette[id] = palette[TileMap.EMPTY];
+            }
+
+            long tileCount = (long) columns * rows;
+            if (tileCount > Integer.MAX_VALUE) { // A ByteBuffer holds at most 2^31 - 1 ids
+                throw new IOException("Binary level " + pathName + " has too many tiles: " + columns + "x" + rows);
+            }
+            if (fileSize - file.position() < tileCount) {
+                throw new IOException("Truncated binary level " + pathName);
+            }
+            ByteBuffer tiles = channel.map(FileChannel.MapMode.READ_ONLY, file.position(), tileCount);
+            return new TileMap(columns, rows, 0, 0, tileWidth, tileHeight, palette, tiles);
+        }
+    }
+
+    private static Image imageOf(TileType[] types, byte symbol) {
+        for (int id = 1; id < types.length; id++) {
+            if (types[id].getSymbol() == symbol) {
+                return types[id].getImage();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a level from the text format to the binary format. The text file is read twice, once to
+     * find the size of the level and once to write the tiles, so the level is never held in memory.
+     * Lines shorter than the longest one are padded with empty tiles.
+     *
+     * @param textPathName   The path of the level in the text format.
+     * @param binaryPathName The path of the binary level to write.
+     * @param palette        The tile types of the level, the first one being the empty tile.
+     * @param tileWidth      The width of a tile in pixels.
+     * @param tileHeight     The height of a tile in pixels.
+     */
+    public static void convert(String textPathName, String binaryPathName, TileType[] palette,
+                               int tileWidth, int tileHeight) throws IOException {
+        // First pass: size of the level
+        int columns = 0;
+        int rows = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(textPathName)) {
+            int length = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        columns = Math.max(columns, length);
+                        rows++;
+                        length = 0;
+                    } else if (buffer[i] != '\r') {
+                        length++;
+                    }
+                }
+            }
+            if (length > 0) {
+                columns = Math.max(columns, length);
+                rows++;
+            }
+        }
+
+        // Second pass: header, palette and tile ids
+        byte[] symbolTable = TileMap.createSymbolTable(palette);
+        try (InputStream input = new FileInputStream(textPathName);
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(binaryPathName), 1 << 16))) {
+            writeHeader(output, columns, rows, tileWidth, tileHeight, palette);
+
+            byte[] line = new byte[columns];
+            int length = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        Arrays.fill(line, length, columns, TileMap.EMPTY);
+                        output.write(line);
+                        length = 0;
+                    } else if (buffer[i] != '\r') {
+                        line[length++] = symbolTable[buffer[i] & 0xFF];
+                    }
+                }
+            }
+            if (length > 0) {
+                Arrays.fill(line, length, columns, TileMap.EMPTY);
+                output.write(line); // Last line without line feed
+            }
+        }
+    }
+
+    /**
+     * Writes the header and the palette of a binary level, to be followed by its columns * rows tile ids.
+     *
+     * @param output     The stream to write to.
+     * @param columns    The number of tiles per line.
+     * @param rows       The number of lines of tiles.
+     * @param tileWidth  The width of a tile in pixels.
+     * @param tileHeight The height of a tile in pixels.
+     * @param palette    The tile types of the level, the first one being the empty tile.
+     */
+    static void writeHeader(DataOutputStream output, int columns, int rows, int tileWidth, int tileHeight,
+                            TileType[] palette) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(columns);
+        output.writeInt(rows);
+        output.writeInt(tileWidth);
+        output.writeInt(tileHeight);
+        output.writeInt(palette.length);
+        for (TileType type : palette) {
+            output.writeByte(type.getSymbol());
+            output.writeByte(type.isSolid() ? 1 : 0);
+            output.writeInt(type.getDamage());
+        }
+    }
+}
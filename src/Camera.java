@@ -0,0 +1,109 @@
+/**
+ * The Camera class defines the part of the level shown on screen.
+ * It follows a target sprite, keeps it at the center of the view and stays inside the bounds of the level,
+ * so levels can be much larger than the window.
+ */
+public class Camera {
+    private double x; // X-coordinate of the top-left corner of the view in the level
+    private double y; // Y-coordinate of the top-left corner of the view in the level
+    private double viewWidth; // Width of the view in pixels
+    private double viewHeight; // Height of the view in pixels
+    private double worldWidth; // Width of the level in pixels, 0 if unknown
+    private double worldHeight; // Height of the level in pixels, 0 if unknown
+    private DynamicSprite target; // Sprite kept at the center of the view, can be null
+    private int targetIndex = -1; // Last index of the target in the world snapshots
+
+    /**
+     * Sets the sprite followed by the camera.
+     *
+     * @param target The sprite to keep at the center of the view.
+     */
+    public void follow(DynamicSprite target) {
+        this.target = target;
+    }
+
+    public void setViewSize(double viewWidth, double viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    public void setWorldSize(double worldWidth, double worldHeight) {
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+    }
+
+    /**
+     * Centers the view on the target, interpolated like the sprites drawn in the same frame,
+     * then clamps it to the level. A level smaller than the view stays at the top-left corner.
+     *
+     * @param alpha The interpolation factor between the previous and current physics ticks.
+     */
+    public void update(double alpha) {
+        if (target != null) {
+            centerOn(target.interpolatedX(alpha), target.interpolatedY(alpha));
+        }
+        clamp();
+    }
+
+    /**
+     * Centers the view on the target as captured in a world snapshot, then clamps it to the level.
+     * Falls back to the target itself when it is not part of the snapshot.
+     *
+     * @param snapshot The snapshot being drawn, can be null.
+     * @param alpha    The interpolation factor between the previous and current physics ticks.
+     */
+    public void update(WorldSnapshot snapshot, double alpha) {
+        if (snapshot == null || target == null) {
+            update(alpha);
+            return;
+        }
+        if (targetIndex < 0 || targetIndex >= snapshot.size() || snapshot.getSprite(targetIndex) != target) {
+            targetIndex = snapshot.indexOf(target); // Sprites rarely change order, so the search is rarely done
+        }
+        if (targetIndex < 0) {
+            update(alpha);
+            return;
+        }
+        centerOn(snapshot.interpolatedX(targetIndex, alpha), snapshot.interpolatedY(targetIndex, alpha));
+        clamp();
+    }
+
+    private void centerOn(double targetX, double targetY) {
+        x = targetX + target.width / 2 - viewWidth / 2;
+        y = targetY + target.height / 2 - viewHeight / 2;
+    }
+
+    private void clamp() {
+        if (worldWidth > 0) {
+            x = Math.max(0, Math.min(x, worldWidth - viewWidth));
+        }
+        if (worldHeight > 0) {
+            y = Math.max(0, Math.min(y, worldHeight - viewHeight));
+        }
+    }
+
+    /**
+     * Checks whether a rectangle of the level is at least partially visible.
+     *
+     * @return True if the rectangle intersects the view, false otherwise.
+     */
+    public boolean isVisible(double x, double y, double width, double height) {
+        return x < this.x + viewWidth && x + width > this.x && y < this.y + viewHeight && y + height > this.y;
+    }
+
+    public int getX() {
+        return (int) Math.floor(x);
+    }
+
+    public int getY() {
+        return (int) Math.floor(y);
+    }
+
+    public double getViewWidth() {
+        return viewWidth;
+    }
+
+    public double getViewHeight() {
+        return viewHeight;
+    }
+}
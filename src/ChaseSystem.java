@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+
+/**
+ * The ChaseSystem class steers NPCs towards a target, usually the hero, through the corridors of the level.
+ * On each tick it updates one flow field towards the tile of the target, which is only recomputed when the
+ * target changes tile, then each chaser reads its direction from the field. The cost of a tick is one array
+ * lookup per chaser, whatever the number of chasers.
+ * Sprites only walk in four directions, so a chaser first lines up with the row or column of its tile
+ * before turning, to avoid catching the corners of solid tiles.
+ * Registered as a tick engine, it runs before the physics.
+ */
+public class ChaseSystem implements Engine {
+    private final NavigationGrid grid; // Walkable tiles
+    private final FlowField flowField; // Directions towards the target
+    private final ArrayList<DynamicSprite> chasers = new ArrayList<>(); // Sprites steered towards the target
+    private DynamicSprite target; // Sprite to chase, can be null
+
+    /**
+     * Constructs a ChaseSystem.
+     *
+     * @param grid        The walkable tiles of the level.
+     * @param maxDistance The number of steps from the target beyond which chasers do not find it.
+     */
+    public ChaseSystem(NavigationGrid grid, int maxDistance) {
+        this.grid = grid;
+        this.flowField = new FlowField(grid, maxDistance);
+    }
+
+    public void setTarget(DynamicSprite target) {
+        this.target = target;
+    }
+
+    public void addChaser(DynamicSprite chaser) {
+        chasers.add(chaser);
+    }
+
+    public FlowField getFlowField() {
+        return flowField;
+    }
+
+    @Override
+    public void update() {
+        if (target == null) {
+            return;
+        }
+        double targetCenterX = target.getX() + target.width / 2;
+        double targetCenterY = target.getY() + target.height / 2;
+        flowField.update(grid.columnAt(targetCenterX), grid.rowAt(targetCenterY));
+        for (int i = 0; i < chasers.size(); i++) {
+            DynamicSprite chaser = chasers.get(i);
+            Direction direction = steer(chaser, targetCenterX, targetCenterY);
+            if (direction != null) {
+                chaser.setDirection(direction);
+            }
+        }
+    }
+
+    /**
+     * @return The direction a chaser should walk in, or null to keep its current direction.
+     */
+    private Direction steer(DynamicSprite chaser, double targetCenterX, double targetCenterY) {
+        double centerX = chaser.getX() + chaser.width / 2;
+        double centerY = chaser.getY() + chaser.height / 2;
+        int column = grid.columnAt(centerX);
+        int row = grid.rowAt(centerY);
+        Direction direction = flowField.getDirection(column, row);
+        if (direction == null) {
+            if (flowField.getDistance(column, row) != 0) {
+                return null; // Cannot reach the target from here
+            }
+            // Same tile as the target: head straight for it
+            double dx = targetCenterX - centerX;
+            double dy = targetCenterY - centerY;
+            if (Math.abs(dx) >= Math.abs(dy)) {
+                return dx >= 0 ? Direction.EAST : Direction.WEST;
+            }
+            return dy >= 0 ? Direction.SOUTH : Direction.NORTH;
+        }
+        // Line up with the tile before moving across its row or column
+        if (direction == Direction.EAST || direction == Direction.WEST) {
+            double top = grid.rowY(row);
+            if (chaser.getY() < top) {
+                return Direction.SOUTH;
+            }
+            if (chaser.getY() + chaser.height > top + grid.getTileHeight()) {
+                return Direction.NORTH;
+            }
+        } else {
+            double left = grid.columnX(column);
+            if (chaser.getX() < left) {
+                return Direction.EAST;
+            }
+            if (chaser.getX() + chaser.width > left + grid.getTileWidth()) {
+                return Direction.WEST;
+            }
+        }
+        return direction;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Receives the chunks of tiles loaded and evicted by a ChunkedPlayground.
+ */
+public interface ChunkListener {
+    public void chunkLoaded(TileMap chunk);
+
+    public void chunkEvicted(TileMap chunk);
+}
@@ -0,0 +1,265 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ChunkedPlayground class streams a level that is too large to be held in memory as sprites.
+ * The level is split into square chunks of chunkSize x chunkSize tiles. Chunks are parsed from the level file
+ * on demand when the followed sprite comes near them, and the least recently used chunks are evicted once more
+ * than maxResidentChunks are in memory. Only the offsets of the lines of the file are kept for the whole level.
+ */
+public class ChunkedPlayground extends Playground implements Engine {
+    private final String pathName; // Path of the level file
+    private final int chunkSize; // Width and height of a chunk in tiles
+    private final int maxResidentChunks; // Maximum number of chunks kept in memory
+    private long[] lineOffsets; // Offset of the first byte of each line in the file
+    private int[] lineLengths; // Number of tiles of each line
+    private int lineCount; // Number of lines of the level
+    private int columnCount; // Number of tiles of the longest line
+    private final LinkedHashMap<Long, TileMap> residentChunks; // Loaded chunks, least recently used first
+    private final ArrayList<ChunkListener> listeners = new ArrayList<>();
+    private DynamicSprite target; // Sprite around which chunks are loaded
+    private int loadRadius = 1; // Number of chunks loaded around the chunk of the target
+    private long loadCount = 0; // Number of chunks parsed since the start
+    private long evictionCount = 0; // Number of chunks evicted since the start
+
+    /**
+     * Constructs a ChunkedPlayground and indexes the lines of the level file. No tile is loaded yet.
+     *
+     * @param pathName          The path of the level file.
+     * @param chunkSize         The width and height of a chunk in tiles.
+     * @param maxResidentChunks The maximum number of chunks kept in memory.
+     */
+    public ChunkedPlayground(String pathName, int chunkSize, int maxResidentChunks) throws IOException {
+        super();
+        if (chunkSize <= 0 || maxResidentChunks <= 0) {
+            throw new IllegalArgumentException("Chunk size and resident chunk count must be positive");
+        }
+        this.pathName = pathName;
+        this.chunkSize = chunkSize;
+        this.maxResidentChunks = maxResidentChunks;
+        this.residentChunks = new LinkedHashMap<>(16, 0.75f, true);
+        indexLines();
+    }
+
+    /**
+     * Reads the level file once to record where each line starts and how many tiles it has.
+     */
+    private void indexLines() throws IOException {
+        lineOffsets = new long[1024];
+        lineLengths = new int[1024];
+        lineCount = 0;
+        columnCount = 0;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(pathName), 1 << 16)) {
+            long offset = 0;
+            long lineStart = 0;
+            int length = 0;
+            boolean pendingCarriageReturn = false;
+            int b;
+            while ((b = input.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    addLine(lineStart, length);
+                    lineStart = offset;
+                    length = 0;
+                    pendingCarriageReturn = false;
+                } else if (b == '\r') {
+                    pendingCarriageReturn = true;
+                } else {
+                    if (pendingCarriageReturn) {
+                        length++; // A lone carriage return inside a line is kept as a tile, like any byte
+                        pendingCarriageReturn = false;
+                    }
+                    length++;
+                }
+            }
+            if (offset > lineStart) {
+                addLine(lineStart, length);
+            }
+        }
+    }
+
+    private void addLine(long offset, int length) {
+        if (lineCount == lineOffsets.length) {
+            lineOffsets = Arrays.copyOf(lineOffsets, lineCount * 2);
+            lineLengths = Arrays.copyOf(lineLengths, lineCount * 2);
+        }
+        lineOffsets[lineCount] = offset;
+        lineLengths[lineCount] = length;
+        lineCount++;
+        columnCount = Math.max(columnCount, length);
+    }
+
+    /**
+     * Registers a listener notified when chunks are loaded and evicted.
+     *
+     * @param listener The listener, usually the physic and render engines.
+     */
+    public void addChunkListener(ChunkListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets the sprite around which chunks are loaded.
+     *
+     * @param target     The sprite to follow, usually the hero.
+     * @param loadRadius The number of chunks loaded around the chunk of the target in each direction.
+     */
+    public void follow(DynamicSprite target, int loadRadius) {
+        this.target = target;
+        this.loadRadius = loadRadius;
+    }
+
+    /**
+     * Loads the chunks around the followed sprite and evicts the least recently used ones above the limit.
+     */
+    @Override
+    public void update() {
+        if (target == null) {
+            return;
+        }
+        int targetChunkX = (int) Math.floor(target.getX() / (chunkSize * (double) getTileWidth()));
+        int targetChunkY = (int) Math.floor(target.getY() / (chunkSize * (double) getTileHeight()));
+        for (int chunkY = targetChunkY - loadRadius; chunkY <= targetChunkY + loadRadius; chunkY++) {
+            for (int chunkX = targetChunkX - loadRadius; chunkX <= targetChunkX + loadRadius; chunkX++) {
+                ensureLoaded(chunkX, chunkY);
+            }
+        }
+        // Chunks around the target were touched last, so the eldest entries are the farthest in time
+        Iterator<Map.Entry<Long, TileMap>> eldest = residentChunks.entrySet().iterator();
+        while (residentChunks.size() > maxResidentChunks && eldest.hasNext()) {
+            TileMap chunk = eldest.next().getValue();
+            eldest.remove();
+            evictionCount++;
+            for (ChunkListener listener : listeners) {
+                listener.chunkEvicted(chunk);
+            }
+        }
+    }
+
+    /**
+     * Makes sure a chunk is resident, parsing it from the level file if needed.
+     *
+     * @param chunkX The column of the chunk.
+     * @param chunkY The line of the chunk.
+     */
+    public void ensureLoaded(int chunkX, int chunkY) {
+        if (chunkX < 0 || chunkY < 0 || chunkX * chunkSize >= columnCount || chunkY * chunkSize >= lineCount) {
+            return; // Outside of the level
+        }
+        Long key = ((long) chunkY << 32) | chunkX;
+        if (residentChunks.get(key) != null) {
+            return; // Already resident, the lookup marked it as recently used
+        }
+        TileMap chunk;
+        try {
+            chunk = loadChunk(chunkX, chunkY);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        residentChunks.put(key, chunk);
+        loadCount++;
+        for (ChunkListener listener : listeners) {
+            listener.chunkLoaded(chunk);
+        }
+    }
+
+    /**
+     * Parses the tiles of a chunk, reading only the part of each line that belongs to it.
+     */
+    private TileMap loadChunk(int chunkX, int chunkY) throws IOException {
+        int firstColumn = chunkX * chunkSize;
+        int firstLine = chunkY * chunkSize;
+        int lastLine = Math.min(lineCount, firstLine + chunkSize);
+        TileMap chunk = new TileMap(Math.min(chunkSize, columnCount - firstColumn), lastLine - firstLine,
+                firstColumn, firstLine, getTileWidth(), getTileHeight(), palette);
+        byte[] buffer = new byte[chunkSize];
+        try (RandomAccessFile file = new RandomAccessFile(pathName, "r")) {
+            for (int lineNumber = firstLine; lineNumber < lastLine; lineNumber++) {
+                int length = Math.min(chunkSize, lineLengths[lineNumber] - firstColumn);
+                if (length <= 0) {
+                    continue;
+                }
+                file.seek(lineOffsets[lineNumber] + firstColumn);
+                file.readFully(buffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    chunk.setTileId(firstColumn + i, lineNumber, symbolTable[buffer[i] & 0xFF]);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * @return The resident chunks.
+     */
+    public ArrayList<TileMap> getResidentChunks() {
+        return new ArrayList<>(residentChunks.values());
+    }
+
+    /**
+     * Creates one SolidSprite per solid tile of the resident chunks.
+     */
+    @Override
+    public ArrayList<Sprite> getSolidSpriteList() {
+        ArrayList<Sprite> sprites = new ArrayList<>();
+        for (TileMap chunk : residentChunks.values()) {
+            sprites.addAll(chunk.toSprites(true));
+        }
+        return sprites;
+    }
+
+    /**
+     * Creates one Sprite per tile of the resident chunks.
+     */
+    @Override
+    public ArrayList<Displayable> getSpriteList() {
+        ArrayList<Displayable> sprites = new ArrayList<>();
+        for (TileMap chunk : residentChunks.values()) {
+            sprites.addAll(chunk.toSprites(false));
+        }
+        return sprites;
+    }
+
+    /**
+     * @return Null: a streamed level has no tile map for the whole level, see getResidentChunks().
+     */
+    @Override
+    public TileMap getTileMap() {
+        return null;
+    }
+
+    public int getResidentChunkCount() {
+        return residentChunks.size();
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The width of the whole level in pixels.
+     */
+    public int getLevelWidth() {
+        return columnCount * getTileWidth();
+    }
+
+    /**
+     * @return The height of the whole level in pixels.
+     */
+    public int getLevelHeight() {
+        return lineCount * getTileHeight();
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Something moving sprites can collide with, queried with the hitbox a sprite would have after moving, or
+ * with the box it sweeps while moving to collect the obstacles on its way.
+ */
+public interface CollisionSpace {
+    /**
+     * Checks whether an obstacle intersects the given rectangle.
+     *
+     * @param x      The x-coordinate of the queried rectangle.
+     * @param y      The y-coordinate of the queried rectangle.
+     * @param width  The width of the queried rectangle.
+     * @param height The height of the queried rectangle.
+     * @param ignore A sprite to ignore (usually the sprite being moved), can be null.
+     * @return True if at least one obstacle intersects the rectangle, false otherwise.
+     */
+    public boolean anyIntersects(double x, double y, double width, double height, Sprite ignore);
+
+    /**
+     * Adds the bounds of every obstacle intersecting the given rectangle to a swept collision, usually the
+     * box swept by a moving sprite. Each obstacle is added once.
+     *
+     * @param x         The x-coordinate of the queried rectangle.
+     * @param y         The y-coordinate of the queried rectangle.
+     * @param width     The width of the queried rectangle.
+     * @param height    The height of the queried rectangle.
+     * @param ignore    A sprite to ignore (usually the sprite being moved), can be null.
+     * @param collision The swept collision receiving the obstacles.
+     */
+    public void collectObstacles(double x, double y, double width, double height, Sprite ignore,
+                                 SweptCollision collision);
+}
@@ -0,0 +1,63 @@
+/**
+ * The Contact class describes an overlap between a tracked moving sprite and either another sprite or a tile.
+ * A contact is created when the overlap begins and reused, unchanged, on every tick it lasts, until it ends.
+ */
+public final class Contact {
+    private final DynamicSprite sprite; // Tracked sprite
+    private final Sprite other; // Overlapped sprite, null for a tile
+    private final TileType tile; // Type of the overlapped tile, null for a sprite
+    private final int column; // Column of the overlapped tile in the level
+    private final int row; // Row of the overlapped tile in the level
+    boolean seen; // Set by the ContactTracker when the overlap is found again on the current tick
+
+    /**
+     * Constructs a Contact.
+     *
+     * @param sprite The tracked sprite.
+     * @param other  The overlapped sprite, or null for a tile.
+     * @param tile   The type of the overlapped tile, or null for a sprite.
+     * @param column The column of the overlapped tile in the level, ignored for a sprite.
+     * @param row    The row of the overlapped tile in the level, ignored for a sprite.
+     */
+    Contact(DynamicSprite sprite, Sprite other, TileType tile, int column, int row) {
+        this.sprite = sprite;
+        this.other = other;
+        this.tile = tile;
+        this.column = column;
+        this.row = row;
+    }
+
+    /**
+     * @return True if this contact describes the same overlap as the given one.
+     */
+    boolean matches(Sprite other, TileType tile, int column, int row) {
+        if (other != null) {
+            return this.other == other;
+        }
+        return this.tile == tile && this.column == column && this.row == row;
+    }
+
+    public DynamicSprite getSprite() {
+        return sprite;
+    }
+
+    public Sprite getOther() {
+        return other;
+    }
+
+    public TileType getTile() {
+        return tile;
+    }
+
+    public boolean isTile() {
+        return tile != null;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getRow() {
+        return row;
+    }
+}
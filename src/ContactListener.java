@@ -0,0 +1,24 @@
+/**
+ * Receives the contact events computed by the ContactTracker at the end of each physics tick.
+ */
+public interface ContactListener {
+    /**
+     * Called on the first tick of an overlap.
+     */
+    public void contactEnter(Contact contact);
+
+    /**
+     * Called on each following tick while the overlap lasts.
+     */
+    public void contactStay(Contact contact);
+
+    /**
+     * Called on the first tick the overlap is over.
+     */
+    public void contactExit(Contact contact);
+
+    /**
+     * Called on each tick a tracked sprite was stopped by an obstacle before the end of its step.
+     */
+    public void blocked(DynamicSprite sprite);
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ContactTracker class follows the overlaps of a few tracked moving sprites, such as the hero, with the
+ * sprites and the trigger tiles (tiles dealing damage) of the level. It is updated by the PhysicEngine at the
+ * end of its tick, once the sprites have moved, and only looks at what the broadphase returns around each
+ * tracked sprite. Listeners are told when an overlap begins (enter), lasts (stay) and ends (exit), and when a
+ * tracked sprite was stopped by an obstacle (blocked), so game rules such as damage, traps or pickups do not
+ * have to scan the level themselves.
+ * Contacts are only allocated when an overlap begins.
+ */
+public class ContactTracker {
+    private final ArrayList<ContactListener> listeners = new ArrayList<>();
+    private final ArrayList<DynamicSprite> trackedSprites = new ArrayList<>(); // Sprites whose contacts are computed
+    private final ArrayList<ArrayList<Contact>> contacts = new ArrayList<>(); // Current contacts of each tracked sprite
+    private final ArrayList<SolidSprite> solidResult = new ArrayList<>(); // Reused results of the grid queries
+    private final ArrayList<DynamicSprite> dynamicResult = new ArrayList<>();
+    private final ArrayList<Sprite> triggerResult = new ArrayList<>();
+
+    public void addListener(ContactListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts computing the contacts of a sprite.
+     *
+     * @param sprite The sprite to track.
+     */
+    public void track(DynamicSprite sprite) {
+        if (!trackedSprites.contains(sprite)) {
+            trackedSprites.add(sprite);
+            contacts.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * @return The current contacts of a tracked sprite, or null if it is not tracked.
+     */
+    public ArrayList<Contact> getContacts(DynamicSprite sprite) {
+        int index = trackedSprites.indexOf(sprite);
+        return index < 0 ? null : contacts.get(index);
+    }
+
+    /**
+     * @return The tracked sprites, in the order they were tracked.
+     */
+    List<DynamicSprite> getTrackedSprites() {
+        return Collections.unmodifiableList(trackedSprites);
+    }
+
+    /**
+     * Forgets the current contacts of every tracked sprite without firing any event, before the contacts of
+     * a saved world are restored.
+     */
+    void clearContacts() {
+        for (int i = 0; i < contacts.size(); i++) {
+            contacts.get(i).clear();
+        }
+    }
+
+    /**
+     * Adds a contact of a saved world without firing any event: the overlap lasts, so the next tick reports
+     * it as staying, exactly as it would have without the save.
+     *
+     * @param sprite The tracked sprite, tracked from now on if it was not.
+     * @param other  The overlapped sprite, or null for a tile.
+     * @param tile   The type of the overlapped tile, or null for a sprite.
+     * @param column The column of the overlapped tile in the level, ignored for a sprite.
+     * @param row    The row of the overlapped tile in the level, ignored for a sprite.
+     */
+    void restoreContact(DynamicSprite sprite, Sprite other, TileType tile, int column, int row) {
+        track(sprite);
+        contacts.get(trackedSprites.indexOf(sprite)).add(new Contact(sprite, other, tile, column, row));
+    }
+
+    /**
+     * Computes the overlaps of every tracked sprite and fires the events of those that began, lasted or ended,
+     * then the blocked event of the tracked sprites stopped by an obstacle on this tick.
+     *
+     * @param tileMaps    The tiles of the level.
+     * @param solidGrid   The static solid sprites.
+     * @param dynamicGrid The moving sprites that are also obstacles.
+     * @param triggerGrid The sprites that do not block, such as pickups.
+     */
+    void update(ArrayList<TileMap> tileMaps, SpatialGrid<SolidSprite> solidGrid,
+                SpatialGrid<DynamicSprite> dynamicGrid, SpatialGrid<Sprite> triggerGrid) {
+        for (int s = 0; s < trackedSprites.size(); s++) {
+            DynamicSprite sprite = trackedSprites.get(s);
+            ArrayList<Contact> current = contacts.get(s);
+            for (int i = 0; i < current.size(); i++) {
+                current.get(i).seen = false;
+            }
+
+            for (int i = 0; i < tileMaps.size(); i++) {
+                TileMap tileMap = tileMaps.get(i);
+                if (tileMap.overlaps(sprite.getX(), sprite.getY(), sprite.width, sprite.height)) {
+                    collectTiles(sprite, tileMap, current);
+                }
+            }
+            solidResult.clear();
+            solidGrid.query(sprite.getX(), sprite.getY(), sprite.width, sprite.height, solidResult);
+            for (int i = 0; i < solidResult.size(); i++) {
+                found(sprite, current, solidResult.get(i), null, 0, 0);
+            }
+            dynamicResult.clear();
+            dynamicGrid.query(sprite.getX(), sprite.getY(), sprite.width, sprite.height, dynamicResult);
+            for (int i = 0; i < dynamicResult.size(); i++) {
+                if (dynamicResult.get(i) != sprite) {
+                    found(sprite, current, dynamicResult.get(i), null, 0, 0);
+                }
+            }
+            triggerResult.clear();
+            triggerGrid.query(sprite.getX(), sprite.getY(), sprite.width, sprite.height, triggerResult);
+            for (int i = 0; i < triggerResult.size(); i++) {
+                found(sprite, current, triggerResult.get(i), null, 0, 0);
+            }
+
+            // Contacts not found again are over; the others keep their order
+            int kept = 0;
+            for (int i = 0; i < current.size(); i++) {
+                Contact contact = current.get(i);
+                if (contact.seen) {
+                    current.set(kept++, contact);
+                } else {
+                    for (int l = 0; l < listeners.size(); l++) {
+                        listeners.get(l).contactExit(contact);
+                    }
+                }
+            }
+            while (current.size() > kept) {
+                current.remove(current.size() - 1);
+            }
+
+            if (sprite.isBlocked()) {
+                for (int l = 0; l < listeners.size(); l++) {
+                    listeners.get(l).blocked(sprite);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the trigger tiles of a tile map overlapped by a sprite.
+     */
+    private void collectTiles(DynamicSprite sprite, TileMap tileMap, ArrayList<Contact> current) {
+        if (sprite.width <= 0 || sprite.height <= 0) {
+            return;
+        }
+        int tileWidth = tileMap.getTileWidth();
+        int tileHeight = tileMap.getTileHeight();
+        int minColumn = Math.max(tileMap.getOriginColumn(), (int) Math.floor(sprite.getX() / tileWidth));
+        int maxColumn = Math.min(tileMap.getOriginColumn() + tileMap.getColumns() - 1,
+                (int) Math.floor(Math.nextDown(sprite.getX() + sprite.width) / tileWidth));
+        int minRow = Math.max(tileMap.getOriginRow(), (int) Math.floor(sprite.getY() / tileHeight));
+        int maxRow = Math.min(tileMap.getOriginRow() + tileMap.getRows() - 1,
+                (int) Math.floor(Math.nextDown(sprite.getY() + sprite.height) / tileHeight));
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                TileType tile = tileMap.getTileType(column, row);
+                if (tile.getDamage() != 0) {
+                    found(sprite, current, null, tile, column, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records an overlap found on this tick: a stay event if it was already known, an enter event otherwise.
+     */
+    private void found(DynamicSprite sprite, ArrayList<Contact> current, Sprite other, TileType tile,
+                       int column, int row) {
+        for (int i = 0; i < current.size(); i++) {
+            Contact contact = current.get(i);
+            if (!contact.seen && contact.matches(other, tile, column, row)) {
+                contact.seen = true;
+                for (int l = 0; l < listeners.size(); l++) {
+                    listeners.get(l).contactStay(contact);
+                }
+                return;
+            }
+        }
+        Contact contact = new Contact(sprite, other, tile, column, row);
+        contact.seen = true;
+        current.add(contact);
+        for (int l = 0; l < listeners.size(); l++) {
+            listeners.get(l).contactEnter(contact);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * The DamageListener class applies the damage of contacts to the heroes: one point per tick a hero is stopped
+ * by an obstacle, and the damage of a trap tile once when the hero steps on it.
+ */
+public class DamageListener implements ContactListener {
+
+    @Override
+    public void contactEnter(Contact contact) {
+        if (contact.getSprite() instanceof HeroWithHealth hero && contact.isTile()) {
+            hero.takeDamage(contact.getTile().getDamage());
+        }
+    }
+
+    @Override
+    public void contactStay(Contact contact) {
+        // Nothing to do: a trap tile only hurts when it is entered
+    }
+
+    @Override
+    public void contactExit(Contact contact) {
+        // Nothing to do
+    }
+
+    @Override
+    public void blocked(DynamicSprite sprite) {
+        if (sprite instanceof HeroWithHealth hero) {
+            hero.takeDamage(1); // Apply damage (-1PV) when the hero bumps into an obstacle
+        }
+    }
+}
@@ -2,4 +2,15 @@ import java.awt.*;
 
 public interface Displayable {
     public void draw (Graphics g);
+
+    /**
+     * Draws the object interpolated between its previous and current simulation states.
+     * Objects that do not move simply ignore the interpolation factor.
+     *
+     * @param g     The Graphics context used for rendering.
+     * @param alpha The interpolation factor, from 0 (previous state) to 1 (current state).
+     */
+    public default void draw (Graphics g, double alpha) {
+        draw(g);
+    }
 }
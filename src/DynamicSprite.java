@@ -1,14 +1,20 @@
 import java.awt.*;
-import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 
+/**
+ * The DynamicSprite class is a solid sprite that walks. Its position, motion and health are not held in the
+ * object but in an EntityStore, of which the sprite is a view: the PhysicEngine moves its sprites by walking
+ * the arrays of its store.
+ */
 public class DynamicSprite extends SolidSprite {
-    private Direction direction = Direction.SOUTH; // Direction of the Hero when the game begins
-    protected double speed = 5; // Speed of the sprite
+    private EntityStore store; // Holds the state of the sprite, the one of the PhysicEngine moving it if any
+    private int entity; // Index of the sprite in its store
+    private boolean moved = false; // Indicates if a PhysicEngine holds the state of the sprite
     private double timeBetweenFrame = 250; // Time in milliseconds between animation frames
     private boolean isWalking = true; // Indicates if the sprite is walking
     private final int spriteSheetNumberOfColumn = 10; // Number of columns in the sprite sheet
     boolean gameOver; // Indicates if the game is over
+    private final SpriteSheet spriteSheet; // Frames of the animation, sliced once from the image
 
     /**
      * Constructs a DynamicSprite, Extends SolidSprite, with the specified position, image, and dimensions.
@@ -21,14 +27,58 @@ public class DynamicSprite extends SolidSprite {
      */
     public DynamicSprite(double x, double y, Image image, double width, double height) {
         super(x, y, image, width, height);
+        this.store = new EntityStore(1); // The sprite's own store, until a PhysicEngine moves it
+        this.entity = store.create(this, x, y, width, height);
+        this.spriteSheet = SpriteSheet.of(image, (int) width, (int) height);
     }
 
-    public int getX() {
-        return (int) this.x;
+    /**
+     * Moves the state of the sprite into the store of the PhysicEngine that moves it. Must be called before
+     * the world runs, by the thread building it.
+     *
+     * @param target The store of the PhysicEngine.
+     * @return The index of the sprite in that store.
+     */
+    int moveTo(EntityStore target) {
+        if (moved) {
+            throw new IllegalStateException("The sprite is already moved by another PhysicEngine");
+        }
+        int copy = target.copyOf(store, entity);
+        store = target;
+        entity = copy;
+        moved = true;
+        return copy;
+    }
+
+    /**
+     * @return The store holding the state of the sprite.
+     */
+    EntityStore getStore() {
+        return store;
     }
 
-    public int getY() {
-        return (int) this.y;
+    /**
+     * @return The index of the sprite in its store.
+     */
+    int getEntity() {
+        return entity;
+    }
+
+    @Override
+    public double getX() {
+        return store.getX(entity);
+    }
+
+    @Override
+    public double getY() {
+        return store.getY(entity);
+    }
+
+    /**
+     * Places the sprite, without moving it through the obstacles.
+     */
+    void setPosition(double x, double y) {
+        store.setPosition(entity, x, y);
     }
 
     public int getWidth() {
@@ -40,80 +90,327 @@ public class DynamicSprite extends SolidSprite {
     }
 
     /**
-     * Determines if movement in the current direction is possible, based on the environment.
+     * Collects the solid sprites of the environment on the way of the next step, scanning the whole list.
+     */
+    private void collectObstacles(ArrayList<Sprite> environment, SweptCollision collision) {
+        double sweptX = sweptX();
+        double sweptY = sweptY();
+        double sweptWidth = sweptWidth();
+        double sweptHeight = sweptHeight();
+        for (int i = 0; i < environment.size(); i++) {
+            Sprite s = environment.get(i);
+            if ((s instanceof SolidSprite) && (s != this) && s.intersects(sweptX, sweptY, sweptWidth, sweptHeight)) {
+                collision.addObstacle(s.getX(), s.getY(), s.width, s.height);
+            }
+        }
+    }
+
+    /**
+     * Collects the obstacles on the way of the next step with one query of the box it sweeps.
      *
-     * @param environment A list of all sprites in the current environment.
-     * @return True if movement is possible, false otherwise.
+     * @param environment The obstacles of the current environment, such as a spatial grid or a tile map.
+     * @param collision   The swept collision receiving the obstacles.
      */
-    private boolean isMovingPossible(ArrayList<Sprite> environment) {
-        Rectangle2D.Double moved = new Rectangle2D.Double();
+    void collectObstacles(CollisionSpace environment, SweptCollision collision) {
+        environment.collectObstacles(sweptX(), sweptY(), sweptWidth(), sweptHeight(), this, collision);
+    }
+
+    /**
+     * @return The x-coordinate of the box swept by the next step.
+     */
+    double sweptX() {
+        return store.getSweptX(entity);
+    }
+
+    /**
+     * @return The y-coordinate of the box swept by the next step.
+     */
+    double sweptY() {
+        return store.getSweptY(entity);
+    }
+
+    /**
+     * @return The width of the box swept by the next step.
+     */
+    double sweptWidth() {
+        return store.getSweptWidth(entity);
+    }
+
+    /**
+     * @return The height of the box swept by the next step.
+     */
+    double sweptHeight() {
+        return store.getSweptHeight(entity);
+    }
+
+    /**
+     * @return The displacement along x of one step.
+     */
+    double velocityX() {
+        return store.getVelocityX(entity);
+    }
+
+    /**
+     * @return The displacement along y of one step.
+     */
+    double velocityY() {
+        return store.getVelocityY(entity);
+    }
+
+    public double getSpeed() {
+        return store.getSpeed(entity);
+    }
+
+    public void setSpeed(double speed) {
+        store.setSpeed(entity, speed);
+    }
+
+    /**
+     * Sets the direction the sprite faces and walks in.
+     */
+    public void setDirection(Direction direction) {
+        store.setDirection(entity, direction);
         switch (direction) {
-            case EAST -> moved.setRect(super.getHitBox().getX() + speed, super.getHitBox().getY(),
-                    super.getHitBox().getWidth(), super.getHitBox().getHeight());
-            case WEST -> moved.setRect(super.getHitBox().getX() - speed, super.getHitBox().getY(),
-                    super.getHitBox().getWidth(), super.getHitBox().getHeight());
-            case NORTH -> moved.setRect(super.getHitBox().getX(), super.getHitBox().getY() - speed,
-                    super.getHitBox().getWidth(), super.getHitBox().getHeight());
-            case SOUTH -> moved.setRect(super.getHitBox().getX(), super.getHitBox().getY() + speed,
-                    super.getHitBox().getWidth(), super.getHitBox().getHeight());
+            case NORTH -> setHeadingVector(0, -1);
+            case SOUTH -> setHeadingVector(0, 1);
+            case EAST -> setHeadingVector(1, 0);
+            case WEST -> setHeadingVector(-1, 0);
         }
+    }
 
-        for (Sprite s : environment) {
-            if ((s instanceof SolidSprite) && (s != this)) {
-                if (((SolidSprite) s).intersect(moved)) {
-                    return false;
-                }
-            }
+    /**
+     * Makes the sprite walk along any vector, diagonals included, at its speed. The sprite faces the
+     * dominant axis of the vector, or keeps facing one of its two axes on an exact diagonal.
+     *
+     * @param headingX The x-component of the walking direction.
+     * @param headingY The y-component of the walking direction.
+     */
+    public void setHeading(double headingX, double headingY) {
+        if (headingX == 0 && headingY == 0) {
+            return; // No direction to walk in
+        }
+        Direction horizontal = headingX > 0 ? Direction.EAST : Direction.WEST;
+        Direction vertical = headingY > 0 ? Direction.SOUTH : Direction.NORTH;
+        Direction direction = store.getDirection(entity);
+        if (Math.abs(headingX) > Math.abs(headingY)) {
+            direction = horizontal;
+        } else if (Math.abs(headingY) > Math.abs(headingX)) {
+            direction = vertical;
+        } else if (direction != horizontal && direction != vertical) {
+            direction = horizontal;
         }
-        return true;
+        store.setDirection(entity, direction);
+        double length = Math.hypot(headingX, headingY);
+        setHeadingVector(headingX / length, headingY / length);
     }
 
-    public void setDirection(Direction direction) {
-        this.direction = direction;
+    private void setHeadingVector(double headingX, double headingY) {
+        store.setHeading(entity, headingX, headingY);
+    }
+
+    public Direction getDirection() {
+        return store.getDirection(entity);
     }
 
     /**
-     * Moves the sprite in its current direction.
+     * @return The x-component of the unit vector the sprite walks along.
      */
-    private void move() {
-        switch (direction) {
-            case NORTH -> this.y -= speed;
-            case SOUTH -> this.y += speed;
-            case EAST -> this.x += speed;
-            case WEST -> this.x -= speed;
-        }
+    public double getHeadingX() {
+        return store.getHeadingX(entity);
+    }
+
+    /**
+     * @return The y-component of the unit vector the sprite walks along.
+     */
+    public double getHeadingY() {
+        return store.getHeadingY(entity);
     }
 
     /**
-     * Attempts to move the sprite. If movement is not possible, applies collision logic.
+     * Overwrites the position and motion of the sprite with a state received from elsewhere, such as the
+     * state of a server. The heading is taken as is, without normalizing it.
+     *
+     * @param x         The x-coordinate.
+     * @param y         The y-coordinate.
+     * @param direction The direction the sprite faces.
+     * @param headingX  The x-component of the walking direction.
+     * @param headingY  The y-component of the walking direction.
+     * @param speed     The speed of the sprite.
+     */
+    void restoreMotion(double x, double y, Direction direction, double headingX, double headingY, double speed) {
+        store.setPosition(entity, x, y);
+        store.setDirection(entity, direction);
+        setHeadingVector(headingX, headingY);
+        store.setSpeed(entity, speed);
+    }
+
+    /**
+     * Restores the position at the start of the last physics tick, see savePreviousPosition.
+     */
+    void restorePreviousPosition(double previousX, double previousY) {
+        store.setPreviousPosition(entity, previousX, previousY);
+    }
+
+    /**
+     * @return The x-coordinate before the last physics tick, used for interpolation.
+     */
+    double getPreviousX() {
+        return store.getPreviousX(entity);
+    }
+
+    /**
+     * @return The y-coordinate before the last physics tick, used for interpolation.
+     */
+    double getPreviousY() {
+        return store.getPreviousY(entity);
+    }
+
+    /**
+     * Remembers the position at the start of a physics tick so that rendering can interpolate from it.
+     */
+    void savePreviousPosition() {
+        store.savePreviousPosition(entity);
+    }
+
+    /**
+     * @return True if an obstacle stopped the sprite before the end of its step on the last physics tick.
+     */
+    public boolean isBlocked() {
+        return store.isBlocked(entity);
+    }
+
+    /**
+     * @return True if the sprite is also an obstacle for the other moving sprites.
+     */
+    boolean isObstacle() {
+        return store.hasFlag(entity, EntityStore.OBSTACLE);
+    }
+
+    void setObstacle(boolean obstacle) {
+        store.setFlag(entity, EntityStore.OBSTACLE, obstacle);
+    }
+
+    /**
+     * @return The x-coordinate interpolated between the previous and current physics ticks.
+     */
+    protected double interpolatedX(double alpha) {
+        double previousX = store.getPreviousX(entity);
+        return previousX + (store.getX(entity) - previousX) * alpha;
+    }
+
+    /**
+     * @return The y-coordinate interpolated between the previous and current physics ticks.
+     */
+    protected double interpolatedY(double alpha) {
+        double previousY = store.getPreviousY(entity);
+        return previousY + (store.getY(entity) - previousY) * alpha;
+    }
+
+    /**
+     * Moves the sprite one step, stopping at the obstacles and sliding along them, and records whether it was
+     * stopped.
      *
      * @param environment A list of all sprites in the current environment.
      */
     public void moveIfPossible(ArrayList<Sprite> environment, boolean gameOver) {
+        savePreviousPosition();
         if (gameOver) {
             return;  // Do not allow movement if the game is over
         }
 
-        if (isMovingPossible(environment)) {
-            move();
-        } else {
-            if (this instanceof HeroWithHealth) {
-                ((HeroWithHealth) this).takeDamage(1); // Apply damage (-1PV) if the sprite is a HeroWithHealth
-            }
+        SweptCollision collision = SweptCollision.forCurrentThread();
+        collision.clear();
+        collectObstacles(environment, collision);
+        sweep(collision);
+    }
+
+    /**
+     * Moves the sprite one step using a collision space such as a spatial grid or a tile map, with one query
+     * of the box swept by the step. The sprite stops at the exact time of impact with an obstacle and slides
+     * along it for the rest of the step, and records whether it was stopped.
+     *
+     * @param environment The obstacles of the current environment.
+     * @param gameOver    Indicates whether the game is over.
+     */
+    public void moveIfPossible(CollisionSpace environment, boolean gameOver) {
+        savePreviousPosition();
+        if (gameOver) {
+            return;  // Do not allow movement if the game is over
         }
+
+        SweptCollision collision = SweptCollision.forCurrentThread();
+        collision.clear();
+        collectObstacles(environment, collision);
+        sweep(collision);
     }
 
     /**
-     * Draws the animated sprite, selecting the correct frame from the sprite sheet based on the time and direction.
+     * Moves the sprite one step through the obstacles collected in a swept collision.
+     *
+     * @param collision The swept collision holding the obstacles on the way of the step.
+     */
+    void sweep(SweptCollision collision) {
+        collision.move(getX(), getY(), width, height, velocityX(), velocityY());
+        resolveMove(collision.getX(), collision.getY(), collision.isBlocked());
+    }
+
+    /**
+     * Applies the outcome of a swept move: moves the sprite, and records whether it was stopped by an obstacle.
+     * The collision logic, such as the damage of the hero, is applied by the contact listeners (see
+     * ContactListener.blocked).
+     *
+     * @param movedX  The x-coordinate reached.
+     * @param movedY  The y-coordinate reached.
+     * @param blocked True if an obstacle stopped the sprite before the end of its step.
+     */
+    void resolveMove(double movedX, double movedY, boolean blocked) {
+        store.resolveMove(entity, movedX, movedY, blocked);
+    }
+
+    /**
+     * Draws the animated sprite at its current position.
      *
      * @param g The Graphics context used for rendering.
      */
     @Override
     public void draw(Graphics g) {
-        int index = (int) (System.currentTimeMillis() / timeBetweenFrame % spriteSheetNumberOfColumn);
+        draw(g, 1);
+    }
+
+    /**
+     * Draws the animated sprite, selecting the correct frame from the sprite sheet based on the time and direction.
+     *
+     * @param g     The Graphics context used for rendering.
+     * @param alpha The interpolation factor between the previous and current physics ticks.
+     */
+    @Override
+    public void draw(Graphics g, double alpha) {
+        drawAt(g, interpolatedX(alpha), interpolatedY(alpha), getDirection(),
+                getAnimationFrame(System.currentTimeMillis()));
+    }
+
+    /**
+     * @param timeMillis The time of the drawn frame, in milliseconds.
+     * @return The column of the sprite sheet shown at the given time.
+     */
+    int getAnimationFrame(long timeMillis) {
+        return (int) (timeMillis / timeBetweenFrame % spriteSheetNumberOfColumn);
+    }
 
-        g.drawImage(image, (int) x, (int) y, (int) (x + width), (int) (y + height),
-                (int) (index * this.width), (int) (direction.getFrameLineNumber() * height),
-                (int) ((index + 1) * this.width), (int) ((direction.getFrameLineNumber() + 1) * this.height), null);
+    /**
+     * Draws the animated sprite with the given state instead of its own, such as a state captured in a
+     * world snapshot. Only reads the sprite sheet, which never changes.
+     *
+     * @param g         The Graphics context used for rendering.
+     * @param drawX     The x-coordinate to draw the sprite at.
+     * @param drawY     The y-coordinate to draw the sprite at.
+     * @param direction The direction selecting the line of the sprite sheet.
+     * @param frame     The column of the sprite sheet, see getAnimationFrame.
+     */
+    void drawAt(Graphics g, double drawX, double drawY, Direction direction, int frame) {
+        if (spriteSheet == null) {
+            return; // Nothing to draw
+        }
+        g.drawImage(spriteSheet.getFrame(direction.getFrameLineNumber(), frame), (int) drawX, (int) drawY, null);
     }
 }
@@ -0,0 +1,313 @@
+import java.util.Arrays;
+
+/**
+ * The EntityStore class holds the state of dynamic sprites as a structure of arrays: one primitive array per
+ * field, indexed by entity. A system updating every entity, such as the movement of the PhysicEngine, walks a
+ * few arrays linearly instead of following a pointer to each sprite object, and no type check is needed to
+ * know what an entity can do: it is stored in its flags.
+ * The store is the only copy of this state: a DynamicSprite is a view over its entity, whose getters and
+ * setters read and write the arrays. A sprite starts in a store of its own, and its entity is moved into the
+ * store of the PhysicEngine that moves it (see DynamicSprite.moveTo), so the entities of that store are the
+ * moving sprites, in the order they are moved on each tick.
+ * Entities are identified by their index, which never changes: entities are only added.
+ */
+public class EntityStore {
+    public static final int OBSTACLE = 1; // Flag of the entities that block the others
+    public static final int HAS_HEALTH = 2; // Flag of the entities that have health and can take damage
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int size = 0; // Number of entities
+    private DynamicSprite[] sprites; // Sprite viewing each entity
+    private double[] x; // X-coordinates
+    private double[] y; // Y-coordinates
+    private double[] previousX; // X-coordinates before the last physics tick, used for interpolation
+    private double[] previousY; // Y-coordinates before the last physics tick, used for interpolation
+    private double[] headingX; // Unit vectors of the walking directions, which can be diagonal
+    private double[] headingY;
+    private double[] speed; // Speeds in pixels per tick
+    private byte[] direction; // Ordinal of the Direction each entity faces
+    private double[] width; // Widths of the hitboxes
+    private double[] height; // Heights of the hitboxes
+    private int[] health; // Current health, only meaningful with the HAS_HEALTH flag
+    private int[] maxHealth; // Maximum health, only meaningful with the HAS_HEALTH flag
+    private byte[] flags; // Combination of the OBSTACLE and HAS_HEALTH flags
+    private boolean[] blocked; // Indicates if an obstacle stopped each entity on the last physics tick
+
+    /**
+     * Constructs an empty EntityStore.
+     *
+     * @param initialCapacity The number of entities the arrays can hold before growing.
+     */
+    public EntityStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        sprites = new DynamicSprite[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        headingX = new double[capacity];
+        headingY = new double[capacity];
+        speed = new double[capacity];
+        direction = new byte[capacity];
+        width = new double[capacity];
+        height = new double[capacity];
+        health = new int[capacity];
+        maxHealth = new int[capacity];
+        flags = new byte[capacity];
+        blocked = new boolean[capacity];
+    }
+
+    /**
+     * Doubles the capacity of every array, keeping the entities.
+     */
+    private void grow() {
+        int capacity = x.length * 2;
+        sprites = Arrays.copyOf(sprites, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        headingX = Arrays.copyOf(headingX, capacity);
+        headingY = Arrays.copyOf(headingY, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        health = Arrays.copyOf(health, capacity);
+        maxHealth = Arrays.copyOf(maxHealth, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        blocked = Arrays.copyOf(blocked, capacity);
+    }
+
+    /**
+     * Adds an entity standing still at a position, facing south, with a speed of 5 pixels per tick.
+     *
+     * @param sprite The sprite viewing the entity.
+     * @param x      The x-coordinate of the entity.
+     * @param y      The y-coordinate of the entity.
+     * @param width  The width of its hitbox.
+     * @param height The height of its hitbox.
+     * @return The index of the new entity.
+     */
+    int create(DynamicSprite sprite, double x, double y, double width, double height) {
+        if (size == this.x.length) {
+            grow();
+        }
+        int entity = size++;
+        this.sprites[entity] = sprite;
+        this.x[entity] = x;
+        this.y[entity] = y;
+        this.previousX[entity] = x;
+        this.previousY[entity] = y;
+        this.headingX[entity] = 0;
+        this.headingY[entity] = 1;
+        this.speed[entity] = 5;
+        this.direction[entity] = (byte) Direction.SOUTH.ordinal();
+        this.width[entity] = width;
+        this.height[entity] = height;
+        return entity;
+    }
+
+    /**
+     * Adds an entity with the state of an entity of another store, viewed by the same sprite.
+     *
+     * @param from   The store holding the entity.
+     * @param entity The index of the entity in that store.
+     * @return The index of the new entity.
+     */
+    int copyOf(EntityStore from, int entity) {
+        int copy = create(from.sprites[entity], from.x[entity], from.y[entity], from.width[entity],
+                from.height[entity]);
+        previousX[copy] = from.previousX[entity];
+        previousY[copy] = from.previousY[entity];
+        headingX[copy] = from.headingX[entity];
+        headingY[copy] = from.headingY[entity];
+        speed[copy] = from.speed[entity];
+        direction[copy] = from.direction[entity];
+        health[copy] = from.health[entity];
+        maxHealth[copy] = from.maxHealth[entity];
+        flags[copy] = from.flags[entity];
+        blocked[copy] = from.blocked[entity];
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The sprite viewing an entity.
+     */
+    public DynamicSprite getSprite(int entity) {
+        return sprites[entity];
+    }
+
+    public double getX(int entity) {
+        return x[entity];
+    }
+
+    public double getY(int entity) {
+        return y[entity];
+    }
+
+    public double getPreviousX(int entity) {
+        return previousX[entity];
+    }
+
+    public double getPreviousY(int entity) {
+        return previousY[entity];
+    }
+
+    public double getHeadingX(int entity) {
+        return headingX[entity];
+    }
+
+    public double getHeadingY(int entity) {
+        return headingY[entity];
+    }
+
+    public double getSpeed(int entity) {
+        return speed[entity];
+    }
+
+    public Direction getDirection(int entity) {
+        return DIRECTIONS[direction[entity]];
+    }
+
+    public double getWidth(int entity) {
+        return width[entity];
+    }
+
+    public double getHeight(int entity) {
+        return height[entity];
+    }
+
+    public int getHealth(int entity) {
+        return health[entity];
+    }
+
+    public int getMaxHealth(int entity) {
+        return maxHealth[entity];
+    }
+
+    public boolean hasFlag(int entity, int flag) {
+        return (flags[entity] & flag) != 0;
+    }
+
+    /**
+     * @return True if an obstacle stopped the entity before the end of its step on the last physics tick.
+     */
+    public boolean isBlocked(int entity) {
+        return blocked[entity];
+    }
+
+    /**
+     * @return The displacement along x of one step of an entity.
+     */
+    public double getVelocityX(int entity) {
+        return headingX[entity] * speed[entity];
+    }
+
+    /**
+     * @return The displacement along y of one step of an entity.
+     */
+    public double getVelocityY(int entity) {
+        return headingY[entity] * speed[entity];
+    }
+
+    public void setPosition(int entity, double x, double y) {
+        this.x[entity] = x;
+        this.y[entity] = y;
+    }
+
+    public void setPreviousPosition(int entity, double previousX, double previousY) {
+        this.previousX[entity] = previousX;
+        this.previousY[entity] = previousY;
+    }
+
+    public void setHeading(int entity, double headingX, double headingY) {
+        this.headingX[entity] = headingX;
+        this.headingY[entity] = headingY;
+    }
+
+    public void setSpeed(int entity, double speed) {
+        this.speed[entity] = speed;
+    }
+
+    public void setDirection(int entity, Direction direction) {
+        this.direction[entity] = (byte) direction.ordinal();
+    }
+
+    /**
+     * @param health The new health of the entity, clamped between 0 and its maximum health.
+     */
+    public void setHealth(int entity, int health) {
+        this.health[entity] = Math.max(0, Math.min(maxHealth[entity], health));
+    }
+
+    /**
+     * Gives health to an entity, full at first.
+     *
+     * @param maxHealth The maximum health of the entity.
+     */
+    public void setMaxHealth(int entity, int maxHealth) {
+        this.maxHealth[entity] = maxHealth;
+        this.health[entity] = maxHealth;
+        this.flags[entity] |= HAS_HEALTH;
+    }
+
+    public void setFlag(int entity, int flag, boolean set) {
+        flags[entity] = (byte) (set ? flags[entity] | flag : flags[entity] & ~flag);
+    }
+
+    /**
+     * Remembers the position of an entity at the start of a physics tick, and clears its blocked state.
+     */
+    public void savePreviousPosition(int entity) {
+        previousX[entity] = x[entity];
+        previousY[entity] = y[entity];
+        blocked[entity] = false;
+    }
+
+    /**
+     * Applies the outcome of a swept move to an entity.
+     *
+     * @param movedX  The x-coordinate reached.
+     * @param movedY  The y-coordinate reached.
+     * @param blocked True if an obstacle stopped the entity before the end of its step.
+     */
+    public void resolveMove(int entity, double movedX, double movedY, boolean blocked) {
+        x[entity] = movedX;
+        y[entity] = movedY;
+        this.blocked[entity] = blocked;
+    }
+
+    /**
+     * @return The x-coordinate of the box swept by the next step of an entity.
+     */
+    public double getSweptX(int entity) {
+        return SweptCollision.sweptMin(x[entity], getVelocityX(entity));
+    }
+
+    /**
+     * @return The y-coordinate of the box swept by the next step of an entity.
+     */
+    public double getSweptY(int entity) {
+        return SweptCollision.sweptMin(y[entity], getVelocityY(entity));
+    }
+
+    /**
+     * @return The width of the box swept by the next step of an entity.
+     */
+    public double getSweptWidth(int entity) {
+        return SweptCollision.sweptSize(width[entity], getVelocityX(entity));
+    }
+
+    /**
+     * @return The height of the box swept by the next step of an entity.
+     */
+    public double getSweptHeight(int entity) {
+        return SweptCollision.sweptSize(height[entity], getVelocityY(entity));
+    }
+}
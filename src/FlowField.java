@@ -0,0 +1,130 @@
+/**
+ * The FlowField class stores, for every tile of a navigation grid, the direction of the next step on a
+ * shortest path towards a target tile. It is computed with one breadth-first search from the target, after
+ * which any number of agents find their way with one array lookup each. It is only recomputed when the
+ * target moves to another tile or the walkable tiles change. Like the Pathfinder, it marks the tiles reached
+ * by each search, so a search only costs the tiles within its maximum distance, and nothing has to be cleared.
+ */
+public class FlowField {
+    private static final byte NONE = -1; // No direction: unreachable tile, or the target itself
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final NavigationGrid grid; // Walkable tiles
+    private final byte[] directions; // Ordinal of the direction to follow from each tile reached, or NONE
+    private final int[] distances; // Number of steps from each tile reached to the target
+    private final int[] visitMark; // Search during which each tile was reached, tiles of older searches are unreachable
+    private int search = 0; // Number of the last search
+    private final int[] queue; // Tiles to visit during the search
+    private int maxDistance; // Tiles further than this number of steps are not visited, to bound the search
+    private int targetIndex = -1; // Tile the field leads to
+    private int builtVersion = -1; // Version of the grid the field was computed from
+    private long computationCount = 0; // Number of searches run
+
+    /**
+     * Constructs an empty FlowField.
+     *
+     * @param grid        The walkable tiles.
+     * @param maxDistance The number of steps from the target after which tiles are considered unreachable,
+     *                    or Integer.MAX_VALUE to visit the whole grid.
+     */
+    public FlowField(NavigationGrid grid, int maxDistance) {
+        this.grid = grid;
+        this.maxDistance = maxDistance;
+        int size = grid.getColumns() * grid.getRows();
+        this.directions = new byte[size];
+        this.distances = new int[size];
+        this.visitMark = new int[size];
+        this.queue = new int[size];
+    }
+
+    /**
+     * Makes the field lead to the given tile, recomputing it only if the target tile or the walkable tiles
+     * changed since the last computation.
+     *
+     * @param targetColumn The column of the target in the grid.
+     * @param targetRow    The row of the target in the grid.
+     * @return True if the field was recomputed.
+     */
+    public boolean update(int targetColumn, int targetRow) {
+        grid.refresh();
+        int target = grid.index(targetColumn, targetRow);
+        if (target == targetIndex && grid.getVersion() == builtVersion) {
+            return false;
+        }
+        targetIndex = target;
+        builtVersion = grid.getVersion();
+        compute();
+        return true;
+    }
+
+    /**
+     * Runs the breadth-first search from the target. Neighbours are always visited in the same order, so the
+     * field only depends on the grid and the target.
+     */
+    private void compute() {
+        computationCount++;
+        search++;
+        if (targetIndex < 0 || !grid.isWalkable(targetIndex)) {
+            return;
+        }
+        int columns = grid.getColumns();
+        int head = 0;
+        int tail = 0;
+        visitMark[targetIndex] = search;
+        distances[targetIndex] = 0;
+        directions[targetIndex] = NONE;
+        queue[tail++] = targetIndex;
+        while (head < tail) {
+            int tile = queue[head++];
+            int distance = distances[tile];
+            if (distance >= maxDistance) {
+                continue;
+            }
+            int column = grid.columnOf(tile);
+            int row = grid.rowOf(tile);
+            // A neighbour reached from this tile has to step back towards it
+            tail = visit(column, row - 1, tile - columns, Direction.SOUTH, distance, tail);
+            tail = visit(column, row + 1, tile + columns, Direction.NORTH, distance, tail);
+            tail = visit(column - 1, row, tile - 1, Direction.EAST, distance, tail);
+            tail = visit(column + 1, row, tile + 1, Direction.WEST, distance, tail);
+        }
+    }
+
+    private int visit(int column, int row, int neighbour, Direction towardsTile, int distance, int tail) {
+        if (grid.isWalkable(column, row) && visitMark[neighbour] != search) {
+            visitMark[neighbour] = search;
+            distances[neighbour] = distance + 1;
+            directions[neighbour] = (byte) towardsTile.ordinal();
+            queue[tail++] = neighbour;
+        }
+        return tail;
+    }
+
+    /**
+     * @return The direction to follow from a tile, or null if the tile is the target or cannot reach it.
+     */
+    public Direction getDirection(int column, int row) {
+        int index = grid.index(column, row);
+        if (index < 0 || visitMark[index] != search || directions[index] == NONE) {
+            return null;
+        }
+        return DIRECTIONS[directions[index]];
+    }
+
+    /**
+     * @return The number of steps from a tile to the target, or -1 if it cannot reach it.
+     */
+    public int getDistance(int column, int row) {
+        int index = grid.index(column, row);
+        return index < 0 || visitMark[index] != search ? -1 : distances[index];
+    }
+
+    public void setMaxDistance(int maxDistance) {
+        this.maxDistance = maxDistance;
+        builtVersion = -1; // Recomputed on the next update
+    }
+
+    public long getComputationCount() {
+        return computationCount;
+    }
+}
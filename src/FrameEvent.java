@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event committed by the RenderEngine for each frame drawn while a recording enables it.
+ * Its duration is the time spent drawing the frame, in active mode, or painting it, in passive mode.
+ */
+@Name("dungeon.Frame")
+@Label("Rendered Frame")
+@Category({"Dungeon Crawler", "Rendering"})
+@Description("One frame drawn or painted by the render engine")
+class FrameEvent extends jdk.jfr.Event {
+    private static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+
+    @Label("Tick Drawn")
+    long tick;
+
+    @Label("Active Rendering")
+    boolean active;
+
+    /**
+     * @return True if a running recording enables the event, checked without creating one.
+     */
+    static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+}
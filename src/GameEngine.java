@@ -2,14 +2,33 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.ArrayList;
 import java.awt.Image;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * The GameEngine class applies the player input and the game rules on each tick.
+ * Key events arrive on the AWT event thread: they are only turned into commands on a lock-free queue,
+ * which the simulation drains at the start of each tick, so the hero is only ever modified by the
+ * simulation thread.
+ * The simulation never reads the clock nor an unseeded random source: with an InputRecorder attached, the
+ * commands applied on each tick are enough to replay a session exactly.
+ */
 public class GameEngine implements Engine, KeyListener {
+    private static final int UP = 1; // Bits of the held arrow keys
+    private static final int DOWN = 2;
+    private static final int LEFT = 4;
+    private static final int RIGHT = 8;
+
     private HeroWithHealth hero; // The main character controlled by the player
     private ArrayList<Sprite> environment; // List of environment sprites (obstacles, etc.)
     private Image gameOverImage; // Image displayed when the game ends
-    private boolean gameOver = false; // Indicates whether the game is over
-    private RenderEngine renderEngine; // Responsible for rendering the game state
+    private volatile boolean gameOver = false; // Indicates whether the game is over, also read by the input thread
     private PhysicEngine physicEngine; // Responsible for rendering the game state
+    private final DamageListener damageListener = new DamageListener(); // Applies the damage of the hero's contacts
+    private final ConcurrentLinkedQueue<InputCommand> inputQueue = new ConcurrentLinkedQueue<>(); // Pending input
+    private long tickCount = 0; // Number of ticks simulated
+    private int heldArrows = 0; // Arrow keys held down, as a combination of UP, DOWN, LEFT and RIGHT
+    private InputRecorder inputRecorder; // Records the applied commands and state checksums, can be null
 
     /**
      * Constructs a new GameEngine with a hero and an environment.
@@ -27,33 +46,109 @@ public class GameEngine implements Engine, KeyListener {
     }
 
     /**
-     * Updates the game logic. Checks for game-over conditions and hero collisions.
-     * If the hero's health reaches zero, the game ends.
+     * Updates the game logic. Checks for game-over conditions: if the hero's health reaches zero, the game ends.
+     * The damage of the hero's collisions is applied by the DamageListener, from the contacts of the physics tick.
      */
     @Override
     public void update() {
         if (hero.getHealth() <= 0) { // Check if the hero's health is depleted
-            gameOver = true; // Set game-over state
-            renderEngine.setGameOver(true);
-            physicEngine.setGameOver(true);
+            gameOver = true; // Set game-over state, published to the rendering by the world snapshots
+            if (physicEngine != null) {
+                physicEngine.setGameOver(true);
+            }
+        }
+        tickCount++;
+        if (inputRecorder != null && inputRecorder.isChecksumTick(tickCount)) {
+            try {
+                inputRecorder.recordChecksum(tickCount, getStateChecksum());
+            } catch (IOException e) {
+                stopRecording(e);
+            }
         }
-        if (!gameOver) {
-            hero.checkCollisionWithObstacles(environment); // Check collisions with environment
+    }
+
+    /**
+     * Applies the input commands queued since the previous tick, in the order they were submitted.
+     * Must be called by the simulation thread, at the start of a tick.
+     */
+    public void processInput() {
+        InputCommand command;
+        while ((command = inputQueue.poll()) != null) {
+            if (inputRecorder != null) {
+                try {
+                    inputRecorder.recordInput(tickCount, command);
+                } catch (IOException e) {
+                    stopRecording(e);
+                }
+            }
+            if (command.isPressed()) {
+                pressKey(command.getKeyCode());
+            } else {
+                releaseKey(command.getKeyCode());
+            }
         }
     }
 
     /**
-     * Links a RenderEngine to the GameEngine.
+     * Queues an input command, to be applied at the start of the next tick. Can be called from any thread.
+     *
+     * @param command The command to apply.
+     */
+    public void submit(InputCommand command) {
+        inputQueue.offer(command);
+    }
+
+
+    /**
+     * Records the commands applied from the next tick on, and a checksum of the state every few ticks.
      *
-     * @param renderEngine The RenderEngine responsible for drawing the game.
+     * @param inputRecorder The recorder, or null to stop recording.
+     */
+    public void setInputRecorder(InputRecorder inputRecorder) {
+        this.inputRecorder = inputRecorder;
+    }
+
+    /**
+     * Ends the recording with the current number of ticks and state checksum. Must not be called while a
+     * tick is being simulated.
      */
-    public void setRenderEngine(RenderEngine renderEngine) {
-        this.renderEngine = renderEngine;
+    public void finishRecording() throws IOException {
+        if (inputRecorder != null) {
+            inputRecorder.finish(tickCount, getStateChecksum());
+            inputRecorder = null;
+        }
+    }
+
+    private void stopRecording(IOException e) {
+        System.out.println("Error: the input recording failed and was stopped: " + e.getMessage());
+        try {
+            inputRecorder.close(); // Only releases the file, the recording is incomplete anyway
+        } catch (IOException ignored) {
+        }
+        inputRecorder = null;
+    }
+
+    /**
+     * @return The checksum of the moving sprites and of the game-over flag, see StateChecksum.
+     */
+    public long getStateChecksum() {
+        return StateChecksum.of(physicEngine.getMovingSpriteList(), gameOver);
     }
 
+    public long getTickCount() {
+        return tickCount;
+    }
 
+    /**
+     * Links a PhysicEngine to the GameEngine, and subscribes the damage rules to the contacts of the hero
+     * that it computes on each tick.
+     *
+     * @param physicEngine The PhysicEngine moving the hero.
+     */
     public void setPhysicEngine(PhysicEngine physicEngine) {
         this.physicEngine = physicEngine;
+        physicEngine.trackContacts(hero);
+        physicEngine.addContactListener(damageListener);
     }
 
     /**
@@ -66,25 +161,37 @@ public class GameEngine implements Engine, KeyListener {
         if (gameOver) {
             return;  // Do nothing if the game is over
         }
+        submit(new InputCommand(true, e.getKeyCode())); // Applied by the simulation on its next tick
+    }
+
+    /**
+     * Applies the action of a pressed key, from the input queue or from a scripted or random input source.
+     * Must be called by the simulation thread.
+     *
+     * @param keyCode The code of the pressed key, one of the KeyEvent.VK_ constants.
+     */
+    public void pressKey(int keyCode) {
+        if (gameOver) {
+            return;  // Do nothing if the game is over
+        }
 
-        System.out.println("Key pressed: " + e.getKeyCode());
-        switch (e.getKeyCode()) {
+        switch (keyCode) {
             case KeyEvent.VK_UP:
-                hero.setDirection(Direction.NORTH); // Move hero upward
+                holdArrow(UP, Direction.NORTH); // Move hero upward
                 break;
             case KeyEvent.VK_DOWN:
-                hero.setDirection(Direction.SOUTH); // Move hero downward
+                holdArrow(DOWN, Direction.SOUTH); // Move hero downward
                 break;
             case KeyEvent.VK_LEFT:
-                hero.setDirection(Direction.WEST); // Move hero to the left
+                holdArrow(LEFT, Direction.WEST); // Move hero to the left
                 break;
             case KeyEvent.VK_RIGHT:
-                hero.setDirection(Direction.EAST); // Move hero to the right
+                holdArrow(RIGHT, Direction.EAST); // Move hero to the right
                 break;
         }
 
         // Additional controls for actions
-        int key = e.getKeyCode();
+        int key = keyCode;
         if (key == KeyEvent.VK_SPACE) {
             hero.takeDamage(20); // Press SPACE to take damage
         }
@@ -103,9 +210,86 @@ public class GameEngine implements Engine, KeyListener {
      */
     @Override
     public void keyReleased(KeyEvent e) {
-        if (e.getKeyCode() == KeyEvent.VK_SHIFT) {
+        submit(new InputCommand(false, e.getKeyCode()));
+    }
+
+    /**
+     * Applies the action of a released key.
+     *
+     * @param keyCode The code of the released key, one of the KeyEvent.VK_ constants.
+     */
+    public void releaseKey(int keyCode) {
+        if (keyCode == KeyEvent.VK_SHIFT) {
             hero.setSpeed(5.0); // Reset to normal speed when SHIFT is released
         }
+        int arrow = switch (keyCode) {
+            case KeyEvent.VK_UP -> UP;
+            case KeyEvent.VK_DOWN -> DOWN;
+            case KeyEvent.VK_LEFT -> LEFT;
+            case KeyEvent.VK_RIGHT -> RIGHT;
+            default -> 0;
+        };
+        if (arrow != 0 && (heldArrows & arrow) != 0) {
+            heldArrows &= ~arrow;
+            // Keep walking along the arrows still held; with none, the hero keeps its last heading
+            if ((heldArrows & (UP | DOWN)) != 0 && (heldArrows & (LEFT | RIGHT)) == 0) {
+                hero.setDirection((heldArrows & UP) != 0 ? Direction.NORTH : Direction.SOUTH);
+            } else if ((heldArrows & (LEFT | RIGHT)) != 0 && (heldArrows & (UP | DOWN)) == 0) {
+                hero.setDirection((heldArrows & LEFT) != 0 ? Direction.WEST : Direction.EAST);
+            }
+        }
+    }
+
+    /**
+     * Records a held arrow key and steers the hero: along its direction, or along a diagonal when a
+     * perpendicular arrow is held too. The hero faces the last pressed arrow.
+     */
+    private void holdArrow(int arrow, Direction direction) {
+        heldArrows |= arrow;
+        hero.setDirection(direction);
+        int horizontal = ((heldArrows & RIGHT) != 0 ? 1 : 0) - ((heldArrows & LEFT) != 0 ? 1 : 0);
+        int vertical = ((heldArrows & DOWN) != 0 ? 1 : 0) - ((heldArrows & UP) != 0 ? 1 : 0);
+        if (horizontal != 0 && vertical != 0) {
+            hero.setHeading(horizontal, vertical);
+        }
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return The arrow keys held down, as a combination of bits, to be restored with setHeldArrows.
+     */
+    int getHeldArrows() {
+        return heldArrows;
+    }
+
+    /**
+     * Restores the arrow keys held down, for instance when a client rewinds its prediction to a state
+     * confirmed by the server.
+     *
+     * @param heldArrows A value returned by getHeldArrows.
+     */
+    void setHeldArrows(int heldArrows) {
+        this.heldArrows = heldArrows;
+    }
+
+    /**
+     * Restores the state of the game rules saved with a world, see WorldSave. Must be called by the simulation
+     * thread, between two ticks.
+     *
+     * @param tickCount  The number of ticks simulated.
+     * @param gameOver   Whether the game is over.
+     * @param heldArrows A value returned by getHeldArrows.
+     */
+    void restoreState(long tickCount, boolean gameOver, int heldArrows) {
+        this.tickCount = tickCount;
+        this.gameOver = gameOver;
+        this.heldArrows = heldArrows;
+        if (physicEngine != null) {
+            physicEngine.setGameOver(gameOver);
+        }
     }
 
     @Override
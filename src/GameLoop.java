@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+
+/**
+ * The GameLoop class drives the engines from a dedicated thread, replacing independent Swing timers.
+ * The simulation (physics then game logic) advances with a fixed timestep accumulator, so movement speed
+ * does not depend on timer jitter, while rendering runs at its own frame rate and interpolates the sprites
+ * between the last two simulation ticks. After its ticks, the loop publishes an immutable snapshot of the
+ * moving sprites to the render engine, which only draws from it.
+ * With metrics enabled, or a flight recording enabling TickEvent, the time spent in each engine is measured
+ * on every tick; otherwise ticks are only timed as a whole, for the overrun count.
+ */
+public class GameLoop implements Runnable {
+    private static final int MAX_TICKS_PER_FRAME = 5; // Ticks simulated at most before rendering again
+
+    private final PhysicEngine physicEngine; // Updated first on each tick
+    private final GameEngine gameEngine; // Updated after the physics on each tick
+    private final RenderEngine renderEngine; // Rendered at the frame rate, can be null
+    private final ArrayList<Engine> tickEngines = new ArrayList<>(); // Updated on each tick before the physics
+    private final ArrayList<Engine> preInputEngines = new ArrayList<>(); // Updated on each tick before the input
+    private final long tickNanos; // Duration of a simulation tick
+    private final long frameNanos; // Duration of a rendered frame
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // Metrics, written by the loop thread and read by anyone
+    private volatile long tickCount = 0; // Number of simulated ticks
+    private volatile long frameCount = 0; // Number of rendered frames
+    private volatile long overrunCount = 0; // Ticks that took longer than the tick duration
+    private volatile long droppedTicks = 0; // Ticks skipped because the loop fell too far behind
+    private volatile long maxTickNanos = 0; // Longest tick since the start
+    private volatile double framesPerSecond = 0; // Frame rate measured over the last second
+
+    // Detailed measurements, only taken while the metrics are enabled
+    private Metrics metrics; // Registry of the measurements, null if none is set
+    private LatencyHistogram tickHistogram;
+    private LatencyHistogram gameHistogram; // Input and game logic
+    private LatencyHistogram tickEnginesHistogram;
+    private LatencyHistogram physicsHistogram;
+    private LatencyHistogram renderHistogram;
+
+    /**
+     * Constructs a GameLoop.
+     *
+     * @param physicEngine The physic engine, updated first on each tick.
+     * @param gameEngine   The game engine, updated after the physic engine on each tick.
+     * @param renderEngine The render engine, or null to run the simulation only.
+     * @param tickRate     The number of simulation ticks per second.
+     * @param frameRate    The maximum number of rendered frames per second.
+     */
+    public GameLoop(PhysicEngine physicEngine, GameEngine gameEngine, RenderEngine renderEngine,
+                    int tickRate, int frameRate) {
+        if (tickRate <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Tick rate and frame rate must be positive");
+        }
+        this.physicEngine = physicEngine;
+        this.gameEngine = gameEngine;
+        this.renderEngine = renderEngine;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.frameNanos = 1_000_000_000L / frameRate;
+    }
+
+    /**
+     * Adds an engine updated on each tick before the physics, such as a level streaming its chunks.
+     * Must be called before the loop is started.
+     *
+     * @param engine The engine to update.
+     */
+    public void addTickEngine(Engine engine) {
+        tickEngines.add(engine);
+    }
+
+    /**
+     * Adds an engine updated at the start of each tick, before the queued input is applied, such as an autosave
+     * loading a world: the input of the tick then applies to the loaded world instead of being overwritten.
+     * Must be called before the loop is started.
+     *
+     * @param engine The engine to update.
+     */
+    public void addPreInputEngine(Engine engine) {
+        preInputEngines.add(engine);
+    }
+
+    /**
+     * Registers the measurements of the loop in a metrics registry: durations of the ticks and of each engine,
+     * frame rate, tick counters, moving sprites and collision checks. Must be called before the loop is started.
+     *
+     * @param metrics The registry, measured only while it is enabled.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        tickHistogram = metrics.histogram("tick");
+        gameHistogram = metrics.histogram("game.update");
+        tickEnginesHistogram = metrics.histogram("tickEngines.update");
+        physicsHistogram = metrics.histogram("physics.update");
+        renderHistogram = metrics.histogram("render.update");
+        metrics.gauge("fps", () -> framesPerSecond);
+        metrics.gauge("ticks", () -> tickCount);
+        metrics.gauge("overruns", () -> overrunCount);
+        metrics.gauge("droppedTicks", () -> droppedTicks);
+        metrics.gauge("entities", physicEngine::getMovingSpriteCount);
+        metrics.gauge("collisionChecksPerTick", physicEngine::getLastTickCollisionChecks);
+    }
+
+    /**
+     * Starts the loop on a new daemon thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and waits for its thread to end.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long nextFrame = previous;
+        long secondStart = previous;
+        long framesAtSecondStart = 0;
+        publishSnapshot();
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+
+            // Advance the simulation by fixed steps
+            int steps = 0;
+            while (accumulator >= tickNanos && steps < MAX_TICKS_PER_FRAME) {
+                tick();
+                accumulator -= tickNanos;
+                steps++;
+            }
+            if (accumulator >= tickNanos) {
+                // Too far behind: drop the remaining ticks instead of spiralling
+                droppedTicks += accumulator / tickNanos;
+                accumulator %= tickNanos;
+            }
+            if (steps > 0) {
+                publishSnapshot(); // Frames drawn from now on show the state of the last tick
+            }
+
+            // Render with the remaining fraction of a tick as interpolation factor
+            now = System.nanoTime();
+            if (renderEngine != null && now >= nextFrame) {
+                renderEngine.setInterpolation((double) accumulator / tickNanos);
+                renderEngine.update();
+                if (metrics != null && metrics.isEnabled()) {
+                    renderHistogram.record(System.nanoTime() - now);
+                }
+                frameCount++;
+                nextFrame = Math.max(nextFrame + frameNanos, now);
+            }
+
+            if (now - secondStart >= 1_000_000_000L) {
+                framesPerSecond = (frameCount - framesAtSecondStart) * 1e9 / (now - secondStart);
+                if (metrics != null && metrics.isEnabled()) {
+                    metrics.sampleRuntime(); // Allocation rate of this thread, garbage collections
+                }
+                secondStart = now;
+                framesAtSecondStart = frameCount;
+            }
+
+            sleepUntil(Math.min(previous + tickNanos - accumulator,
+                    renderEngine != null ? nextFrame : Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Runs one simulation tick and records its duration. The input queued since the previous tick is
+     * applied first, so the whole tick sees the same input.
+     */
+    private void tick() {
+        if ((metrics != null && metrics.isEnabled()) || TickEvent.isRecorded()) {
+            measuredTick();
+            return;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < preInputEngines.size(); i++) {
+            preInputEngines.get(i).update();
+        }
+        gameEngine.processInput();
+        for (int i = 0; i < tickEngines.size(); i++) {
+            tickEngines.get(i).update();
+        }
+        physicEngine.update();
+        gameEngine.update();
+        countTick(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs one simulation tick like tick(), measuring the time spent in each engine for the metrics and the
+     * flight recorder.
+     */
+    private void measuredTick() {
+        TickEvent event = new TickEvent();
+        event.begin();
+        long start = System.nanoTime();
+        for (int i = 0; i < preInputEngines.size(); i++) {
+            preInputEngines.get(i).update();
+        }
+        long inputStart = System.nanoTime();
+        gameEngine.processInput();
+        long tickEnginesStart = System.nanoTime();
+        for (int i = 0; i < tickEngines.size(); i++) {
+            tickEngines.get(i).update();
+        }
+        long physicsStart = System.nanoTime();
+        physicEngine.update();
+        long gameStart = System.nanoTime();
+        gameEngine.update();
+        long end = System.nanoTime();
+        event.end();
+        countTick(end - start);
+
+        long gameNanos = tickEnginesStart - inputStart + end - gameStart;
+        long tickEnginesNanos = inputStart - start + physicsStart - tickEnginesStart;
+        if (metrics != null && metrics.isEnabled()) {
+            tickHistogram.record(end - start);
+            gameHistogram.record(gameNanos);
+            tickEnginesHistogram.record(tickEnginesNanos);
+            physicsHistogram.record(gameStart - physicsStart);
+        }
+        if (event.shouldCommit()) {
+            event.tick = tickCount;
+            event.gameNanos = gameNanos;
+            event.tickEnginesNanos = tickEnginesNanos;
+            event.physicsNanos = gameStart - physicsStart;
+            event.movingSprites = physicEngine.getMovingSpriteCount();
+            event.collisionChecks = physicEngine.getLastTickCollisionChecks();
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts a simulated tick and its duration.
+     */
+    private void countTick(long duration) {
+        tickCount++;
+        if (duration > tickNanos) {
+            overrunCount++;
+        }
+        if (duration > maxTickNanos) {
+            maxTickNanos = duration;
+        }
+    }
+
+    /**
+     * Hands the state of the simulation over to the render engine, which may draw it from another thread.
+     */
+    private void publishSnapshot() {
+        if (renderEngine != null) {
+            renderEngine.captureSnapshot(tickCount, gameEngine.isGameOver());
+        }
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            Thread.yield();
+            return;
+        }
+        try {
+            Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+        } catch (InterruptedException e) {
+            running = false;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    public double getMaxTickMillis() {
+        return maxTickNanos / 1e6;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * @return A one-line summary of the loop metrics.
+     */
+    public String getReport() {
+        return String.format("%.1f FPS, %d ticks, %d overruns, %d dropped ticks, max tick %.2f ms",
+                framesPerSecond, tickCount, overrunCount, droppedTicks, getMaxTickMillis());
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The GameSession class is one dungeon run hosted by a SessionServer: a world of its own (hero, NPCs and
+ * engines, see HeadlessRunner) on a level shared with the other sessions. It is only ticked by the
+ * simulation thread of its shard; input can be submitted from any thread.
+ * A session that receives no input for a number of ticks is parked: its shard stops ticking it, so its world
+ * stays frozen, until the next input wakes it up.
+ */
+public final class GameSession {
+    private final int id;
+    private final SessionServer.Shard shard; // Simulation thread ticking the session
+    private final HeadlessRunner world; // Engines, hero and NPCs of the session
+    private final AtomicBoolean parked = new AtomicBoolean(false); // Indicates whether the shard stopped ticking it
+    private volatile boolean inputPending = false; // Indicates whether input was submitted since the tick began
+    private volatile boolean closed = false; // Indicates whether the session was closed and must be dropped
+    private int idleTicks = 0; // Ticks since the last input, only used by the shard
+
+    // Cost of the ticks, written by the shard only, read by the reports
+    private volatile long tickCount = 0;
+    private volatile long totalTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+
+    /**
+     * Builds the world of a session.
+     *
+     * @param id       The identifier of the session in its server.
+     * @param shard    The shard that will tick the session.
+     * @param level    The level of the session, shared with other sessions.
+     * @param npcCount The number of NPCs.
+     * @param seed     The seed of the positions and directions of the NPCs.
+     * @param chase    Indicates whether the NPCs chase the hero instead of wandering.
+     * @param immortal Indicates whether the hero is healed instead of dying.
+     */
+    GameSession(int id, SessionServer.Shard shard, SharedLevel level, int npcCount, long seed, boolean chase,
+                boolean immortal) throws IOException {
+        this.id = id;
+        this.shard = shard;
+        this.world = new HeadlessRunner(level, npcCount, new Random(seed));
+        if (chase) {
+            world.enableChase();
+        }
+        world.setImmortal(immortal);
+    }
+
+    /**
+     * Queues an input command, applied on the next tick of the session. Wakes the session up if it was
+     * parked. Can be called from any thread.
+     *
+     * @param command The command to apply.
+     */
+    public void submit(InputCommand command) {
+        world.getGameEngine().submit(command);
+        inputPending = true; // Written before reading parked: either the shard sees it, or we see the session parked
+        if (parked.compareAndSet(true, false)) {
+            shard.wake(this);
+        }
+    }
+
+    /**
+     * Simulates one tick and measures its cost. Called by the shard only.
+     *
+     * @return The duration of the tick in nanoseconds.
+     */
+    long tick() {
+        if (inputPending) {
+            inputPending = false;
+            idleTicks = 0;
+        } else {
+            idleTicks++;
+        }
+        long start = System.nanoTime();
+        world.tick();
+        long duration = System.nanoTime() - start;
+        tickCount++;
+        totalTickNanos += duration;
+        if (duration > maxTickNanos) {
+            maxTickNanos = duration;
+        }
+        return duration;
+    }
+
+    /**
+     * Parks the session if it received no input for the given number of ticks. Called by the shard only,
+     * after a tick.
+     *
+     * @param maxIdleTicks The number of ticks without input after which the session is parked.
+     * @return True if the session was parked and must not be ticked until woken up.
+     */
+    boolean parkIfIdle(int maxIdleTicks) {
+        if (idleTicks < maxIdleTicks) {
+            return false;
+        }
+        parked.set(true);
+        // Input submitted or a close while parking would not have woken the session up: keep it, so that the
+        // shard ticks it or drops it
+        return !((inputPending || closed) && parked.compareAndSet(true, false));
+    }
+
+    /**
+     * Marks the session closed: its shard drops it before its next tick.
+     */
+    void close() {
+        closed = true;
+        if (parked.compareAndSet(true, false)) {
+            shard.wake(this); // So that the shard drops it
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isParked() {
+        return parked.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isGameOver() {
+        return world.getGameEngine().isGameOver();
+    }
+
+    /**
+     * @return The number of ticks simulated.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return The mean duration of a tick of the session in nanoseconds, or 0 before the first tick.
+     */
+    public double getMeanTickNanos() {
+        long ticks = tickCount;
+        return ticks == 0 ? 0 : (double) totalTickNanos / ticks;
+    }
+
+    /**
+     * @return The longest tick of the session in nanoseconds.
+     */
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public long getTotalTickNanos() {
+        return totalTickNanos;
+    }
+
+    /**
+     * @return The number of moving sprites of the session, the hero included.
+     */
+    public int getMovingSpriteCount() {
+        return world.getMovingSpriteCount();
+    }
+}
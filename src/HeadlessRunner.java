@@ -0,0 +1,288 @@
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Runs the simulation (PhysicEngine and GameEngine) without any display, as fast as possible, for load and
+ * soak testing on machines without a screen. The hero is driven by random input or by an input script,
+ * optional NPCs wander in the level, and the throughput is reported in ticks per second.
+ *
+ * Usage: java HeadlessRunner [options]
+ *   --level path      level file, text or binary (default ./data/level1.txt)
+ *   --ticks n         number of ticks to simulate (default 1000000)
+ *   --npcs n          number of wandering dynamic sprites (default 0)
+ *   --seed n          seed of the random input (default 42)
+ *   --script path     input script, one "tick press|release KEY" per line, KEY being a KeyEvent.VK_ name
+ *   --immortal        heal the hero instead of stopping at game over
+ *   --chase           the NPCs within 64 steps of the hero chase it instead of wandering
+ *   --record path     record the session, to be replayed by a ReplayRunner
+ *   --checksum n      number of ticks between two state checksums in the recording (default 100)
+ *   --load path       resume a saved world, built from the same level, NPC count and seed
+ *   --save path       save the world at the end, and every --autosave ticks if set
+ *   --autosave n      number of ticks between two background saves (default 0: only at the end)
+ */
+public class HeadlessRunner {
+    private static final int[] RANDOM_KEYS = {KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT,
+            KeyEvent.VK_SHIFT, KeyEvent.VK_SPACE, KeyEvent.VK_H};
+    private static final int CHASE_DISTANCE = 64; // Steps from the hero beyond which the NPCs keep wandering
+
+    private final PhysicEngine physicEngine;
+    private final GameEngine gameEngine;
+    private final HeroWithHealth hero;
+    private final ArrayList<DynamicSprite> npcs = new ArrayList<>();
+    private final SharedLevel level; // Tiles of the level, possibly shared with other sessions
+    private ChaseSystem chaseSystem; // Steers the NPCs towards the hero, null if they wander
+    private boolean immortal = false; // Indicates whether the hero is healed instead of dying
+    private Autosave autosave; // Saves the world between two ticks, null if it is not saved
+
+    /**
+     * Builds the engines of a game on a level, without any window nor render engine.
+     *
+     * @param levelPath The level file, text or binary.
+     * @param npcCount  The number of wandering dynamic sprites to add.
+     * @param random    The source of the positions and directions of the NPCs.
+     */
+    public HeadlessRunner(String levelPath, int npcCount, Random random) throws IOException {
+        this(SharedLevel.load(levelPath), npcCount, random);
+    }
+
+    /**
+     * Builds the engines of a game on a level that may be shared with other games, without any window nor
+     * render engine.
+     *
+     * @param level    The level, only read.
+     * @param npcCount The number of wandering dynamic sprites to add.
+     * @param random   The source of the positions and directions of the NPCs.
+     */
+    public HeadlessRunner(SharedLevel level, int npcCount, Random random) throws IOException {
+        this.level = level;
+        TileMap tileMap = level.getTileMap();
+        physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(tileMap);
+        hero = new HeroWithHealth(64, 64, Assets.getImage("./img/heroTileSheetLowRes.png"), 48, 50,
+                Assets.getImage("./img/life_bar_remove.png"));
+        physicEngine.addToMovingSpriteList(hero);
+        gameEngine = new GameEngine(hero, physicEngine.getEnvironment());
+        gameEngine.setPhysicEngine(physicEngine);
+
+        Direction[] directions = Direction.values();
+        while (npcs.size() < npcCount) {
+            int column = random.nextInt(tileMap.getColumns());
+            int row = random.nextInt(tileMap.getRows());
+            if (tileMap.isSolid(column, row)) {
+                continue;
+            }
+            DynamicSprite npc = new DynamicSprite(column * tileMap.getTileWidth(), row * tileMap.getTileHeight(),
+                    null, 48, 50);
+            npc.setDirection(directions[random.nextInt(directions.length)]);
+            npcs.add(npc);
+            physicEngine.addToMovingSpriteList(npc);
+        }
+    }
+
+    /**
+     * Makes the NPCs chase the hero through the level, those within CHASE_DISTANCE steps of it. Each time the
+     * hero changes tile, the flow field is only searched that far, whatever the size of the level.
+     */
+    public void enableChase() {
+        chaseSystem = new ChaseSystem(level.getNavigationGrid(), CHASE_DISTANCE);
+        chaseSystem.setTarget(hero);
+        for (DynamicSprite npc : npcs) {
+            chaseSystem.addChaser(npc);
+        }
+    }
+
+    /**
+     * Heals the hero before each tick when its health gets low, so that long runs never reach game over.
+     */
+    public void setImmortal(boolean immortal) {
+        this.immortal = immortal;
+    }
+
+    /**
+     * Saves the world between two ticks, as the autosave decides.
+     *
+     * @param autosave The autosave of this runner's engines, or null to stop saving.
+     */
+    public void setAutosave(Autosave autosave) {
+        this.autosave = autosave;
+    }
+
+    public GameEngine getGameEngine() {
+        return gameEngine;
+    }
+
+    public PhysicEngine getPhysicEngine() {
+        return physicEngine;
+    }
+
+    /**
+     * @return The number of moving sprites, the hero included.
+     */
+    public int getMovingSpriteCount() {
+        return npcs.size() + 1;
+    }
+
+    /**
+     * Simulates one tick like the GameLoop: the autosave first, so a load happens before the input is applied,
+     * then the queued input, the tick engines and the physics, then game logic.
+     */
+    public void tick() {
+        if (autosave != null) {
+            autosave.update();
+        }
+        if (immortal && hero.getHealth() < 50) {
+            hero.heal(100);
+        }
+        gameEngine.processInput();
+        if (chaseSystem != null) {
+            chaseSystem.update();
+        }
+        physicEngine.update();
+        gameEngine.update();
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true"); // Never open a display, even if one is available
+
+        String levelPath = "./data/level1.txt";
+        long ticks = 1_000_000;
+        int npcCount = 0;
+        long seed = 42;
+        String scriptPath = null;
+        boolean immortal = false;
+        boolean chase = false;
+        String recordPath = null;
+        int checksumInterval = 100;
+        String loadPath = null;
+        String savePath = null;
+        long autosaveInterval = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--level" -> levelPath = args[++i];
+                case "--ticks" -> ticks = Long.parseLong(args[++i]);
+                case "--npcs" -> npcCount = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--script" -> scriptPath = args[++i];
+                case "--immortal" -> immortal = true;
+                case "--chase" -> chase = true;
+                case "--record" -> recordPath = args[++i];
+                case "--checksum" -> checksumInterval = Integer.parseInt(args[++i]);
+                case "--load" -> loadPath = args[++i];
+                case "--save" -> savePath = args[++i];
+                case "--autosave" -> autosaveInterval = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (checksumInterval < 1) {
+            throw new IllegalArgumentException("--checksum must be at least 1 tick");
+        }
+
+        Random random = new Random(seed);
+        HeadlessRunner runner = new HeadlessRunner(levelPath, npcCount, random);
+        if (chase) {
+            runner.enableChase();
+        }
+        runner.setImmortal(immortal);
+        if (loadPath != null) {
+            if (recordPath != null) {
+                throw new IllegalArgumentException("Recordings start from a new game, not from a saved world");
+            }
+            long loadStart = System.nanoTime();
+            long savedTick = WorldSave.load(Path.of(loadPath), runner.gameEngine, runner.physicEngine);
+            System.out.printf("Loaded tick %,d from %s in %.3f ms%n", savedTick, loadPath,
+                    (System.nanoTime() - loadStart) / 1e6);
+        }
+        Autosave autosave = null;
+        if (savePath != null) {
+            autosave = new Autosave(runner.gameEngine, runner.physicEngine, Path.of(savePath), autosaveInterval);
+            runner.setAutosave(autosave);
+        }
+        InputRecorder recorder = null;
+        if (recordPath != null) {
+            recorder = new InputRecorder(recordPath, levelPath, npcCount, seed, chase, immortal, checksumInterval);
+            runner.gameEngine.setInputRecorder(recorder);
+        }
+        ArrayList<long[]> script = scriptPath != null ? readScript(scriptPath) : null;
+        int scriptIndex = 0;
+
+        long start = System.nanoTime();
+        long reportStart = start;
+        long reportTick = 0;
+        long tick;
+        for (tick = 0; tick < ticks; tick++) {
+            if (script != null) {
+                // Each entry is {tick, 1 for press or 0 for release, key code}
+                while (scriptIndex < script.size() && script.get(scriptIndex)[0] == tick) {
+                    long[] entry = script.get(scriptIndex++);
+                    runner.gameEngine.submit(new InputCommand(entry[1] == 1, (int) entry[2]));
+                }
+            } else if (random.nextInt(10) == 0) {
+                int key = RANDOM_KEYS[random.nextInt(RANDOM_KEYS.length)];
+                runner.gameEngine.submit(new InputCommand(random.nextBoolean(), key));
+            }
+            runner.tick();
+            if (runner.gameEngine.isGameOver()) {
+                System.out.println("Game over at tick " + tick);
+                tick++;
+                break;
+            }
+
+            long now = System.nanoTime();
+            if (now - reportStart >= 1_000_000_000L) {
+                System.out.printf("%,d ticks/s%n", (long) ((tick + 1 - reportTick) * 1e9 / (now - reportStart)));
+                reportStart = now;
+                reportTick = tick + 1;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d ticks in %.2f s: %,.0f ticks/s (%d moving sprites)%n",
+                tick, seconds, tick / seconds, runner.npcs.size() + 1);
+        if (recorder != null) {
+            runner.gameEngine.finishRecording();
+            System.out.printf("Recorded %,d ticks and %d checksums to %s%n", tick, recorder.getChecksumCount(),
+                    recordPath);
+        }
+        if (autosave != null) {
+            autosave.saveAndWait();
+            autosave.close();
+            System.out.printf("Saved tick %,d to %s (%,d bytes, %d background saves, %d skipped ticks), "
+                            + "checksum %016x%n", runner.gameEngine.getTickCount(), savePath,
+                    autosave.getLastSize(), autosave.getSaveCount() - 1, autosave.getSkippedCount(),
+                    runner.gameEngine.getStateChecksum());
+        }
+    }
+
+    /**
+     * Reads an input script: one "tick press|release KEY" entry per line. Empty lines and lines starting with
+     * # are ignored. The entries are returned sorted by tick, those of the same tick in the order of the file.
+     */
+    private static ArrayList<long[]> readScript(String pathName) throws IOException {
+        ArrayList<long[]> script = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(pathName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                long tick = Long.parseLong(fields[0]);
+                long pressed = fields[1].equalsIgnoreCase("press") ? 1 : 0;
+                try {
+                    int keyCode = KeyEvent.class.getField("VK_" + fields[2].toUpperCase()).getInt(null);
+                    script.add(new long[]{tick, pressed, keyCode});
+                } catch (ReflectiveOperationException e) {
+                    throw new IOException("Unknown key " + fields[2] + " in " + pathName, e);
+                }
+            }
+        }
+        script.sort(Comparator.comparingLong(entry -> entry[0])); // Stable: keeps the order of the file
+        return script;
+    }
+}
@@ -2,9 +2,10 @@ import java.awt.*;
 import java.util.ArrayList;
 
 public class HeroWithHealth extends DynamicSprite {
-    private int maxHealth = 100; // Maximum health value
-    private int health = 100; // Current health value
+    private static final int MAX_HEALTH = 100; // Maximum health value, the health itself is in the EntityStore
+    private static final int HEALTH_BAR_STATES = 6; // Number of health bar segments in the health bar image
     private Image healthBarImage; // Image used to display the health bar
+    private SpriteSheet healthBarFrames; // Segments of the health bar image, one per line
 
     /**
      * Constructs a hero with health attributes and a health bar.
@@ -19,80 +20,90 @@ public class HeroWithHealth extends DynamicSprite {
     public HeroWithHealth(int x, int y, Image spriteSheet, int width, int height, Image healthBarImage) {
         super(x, y, spriteSheet, width, height); // Initialize DynamicSprite properties
         this.healthBarImage = healthBarImage; // Set the health bar image
-        this.health = this.maxHealth; // Set initial health to maximum
-        System.out.println("Initial health: " + health); // Debugging statement because of an older issue
-    }
-
-    public void setSpeed(double speed) {
-        super.speed = speed; // Update speed attribute inherited from DynamicSprite
-    }
-
-    public double getSpeed() {
-        return super.speed; // Retrieve speed value
+        if (healthBarImage != null) {
+            this.healthBarFrames = SpriteSheet.of(healthBarImage, healthBarImage.getWidth(null),
+                    healthBarImage.getHeight(null) / HEALTH_BAR_STATES); // Slice the segments once
+        }
+        getStore().setMaxHealth(getEntity(), MAX_HEALTH); // Set initial health to maximum
     }
 
     /**
      * @param damage The amount of health to subtract.
      */
     public void takeDamage(int damage) {
-        health = Math.max(0, health - damage); // Ensure health does not drop below 0
+        setHealth(getHealth() - damage); // Ensure health does not drop below 0
     }
 
     /**
      * @param amount The amount of health to restore.
      */
     public void heal(int amount) {
-        health = Math.min(maxHealth, health + amount); // Ensure health does not exceed maxHealth
+        setHealth(getHealth() + amount); // Ensure health does not exceed the maximum
     }
 
     public int getHealth() {
-        return health;
+        return getStore().getHealth(getEntity());
+    }
+
+    /**
+     * @param health The new health value, clamped between 0 and the maximum health.
+     */
+    void setHealth(int health) {
+        getStore().setHealth(getEntity(), health);
     }
 
     /**
      * Draws the hero's sprite and health bar.
      *
-     * @param g Graphics context for rendering.
+     * @param g     Graphics context for rendering.
+     * @param alpha Interpolation factor between the previous and current physics ticks.
      */
     @Override
-    public void draw(Graphics g) {
-        super.draw(g); // Draw the hero's sprite
+    public void draw(Graphics g, double alpha) {
+        super.draw(g, alpha); // Draw the hero's sprite
+        drawHealthBar(g, interpolatedX(alpha), interpolatedY(alpha), getHealth());
+    }
 
+    /**
+     * Draws the health bar above the hero, for the given position and health.
+     *
+     * @param g      Graphics context for rendering.
+     * @param drawX  X-coordinate the hero is drawn at.
+     * @param drawY  Y-coordinate the hero is drawn at.
+     * @param health Health value to display.
+     */
+    void drawHealthBar(Graphics g, double drawX, double drawY, int health) {
         // Render the health bar if an image is provided
-        if (healthBarImage != null) {
-            int totalStates = 6; // Number of health bar segments
-            int barWidth = healthBarImage.getWidth(null); // Width of the health bar image
-            int barHeight = healthBarImage.getHeight(null) / totalStates; // Height of one segment
+        if (healthBarFrames != null) {
+            int totalStates = HEALTH_BAR_STATES; // Number of health bar segments
+            int barWidth = healthBarFrames.getFrameWidth(); // Width of the health bar image
+            int barHeight = healthBarFrames.getFrameHeight(); // Height of one segment
 
             // Calculate the health bar state (0 = empty, 5 = full)
             int healthState = (-1) * (Math.max(0, Math.min(totalStates - 1,
-                    (int) ((health / (double) maxHealth) * (totalStates - 1))))) + 5;
+                    (int) ((health / (double) getStore().getMaxHealth(getEntity())) * (totalStates - 1))))) + 5;
 
             // Determine the health bar position above the hero
-            int barX = (int) (this.x + this.width / 2 - barWidth / 2);
-            int barY = (int) (this.y - barHeight - 5);
+            int barX = (int) (drawX + this.width / 2 - barWidth / 2);
+            int barY = (int) (drawY - barHeight - 5);
 
             // Render the appropriate segment of the health bar image
-            g.drawImage(healthBarImage,
-                    barX, barY, // Destination coordinates
-                    barX + barWidth, barY + barHeight, // Destination dimensions
-                    0, healthState * barHeight, // Source coordinates
-                    barWidth, (healthState + 1) * barHeight, // Source dimensions
-                    null);
+            g.drawImage(healthBarFrames.getFrame(healthState, 0), barX, barY, null);
         }
     }
 
     /**
      * Checks for collisions between the hero and obstacles in the environment.
-     * (no use for the moment)
+     * (no use for the moment: the DamageListener hurts the hero on each tick an obstacle stops it)
      *
      * @param environment A list of sprites representing the game's environment.
      */
     public void checkCollisionWithObstacles(ArrayList<Sprite> environment) {
-        for (Sprite s : environment) { // Loop through all environment sprites
+        for (int i = 0; i < environment.size(); i++) { // Loop through all environment sprites
+            Sprite s = environment.get(i);
             if (s instanceof SolidSprite) { // Check if the sprite is a solid object
                 // Check if the hero's hitbox intersects the solid sprite's hitbox
-                if (super.getHitBox().intersects(((SolidSprite) s).getHitBox())) {
+                if (((SolidSprite) s).intersects(getX(), getY(), width, height)) {
                     takeDamage(1); // Inflict damage if a collision occurs
                 }
             }
@@ -0,0 +1,28 @@
+/**
+ * The InputCommand class is a key press or release captured on the input thread. Commands are queued
+ * and only applied by the simulation, at the start of a tick, so the input thread never touches the
+ * state of the game itself.
+ */
+public final class InputCommand {
+    private final boolean pressed; // True for a key press, false for a key release
+    private final int keyCode; // Code of the key, one of the KeyEvent.VK_ constants
+
+    /**
+     * Constructs an InputCommand.
+     *
+     * @param pressed True for a key press, false for a key release.
+     * @param keyCode The code of the key, one of the KeyEvent.VK_ constants.
+     */
+    public InputCommand(boolean pressed, int keyCode) {
+        this.pressed = pressed;
+        this.keyCode = keyCode;
+    }
+
+    public boolean isPressed() {
+        return pressed;
+    }
+
+    public int getKeyCode() {
+        return keyCode;
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The InputRecorder class writes a session to a compact binary file: the scenario it was played in, the input
+ * commands applied on each tick, and a checksum of the state every few ticks. Replayed by a ReplayRunner, the
+ * file reproduces the session tick for tick, at full speed.
+ *
+ * File layout (big-endian, see InputRecording for the constants):
+ *   header : int magic, int version, UTF level path, int NPC count, long seed, boolean chase, boolean immortal,
+ *            int checksum interval
+ *   records: byte type, then the number of ticks since the previous record as a variable-length integer, then
+ *            the key code as a variable-length integer for PRESS and RELEASE, or a long checksum for CHECKSUM
+ *            and END (END also ends the file)
+ * A tick with no input costs nothing, and a key command usually takes 3 bytes.
+ */
+public class InputRecorder implements Closeable {
+    private final DataOutputStream output;
+    private final int checksumInterval; // Number of ticks between two checksums
+    private long lastTick = 0; // Tick of the last record written
+    private long checksumCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a recording file and writes the scenario of the session.
+     *
+     * @param pathName         The file to write.
+     * @param levelPath        The level of the session.
+     * @param npcCount         The number of wandering NPCs of the session.
+     * @param seed             The seed the NPCs were placed with.
+     * @param chase            Indicates whether the NPCs chase the hero.
+     * @param immortal         Indicates whether the hero is healed instead of dying.
+     * @param checksumInterval The number of ticks between two checksums of the state, at least 1.
+     */
+    public InputRecorder(String pathName, String levelPath, int npcCount, long seed, boolean chase, boolean immortal,
+                         int checksumInterval) throws IOException {
+        if (checksumInterval < 1) {
+            throw new IllegalArgumentException("Invalid checksum interval " + checksumInterval);
+        }
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathName)));
+        this.checksumInterval = checksumInterval;
+        output.writeInt(InputRecording.MAGIC);
+        output.writeInt(InputRecording.VERSION);
+        output.writeUTF(levelPath);
+        output.writeInt(npcCount);
+        output.writeLong(seed);
+        output.writeBoolean(chase);
+        output.writeBoolean(immortal);
+        output.writeInt(checksumInterval);
+    }
+
+    /**
+     * Records an input command applied at the start of a tick.
+     *
+     * @param tick    The tick the command is applied on, counted from 0.
+     * @param command The command.
+     */
+    public synchronized void recordInput(long tick, InputCommand command) throws IOException {
+        writeRecord(command.isPressed() ? InputRecording.PRESS : InputRecording.RELEASE, tick);
+        InputRecording.writeVarLong(output, command.getKeyCode());
+    }
+
+    /**
+     * @return True if a checksum must be recorded after the given number of ticks.
+     */
+    public boolean isChecksumTick(long tickCount) {
+        return tickCount % checksumInterval == 0;
+    }
+
+    /**
+     * Records the checksum of the state after a number of ticks.
+     *
+     * @param tickCount The number of ticks simulated.
+     * @param checksum  The checksum of the state, see StateChecksum.
+     */
+    public synchronized void recordChecksum(long tickCount, long checksum) throws IOException {
+        writeRecord(InputRecording.CHECKSUM, tickCount);
+        output.writeLong(checksum);
+        checksumCount++;
+    }
+
+    /**
+     * Ends the recording with the final number of ticks and state checksum, and closes the file.
+     *
+     * @param tickCount The number of ticks simulated.
+     * @param checksum  The checksum of the final state.
+     */
+    public synchronized void finish(long tickCount, long checksum) throws IOException {
+        if (closed) {
+            return;
+        }
+        writeRecord(InputRecording.END, tickCount);
+        output.writeLong(checksum);
+        close();
+    }
+
+    public long getChecksumCount() {
+        return checksumCount;
+    }
+
+    private void writeRecord(byte type, long tick) throws IOException {
+        if (closed) {
+            throw new IOException("The recording is closed");
+        }
+        output.writeByte(type);
+        InputRecording.writeVarLong(output, tick - lastTick);
+        lastTick = tick;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The InputRecording class reads a file written by an InputRecorder: the scenario of the session first,
+ * then its records one at a time, in tick order.
+ */
+public class InputRecording implements Closeable {
+    static final int MAGIC = 0x44435250; // "DCRP", first bytes of every recording
+    static final int VERSION = 2; // Version of the layout, incremented when it or the simulation changes
+    static final byte END = 0; // Last record: number of ticks and final checksum
+    static final byte PRESS = 1; // Key pressed
+    static final byte RELEASE = 2; // Key released
+    static final byte CHECKSUM = 3; // Checksum of the state after a number of ticks
+
+    private final DataInputStream input;
+    private final String levelPath; // Level of the session
+    private final int npcCount; // Number of wandering NPCs of the session
+    private final long seed; // Seed the NPCs were placed with
+    private final boolean chase; // Indicates whether the NPCs chase the hero
+    private final boolean immortal; // Indicates whether the hero is healed instead of dying
+    private final int checksumInterval; // Number of ticks between two checksums
+
+    // Current record
+    private byte type = -1;
+    private long tick = 0;
+    private int keyCode;
+    private long checksum;
+
+    /**
+     * Opens a recording and reads its scenario.
+     *
+     * @param pathName The file to read.
+     */
+    public InputRecording(String pathName) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(pathName)));
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(pathName + " is not an input recording");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported recording version " + version + " in " + pathName);
+            }
+            levelPath = input.readUTF();
+            npcCount = input.readInt();
+            seed = input.readLong();
+            chase = input.readBoolean();
+            immortal = input.readBoolean();
+            checksumInterval = input.readInt();
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return False once the END record has been read.
+     */
+    public boolean next() throws IOException {
+        if (type == END) {
+            return false;
+        }
+        type = input.readByte();
+        tick += readVarLong(input);
+        switch (type) {
+            case PRESS, RELEASE -> keyCode = (int) readVarLong(input);
+            case CHECKSUM, END -> checksum = input.readLong();
+            default -> throw new IOException("Corrupted recording: unknown record type " + type);
+        }
+        return true;
+    }
+
+    /**
+     * @return The type of the current record: PRESS, RELEASE, CHECKSUM or END.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * @return The tick of an input record, or the number of ticks simulated for a checksum.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public int getKeyCode() {
+        return keyCode;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public String getLevelPath() {
+        return levelPath;
+    }
+
+    public int getNpcCount() {
+        return npcCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isChase() {
+        return chase;
+    }
+
+    public boolean isImmortal() {
+        return immortal;
+    }
+
+    public int getChecksumInterval() {
+        return checksumInterval;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Writes a non-negative value on as few bytes as possible, 7 bits per byte, the high bit telling whether
+     * another byte follows.
+     */
+    static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted recording: variable-length integer too long");
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * The LatencyHistogram class counts durations in nanoseconds in log-linear buckets: 16 buckets per power of
+ * two, so any value is known within 1/16 of itself, from a nanosecond to centuries, in a fixed array of
+ * 976 counters. Recording a value is a few arithmetic operations and never allocates.
+ * It has a single writer; other threads may read it while it is written, and then see slightly stale counts.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4; // 16 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name; // Name of the measured operation
+    private final long[] counts = new long[BUCKETS]; // Number of values recorded in each bucket
+    private long count = 0; // Number of values recorded
+    private long sum = 0; // Sum of the values recorded
+    private long max = 0; // Largest value recorded
+
+    /**
+     * Constructs an empty LatencyHistogram.
+     *
+     * @param name The name of the measured operation, such as "physics.update".
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds, negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // At least SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest value counted in a bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The value below which the given percentage of the recorded values are, within 1/16, or 0 if
+     * nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return A copy of the values recorded so far, to compute the values recorded during an interval with
+     * since().
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(name);
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+        copy.count = count;
+        copy.sum = sum;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * @param earlier A copy of this histogram taken earlier.
+     * @return The values recorded since the copy was taken. Their maximum is the largest bucket reached.
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+        LatencyHistogram interval = new LatencyHistogram(name);
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            interval.counts[bucket] = counts[bucket] - earlier.counts[bucket];
+            if (interval.counts[bucket] > 0) {
+                interval.max = Math.min(upperBoundOf(bucket), max);
+            }
+        }
+        interval.count = count - earlier.count;
+        interval.sum = sum - earlier.sum;
+        return interval;
+    }
+
+    /**
+     * Adds the values recorded by another histogram, for instance to merge the histograms of several
+     * threads into one copy.
+     *
+     * @param other The histogram to add, not modified.
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
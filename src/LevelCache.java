@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The LevelCache class loads each level file once and shares it between all the sessions playing on it.
+ * Levels are keyed by their normalized absolute path, so "./data/level1.txt" and "data/level1.txt" are one
+ * level. Loading is thread-safe: concurrent requests for a level not loaded yet wait for a single load.
+ */
+public final class LevelCache {
+    private final ConcurrentHashMap<String, SharedLevel> levels = new ConcurrentHashMap<>(); // Levels by path
+
+    /**
+     * Returns a level, loading it on the first request only.
+     *
+     * @param pathName The level file, text or binary.
+     * @return The data of the level, shared with every other caller.
+     * @throws IOException If the level cannot be loaded.
+     */
+    public SharedLevel get(String pathName) throws IOException {
+        String key = Path.of(pathName).toAbsolutePath().normalize().toString();
+        SharedLevel level = levels.get(key);
+        if (level != null) {
+            return level;
+        }
+        try {
+            return levels.computeIfAbsent(key, LevelCache::load);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static SharedLevel load(String pathName) {
+        try {
+            return SharedLevel.load(pathName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The number of distinct levels loaded.
+     */
+    public int size() {
+        return levels.size();
+    }
+}
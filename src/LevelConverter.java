@@ -0,0 +1,19 @@
+/**
+ * Command-line converter from the text level format to the binary level format.
+ *
+ * Usage: java LevelConverter input.txt output.dcl
+ */
+public class LevelConverter {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java LevelConverter <input.txt> <output.dcl>");
+            System.exit(2);
+        }
+        Playground tileTypes = new Playground(); // Only loads the tile types
+        long start = System.nanoTime();
+        BinaryLevel.convert(args[0], args[1], tileTypes.getPalette(),
+                tileTypes.getTileWidth(), tileTypes.getTileHeight());
+        System.out.printf("Converted %s to %s in %.0f ms%n", args[0], args[1], (System.nanoTime() - start) / 1e6);
+    }
+}
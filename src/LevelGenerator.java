@@ -0,0 +1,385 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The LevelGenerator class generates dungeons of any size from a seed: a grid of square blocks, each one a
+ * room cut in the rock, with trees or rocks inside and traps on its floor, linked to its four neighbours by
+ * corridors. The blocks are generated in parallel on a ForkJoinPool: a block only depends on the seed and on
+ * its position, and the door between two blocks depends only on the seed and on the edge they share, so both
+ * blocks carve their half of the corridor up to the same door and the borders line up without the blocks
+ * talking to each other. The same seed thus gives the same level, byte for byte, whatever the number of
+ * threads.
+ * The level is written band by band, a band being a line of blocks: only two bands are in memory, the one
+ * being written and the one being generated meanwhile.
+ *
+ * Usage: java LevelGenerator [options] output   (output.dcl for the binary format, text otherwise)
+ *   --size WxH     size of the level in tiles (default 1000x1000)
+ *   --seed n       seed of the level (default 42)
+ *   --block n      width and height of a block in tiles, at least 16 (default 48)
+ *   --threads n    threads generating the blocks (default: available processors)
+ */
+public class LevelGenerator {
+    public static final byte FLOOR = ' ';
+    public static final byte TREE = 'T'; // Border of the level and vegetation of the gardens
+    public static final byte ROCK = 'R'; // Walls between the rooms and rubble
+    public static final byte TRAP = 'X';
+    public static final int MIN_BLOCK_SIZE = 16;
+    private static final int BAND_TILES = 1 << 22; // Tiles of a band, which holds at least one line of blocks
+    private static final int BLOCKS_PER_TASK = 4; // Blocks generated by one task without splitting
+    private static final int DOOR_WIDTH = 2; // Width of the corridors, so that sprites pass them easily
+    private static final long EAST = 0x9E3779B97F4A7C15L; // Keys of the edge hashes
+    private static final long SOUTH = 0xC2B2AE3D27D4EB4FL;
+
+    private final long seed;
+    private final int columns; // Width of the level in tiles
+    private final int rows; // Height of the level in tiles
+    private final int blockSize; // Width and height of a block, the last block of a line or column being larger
+    private final int blockColumns; // Number of blocks per line
+    private final int blockRows; // Number of lines of blocks
+
+    /**
+     * Constructs a LevelGenerator.
+     *
+     * @param seed      The seed of the level.
+     * @param columns   The width of the level in tiles, at least MIN_BLOCK_SIZE.
+     * @param rows      The height of the level in tiles, at least MIN_BLOCK_SIZE.
+     * @param blockSize The width and height of a block in tiles, at least MIN_BLOCK_SIZE.
+     */
+    public LevelGenerator(long seed, int columns, int rows, int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || columns < MIN_BLOCK_SIZE || rows < MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Levels and blocks must be at least " + MIN_BLOCK_SIZE
+                    + " tiles wide");
+        }
+        this.seed = seed;
+        this.columns = columns;
+        this.rows = rows;
+        this.blockSize = blockSize;
+        this.blockColumns = Math.max(1, columns / blockSize); // The remainder goes to the last block
+        this.blockRows = Math.max(1, rows / blockSize);
+    }
+
+    /**
+     * Writes the level in the text format, one line of characters per line of tiles.
+     *
+     * @param output      The stream to write to, left open.
+     * @param parallelism The number of threads generating the blocks.
+     */
+    public void writeText(OutputStream output, int parallelism) throws IOException {
+        write(output, null, parallelism);
+    }
+
+    /**
+     * Writes the level in the binary format, see BinaryLevel.
+     *
+     * @param output      The stream to write to, left open.
+     * @param palette     The tile types of the level, which must have a type for every symbol of the generator.
+     * @param tileWidth   The width of a tile in pixels.
+     * @param tileHeight  The height of a tile in pixels.
+     * @param parallelism The number of threads generating the blocks.
+     */
+    public void writeBinary(OutputStream output, TileType[] palette, int tileWidth, int tileHeight,
+                            int parallelism) throws IOException {
+        byte[] symbolTable = TileMap.createSymbolTable(palette);
+        for (byte symbol : new byte[]{TREE, ROCK, TRAP}) {
+            if (symbolTable[symbol] == TileMap.EMPTY) {
+                throw new IllegalArgumentException("The palette has no tile for '" + (char) symbol + "'");
+            }
+        }
+        DataOutputStream data = new DataOutputStream(output);
+        BinaryLevel.writeHeader(data, columns, rows, tileWidth, tileHeight, palette);
+        data.flush();
+        write(output, symbolTable, parallelism);
+    }
+
+    /**
+     * Generates the bands and writes each one while the next is generated.
+     *
+     * @param symbolTable The tile id of each symbol for the binary format, or null for the text format.
+     */
+    private void write(OutputStream output, byte[] symbolTable, int parallelism) throws IOException {
+        int bandBlockRows = (int) Math.max(1, Math.min(blockRows, BAND_TILES / ((long) columns * blockSize)));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            byte[] line = new byte[columns + 1];
+            line[columns] = '\n';
+            byte[] current = allocate(0, Math.min(blockRows, bandBlockRows), null);
+            byte[] next = null;
+            ForkJoinTask<?> pending = pool.submit(new BandTask(0, Math.min(blockRows, bandBlockRows), current));
+            for (int firstBlockRow = 0; firstBlockRow < blockRows; firstBlockRow += bandBlockRows) {
+                int lastBlockRow = Math.min(blockRows, firstBlockRow + bandBlockRows);
+                pending.join();
+                if (lastBlockRow < blockRows) {
+                    int nextLast = Math.min(blockRows, lastBlockRow + bandBlockRows);
+                    next = allocate(lastBlockRow, nextLast, next);
+                    pending = pool.submit(new BandTask(lastBlockRow, nextLast, next));
+                }
+
+                int bandRows = firstRow(lastBlockRow) - firstRow(firstBlockRow);
+                for (int row = 0; row < bandRows; row++) {
+                    if (symbolTable == null) {
+                        System.arraycopy(current, row * columns, line, 0, columns);
+                        output.write(line);
+                    } else {
+                        for (int column = 0; column < columns; column++) {
+                            line[column] = symbolTable[current[row * columns + column] & 0xFF];
+                        }
+                        output.write(line, 0, columns);
+                    }
+                }
+                byte[] written = current;
+                current = next;
+                next = written; // Reused for the band after the next one
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return The given buffer if it is large enough for a band, a new one otherwise.
+     */
+    private byte[] allocate(int firstBlockRow, int lastBlockRow, byte[] reuse) {
+        int length = (firstRow(lastBlockRow) - firstRow(firstBlockRow)) * columns;
+        return reuse != null && reuse.length >= length ? reuse : new byte[length];
+    }
+
+    /**
+     * Generates the blocks of a band, splitting them between the threads of the pool.
+     */
+    private final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int firstBlockRow; // First line of blocks of the band
+        private final int from; // Range of blocks generated by this task, indexed line by line within the band
+        private final int to;
+        private final byte[] band; // Symbols of the band, line by line
+
+        BandTask(int firstBlockRow, int lastBlockRow, byte[] band) {
+            this(firstBlockRow, 0, (lastBlockRow - firstBlockRow) * blockColumns, band);
+        }
+
+        private BandTask(int firstBlockRow, int from, int to, byte[] band) {
+            this.firstBlockRow = firstBlockRow;
+            this.from = from;
+            this.to = to;
+            this.band = band;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BLOCKS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    generateBlock(i % blockColumns, firstBlockRow + i / blockColumns, band,
+                            firstRow(firstBlockRow));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(firstBlockRow, from, middle, band),
+                    new BandTask(firstBlockRow, middle, to, band));
+        }
+    }
+
+    /**
+     * Generates one block into a band: rock, a room, its content, then the corridors from the doors of the
+     * block to the room. Only reads the seed and the position of the block.
+     *
+     * @param blockColumn The column of the block.
+     * @param blockRow    The line of the block.
+     * @param band        The symbols of the band holding the block, line by line.
+     * @param bandRow     The first line of tiles of the band.
+     */
+    void generateBlock(int blockColumn, int blockRow, byte[] band, int bandRow) {
+        int left = firstColumn(blockColumn);
+        int right = firstColumn(blockColumn + 1); // Exclusive
+        int top = firstRow(blockRow);
+        int bottom = firstRow(blockRow + 1);
+        for (int row = top; row < bottom; row++) {
+            int offset = (row - bandRow) * columns;
+            Arrays.fill(band, offset + left, offset + right, ROCK);
+        }
+
+        // The room keeps at least one tile of rock from the edges, the first one starts where the hero does
+        SplittableRandom random = new SplittableRandom(mix(seed, blockColumn, blockRow));
+        int width = right - left;
+        int height = bottom - top;
+        int roomWidth = 4 + random.nextInt(width - 6);
+        int roomHeight = 4 + random.nextInt(height - 6);
+        int roomLeft = blockColumn == 0 && blockRow == 0 ? 1 : left + 1 + random.nextInt(width - roomWidth - 1);
+        int roomTop = blockColumn == 0 && blockRow == 0 ? 1 : top + 1 + random.nextInt(height - roomHeight - 1);
+        boolean garden = random.nextInt(5) == 0; // Gardens are full of trees, the other rooms have some rubble
+        for (int row = roomTop; row < roomTop + roomHeight; row++) {
+            int offset = (row - bandRow) * columns;
+            for (int column = roomLeft; column < roomLeft + roomWidth; column++) {
+                int draw = random.nextInt(100);
+                byte tile = FLOOR;
+                if (garden ? draw < 15 : draw < 3) {
+                    tile = garden ? TREE : ROCK;
+                } else if (draw >= 98) {
+                    tile = TRAP;
+                }
+                band[offset + column] = tile;
+            }
+        }
+
+        // Corridors last, so that every door, and the start of the hero, reaches the center of the room
+        int centerColumn = roomLeft + roomWidth / 2 - 1;
+        int centerRow = roomTop + roomHeight / 2 - 1;
+        if (blockColumn == 0 && blockRow == 0) {
+            carveFromSide(band, bandRow, 1, 1, centerColumn, centerRow);
+        }
+        if (blockColumn > 0) {
+            carveFromSide(band, bandRow, left, doorRow(blockColumn - 1, blockRow), centerColumn, centerRow);
+        }
+        if (blockColumn < blockColumns - 1) {
+            carveFromSide(band, bandRow, right - 1, doorRow(blockColumn, blockRow), centerColumn, centerRow);
+        }
+        if (blockRow > 0) {
+            carveFromEnd(band, bandRow, doorColumn(blockColumn, blockRow - 1), top, centerColumn, centerRow);
+        }
+        if (blockRow < blockRows - 1) {
+            carveFromEnd(band, bandRow, doorColumn(blockColumn, blockRow), bottom - 1, centerColumn, centerRow);
+        }
+
+        // Trees around the level
+        for (int row = top; row < bottom; row++) {
+            int offset = (row - bandRow) * columns;
+            if (row == 0 || row == rows - 1) {
+                Arrays.fill(band, offset + left, offset + right, TREE);
+            } else {
+                if (left == 0) {
+                    band[offset] = TREE;
+                }
+                if (right == columns) {
+                    band[offset + columns - 1] = TREE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Carves a corridor from a door on the left or right side of a block to the center of its room: along
+     * the lines of the door, then along the columns of the center. Corridors are DOOR_WIDTH tiles wide.
+     */
+    private void carveFromSide(byte[] band, int bandRow, int doorColumn, int doorRow, int centerColumn,
+                               int centerRow) {
+        fill(band, bandRow, Math.min(doorColumn, centerColumn), doorRow,
+                Math.max(doorColumn, centerColumn + DOOR_WIDTH - 1), doorRow + DOOR_WIDTH - 1);
+        fill(band, bandRow, centerColumn, Math.min(doorRow, centerRow),
+                centerColumn + DOOR_WIDTH - 1, Math.max(doorRow, centerRow) + DOOR_WIDTH - 1);
+    }
+
+    /**
+     * Carves a corridor from a door on the top or bottom end of a block to the center of its room: along the
+     * columns of the door, then along the lines of the center.
+     */
+    private void carveFromEnd(byte[] band, int bandRow, int doorColumn, int doorRow, int centerColumn,
+                              int centerRow) {
+        fill(band, bandRow, doorColumn, Math.min(doorRow, centerRow),
+                doorColumn + DOOR_WIDTH - 1, Math.max(doorRow, centerRow + DOOR_WIDTH - 1));
+        fill(band, bandRow, Math.min(doorColumn, centerColumn), centerRow,
+                Math.max(doorColumn, centerColumn) + DOOR_WIDTH - 1, centerRow + DOOR_WIDTH - 1);
+    }
+
+    /**
+     * Fills a rectangle of a band with floor, its bounds included.
+     */
+    private void fill(byte[] band, int bandRow, int fromColumn, int fromRow, int toColumn, int toRow) {
+        for (int row = fromRow; row <= toRow; row++) {
+            int offset = (row - bandRow) * columns;
+            Arrays.fill(band, offset + fromColumn, offset + toColumn + 1, FLOOR);
+        }
+    }
+
+    /**
+     * @return The first line of the door between a block and the block on its right, the same for both.
+     */
+    private int doorRow(int blockColumn, int blockRow) {
+        int top = firstRow(blockRow);
+        int height = firstRow(blockRow + 1) - top;
+        long hash = mix(seed ^ EAST, blockColumn, blockRow);
+        return top + 2 + (int) Long.remainderUnsigned(hash, height - 3 - DOOR_WIDTH);
+    }
+
+    /**
+     * @return The first column of the door between a block and the block below it, the same for both.
+     */
+    private int doorColumn(int blockColumn, int blockRow) {
+        int left = firstColumn(blockColumn);
+        int width = firstColumn(blockColumn + 1) - left;
+        long hash = mix(seed ^ SOUTH, blockColumn, blockRow);
+        return left + 2 + (int) Long.remainderUnsigned(hash, width - 3 - DOOR_WIDTH);
+    }
+
+    /**
+     * @return The first column of a block, or the width of the level after the last block.
+     */
+    private int firstColumn(int blockColumn) {
+        return blockColumn >= blockColumns ? columns : blockColumn * blockSize;
+    }
+
+    /**
+     * @return The first line of a block, or the height of the level after the last line of blocks.
+     */
+    private int firstRow(int blockRow) {
+        return blockRow >= blockRows ? rows : blockRow * blockSize;
+    }
+
+    /**
+     * @return A well-mixed value of a seed and a position, from the finalizer of SplitMix64.
+     */
+    private static long mix(long seed, int column, int row) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) column << 32) | (row & 0xFFFFFFFFL)) + 0x632BE59BD9B4E019L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int columns = 1000;
+        int rows = 1000;
+        long seed = 42;
+        int blockSize = 48;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outputPath = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--size" -> {
+                    String[] size = args[++i].split("x");
+                    columns = Integer.parseInt(size[0]);
+                    rows = Integer.parseInt(size[1]);
+                }
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--block" -> blockSize = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                default -> outputPath = args[i];
+            }
+        }
+        if (outputPath == null) {
+            System.err.println("Usage: java LevelGenerator [--size WxH] [--seed n] [--block n] [--threads n] "
+                    + "<output>");
+            System.exit(2);
+        }
+
+        LevelGenerator generator = new LevelGenerator(seed, columns, rows, blockSize);
+        long start = System.nanoTime();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(outputPath), 1 << 16)) {
+            if (outputPath.endsWith(".dcl")) {
+                Playground tileTypes = new Playground(); // Only loads the tile types
+                generator.writeBinary(output, tileTypes.getPalette(), tileTypes.getTileWidth(),
+                        tileTypes.getTileHeight(), threads);
+            } else {
+                generator.writeText(output, threads);
+            }
+        }
+        System.out.printf("Generated %s, %dx%d tiles, in %.0f ms with %d threads%n", outputPath, columns, rows,
+                (System.nanoTime() - start) / 1e6, threads);
+    }
+}
@@ -1,7 +1,9 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.io.File;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 import static javax.swing.WindowConstants.EXIT_ON_CLOSE;
@@ -14,56 +16,225 @@ public class Main {
     PhysicEngine physicEngine; // Manages physics calculations
     int heroMaxHealth = 100; // Maximum health of the hero
     DynamicSprite hero; // Represents the player character
+    int tickRate = 20; // Simulation ticks per second (sprite speeds are expressed per tick)
+    int frameRate = 60; // Maximum rendered frames per second
+    GameLoop gameLoop; // Drives the engines from a dedicated thread
+    Camera camera; // Follows the hero through the level
+    // Load the level by chunks around the hero, for levels too large for the heap. A NavigationGrid needs the
+    // whole level in one TileMap, so NPCs cannot chase or find paths on a streamed level.
+    boolean streamLevel = false;
+    int chunkSize = 32; // Width and height of a streamed chunk in tiles
+    int maxResidentChunks = 25; // Maximum number of streamed chunks kept in memory
+    boolean activeRendering = true; // Draw frames from the game loop into a BufferStrategy instead of repaint()
+    String levelPath = "./data/level1.txt"; // Level of the game
+    Metrics metrics = new Metrics(); // Engine timings and counters, measured while the overlay or an export is on
+    MetricsOverlay metricsOverlay; // Shows the metrics, toggled with F3
+    long metricsExportMillis = 1000; // Period of the CSV export of the metrics
+    NetworkClient networkClient; // Connection to the server in network mode, null when playing locally
+    String savePath = "./autosave.sav"; // World saved every autosaveSeconds and with F5, loaded with F9
+    long autosaveSeconds = 60; // Time between two automatic saves
+    Autosave autosave; // Saves the world in the background, null in network mode
 
     public Main() throws Exception {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Starts the game, optionally recording the session to be replayed by a ReplayRunner and exporting the
+     * metrics, or as a client of a NetworkServer, or resuming a saved world.
+     *
+     * @param recordPath     The recording file to write, or null to play without recording.
+     * @param metricsCsvPath The CSV file the metrics are exported to, or null to export nothing.
+     * @param server         The address of the NetworkServer to play on, or null to play locally.
+     * @param loadPath       The saved world to resume, or null to start a new game.
+     * @throws Exception If the game fails to initialize.
+     */
+    public Main(String recordPath, String metricsCsvPath, InetSocketAddress server, String loadPath)
+            throws Exception {
         // Initialize the game frame
         displayZoneFrame = new JFrame("Dungeon Crawler");
         displayZoneFrame.setSize(1800, 1056); // Set the frame size
         displayZoneFrame.setDefaultCloseOperation(EXIT_ON_CLOSE); // Exit on close
 
-        // Create the hero character
-        hero = new HeroWithHealth(64, 64,
-                ImageIO.read(new File("./img/heroTileSheetLowRes.png")), 48, 50,
-                ImageIO.read(new File("./img/life_bar_remove.png")));
+        // Load all the images of the game in parallel, converted for accelerated drawing
+        Assets.preload("./img/heroTileSheetLowRes.png", "./img/life_bar_remove.png", "./img/tree.png",
+                "./img/grass.png", "./img/rock.png", "./img/trap.png", "./img/Game_Over.png");
 
         // Initialize game engines
         renderEngine = new RenderEngine(displayZoneFrame);
-        physicEngine = new PhysicEngine();
-        gameEngine = new GameEngine((HeroWithHealth) hero, physicEngine.getEnvironment());
-        gameEngine.setRenderEngine(renderEngine);
-        gameEngine.setPhysicEngine(physicEngine);
-
-        // Set up timers to update rendering, physics, and game logic at fixed intervals
-        Timer renderTimer = new Timer(50, (time) -> renderEngine.update());
-        Timer gameTimer = new Timer(50, (time) -> gameEngine.update());
-        Timer physicTimer = new Timer(50, (time) -> physicEngine.update());
-
-        renderTimer.start(); // Start rendering updates
-        gameTimer.start(); // Start game logic updates
-        physicTimer.start(); // Start physics updates
+        if (activeRendering) {
+            renderEngine.enableActiveRendering();
+        }
+        if (server != null) {
+            // The server simulates the game, the client only predicts the hero through the level
+            networkClient = new NetworkClient(server, SharedLevel.load(levelPath),
+                    Assets.getImage("./img/heroTileSheetLowRes.png"), Assets.getImage("./img/life_bar_remove.png"),
+                    Assets.getImage("./img/heroTileSheetLowRes.png"));
+            networkClient.connect(5000);
+            hero = networkClient.getHero();
+            physicEngine = networkClient.getPhysicEngine();
+            gameEngine = networkClient.getGameEngine();
+        } else {
+            // Create the hero character
+            hero = new HeroWithHealth(64, 64,
+                    Assets.getImage("./img/heroTileSheetLowRes.png"), 48, 50,
+                    Assets.getImage("./img/life_bar_remove.png"));
+            physicEngine = new PhysicEngine();
+            gameEngine = new GameEngine((HeroWithHealth) hero, physicEngine.getEnvironment());
+            gameEngine.setPhysicEngine(physicEngine);
+        }
 
         // Add the render engine as the main display component
         displayZoneFrame.getContentPane().add(renderEngine);
         displayZoneFrame.setVisible(true);
 
         // Load the game level and configure engines
-        Playground level = new Playground("./data/level1.txt");
-        renderEngine.addToRenderList(level.getSpriteList()); // Add level sprites to rendering
+        ChunkedPlayground streamedLevel = null;
+        if (streamLevel && networkClient == null) {
+            streamedLevel = new ChunkedPlayground(levelPath, chunkSize, maxResidentChunks);
+            streamedLevel.addChunkListener(physicEngine);
+            streamedLevel.addChunkListener(renderEngine);
+            streamedLevel.follow(hero, 1);
+            renderEngine.setStreamedStaticLayer(streamedLevel.getLevelWidth(), streamedLevel.getLevelHeight());
+            streamedLevel.update(); // Load the chunks around the hero before the first frame
+        } else {
+            Playground level = new Playground(levelPath);
+            renderEngine.setTileMap(level.getTileMap()); // Bake the level tiles once, they never move
+            if (networkClient == null) {
+                physicEngine.setTileMap(level.getTileMap()); // Set level obstacles for collision
+            }
+        }
         renderEngine.addToRenderList(hero); // Add the hero to rendering
-        physicEngine.addToMovingSpriteList(hero); // Add the hero to physics calculations
-        physicEngine.setEnvironment(level.getSolidSpriteList()); // Set level obstacles for collision
+        camera = new Camera();
+        camera.follow(hero); // Keep the hero at the center of the screen
+        renderEngine.setCamera(camera);
+        if (networkClient != null) {
+            for (DynamicSprite npc : networkClient.getNpcs()) {
+                renderEngine.addToRenderList(npc); // Shown where the server last placed them
+            }
+            networkClient.setNpcListener(renderEngine::addToRenderList); // And those of the later states
+            displayZoneFrame.addKeyListener(networkClient); // Input is sent to the server
+        } else {
+            physicEngine.addToMovingSpriteList(hero); // Add the hero to physics calculations
+            displayZoneFrame.addKeyListener(gameEngine); // Add key listener to the game engine for user input
+        }
+        metricsOverlay = new MetricsOverlay(metrics);
+        renderEngine.setOverlay(metricsOverlay);
+        renderEngine.setMetrics(metrics);
+        displayZoneFrame.addKeyListener(metricsOverlay);
+        if (recordPath != null && networkClient == null) {
+            gameEngine.setInputRecorder(new InputRecorder(recordPath, levelPath, 0, 0, false, false, tickRate));
+        }
+
+        if (networkClient == null) {
+            if (loadPath != null) {
+                // Before the loop starts ticking
+                WorldSave.load(Path.of(loadPath), gameEngine, physicEngine, streamedLevel != null);
+            }
+            autosave = new Autosave(gameEngine, physicEngine, Path.of(savePath), autosaveSeconds * tickRate);
+            autosave.setStreamedLevel(streamedLevel != null);
+            displayZoneFrame.addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyPressed(KeyEvent e) {
+                    if (e.getKeyCode() == KeyEvent.VK_F5) {
+                        autosave.requestSave();
+                    } else if (e.getKeyCode() == KeyEvent.VK_F9 && recordPath == null) { // Would break the replay
+                        autosave.requestLoad();
+                    }
+                }
+            });
+        }
+
+        // Start the loop updating physics and game logic at a fixed rate, and rendering at the frame rate
+        gameLoop = new GameLoop(physicEngine, gameEngine, renderEngine, tickRate, frameRate);
+        gameLoop.setMetrics(metrics);
+        if (streamedLevel != null) {
+            gameLoop.addTickEngine(streamedLevel); // Stream chunks in and out as the hero moves
+        }
+        if (networkClient != null) {
+            gameLoop.addTickEngine(networkClient); // Exchanges with the server, then the loop predicts the hero
+        }
+        if (autosave != null) {
+            gameLoop.addPreInputEngine(autosave); // Saves and loads before the input of the tick, like HeadlessRunner
+        }
+        gameLoop.start();
+        MetricsCsvExporter exporter = metricsCsvPath != null
+                ? new MetricsCsvExporter(metrics, metricsCsvPath, metricsExportMillis) : null;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(exporter), "shutdown"));
+    }
 
-        // Add key listener to the game engine for user input
-        displayZoneFrame.addKeyListener(gameEngine);
+    /**
+     * Stops the game loop, then finishes the recording, saves the world and closes the metrics export, in that
+     * order. Run once, by the shutdown hook; a step that fails does not prevent the next ones.
+     *
+     * @param exporter The CSV export of the metrics, or null if there is none.
+     */
+    private void shutdown(MetricsCsvExporter exporter) {
+        try {
+            gameLoop.stop(); // No tick may run while the final checksum is computed and the world is captured
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            gameEngine.finishRecording();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (autosave != null) {
+            try {
+                autosave.saveAndWait();
+                autosave.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (exporter != null) {
+            try {
+                exporter.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
      * Entry point for the application.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments: "--record path" records the session to the given file,
+     *             "--metrics-csv path" exports the metrics to the given CSV file every second,
+     *             "--connect host:port" plays on a NetworkServer instead of locally,
+     *             "--load path" resumes a world saved by a previous game.
      * @throws Exception If the game fails to initialize.
      */
     public static void main(String[] args) throws Exception {
-        new Main(); // Create and initialize the game
+        String recordPath = null;
+        String metricsCsvPath = null;
+        InetSocketAddress server = null;
+        String loadPath = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--record" -> recordPath = args[++i];
+                case "--metrics-csv" -> metricsCsvPath = args[++i];
+                case "--connect" -> {
+                    String address = args[++i];
+                    int colon = address.lastIndexOf(':');
+                    server = new InetSocketAddress(address.substring(0, colon),
+                            Integer.parseInt(address.substring(colon + 1)));
+                }
+                case "--load" -> loadPath = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (recordPath != null && server != null) {
+            throw new IllegalArgumentException("Network games cannot be recorded");
+        }
+        if (loadPath != null && server != null) {
+            throw new IllegalArgumentException("Network games cannot be loaded");
+        }
+        if (loadPath != null && recordPath != null) {
+            throw new IllegalArgumentException("Recordings start from a new game, not from a saved world");
+        }
+        new Main(recordPath, metricsCsvPath, server, loadPath); // Create and initialize the game
     }
 }
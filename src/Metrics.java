@@ -0,0 +1,128 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class is the registry of the runtime measurements of the game: latency histograms of the
+ * engines, filled by the code that runs them, and gauges read on demand, such as entity counts or the
+ * frame rate. It also samples the allocation rate of the game loop thread and the garbage collections.
+ * Histograms and gauges are registered once, when the game is set up; instrumented code keeps a reference
+ * to its histogram and checks isEnabled() before measuring anything, so disabled metrics cost one volatile
+ * read per measured operation.
+ * The registry is read by the MetricsOverlay and the MetricsCsvExporter.
+ */
+public class Metrics {
+    private final List<LatencyHistogram> histograms = new ArrayList<>(); // Registered histograms, in order
+    private final List<String> gaugeNames = new ArrayList<>();
+    private final List<DoubleSupplier> gauges = new ArrayList<>(); // Registered gauges, same order as their names
+    private volatile boolean enabled = false; // Indicates whether the instrumented code measures anything
+
+    // Runtime samples, taken by sampleRuntime()
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> collectorBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private long sampleNanos = -1; // Time of the last sample
+    private long sampledAllocatedBytes;
+    private long sampledCollections;
+    private long sampledCollectionMillis;
+    private volatile double allocationRate = 0; // Bytes allocated per second by the sampling thread
+    private volatile double collectionRate = 0; // Garbage collections per second
+    private volatile double collectionMillisRate = 0; // Milliseconds spent in garbage collections per second
+
+    /**
+     * Constructs a disabled Metrics registry with the runtime gauges: allocation rate of the sampling thread,
+     * garbage collections and used heap.
+     */
+    public Metrics() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadBean = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+        gauge("alloc.bytesPerSecond", () -> allocationRate);
+        gauge("gc.perSecond", () -> collectionRate);
+        gauge("gc.millisPerSecond", () -> collectionMillisRate);
+        gauge("heap.usedMB", () -> memoryBean.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Registers a latency histogram, or returns the one registered with the same name.
+     *
+     * @param name The name of the measured operation, such as "physics.update".
+     * @return The histogram, to be kept by the instrumented code.
+     */
+    public synchronized LatencyHistogram histogram(String name) {
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getName().equals(name)) {
+                return histogram;
+            }
+        }
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, a value read when the metrics are displayed or exported.
+     *
+     * @param name  The name of the value, such as "entities".
+     * @param value The supplier of the value, called from the thread reading the metrics.
+     */
+    public synchronized void gauge(String name, DoubleSupplier value) {
+        gaugeNames.add(name);
+        gauges.add(value);
+    }
+
+    public synchronized List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(new ArrayList<>(histograms));
+    }
+
+    public synchronized List<String> getGaugeNames() {
+        return Collections.unmodifiableList(new ArrayList<>(gaugeNames));
+    }
+
+    /**
+     * @return The current values of the gauges, in the order of their names.
+     */
+    public synchronized double[] readGauges() {
+        double[] values = new double[gauges.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = gauges.get(i).getAsDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Updates the allocation and garbage collection rates since the previous sample. The allocation rate is
+     * the one of the calling thread, so this is meant to be called periodically by the game loop.
+     */
+    public void sampleRuntime() {
+        long now = System.nanoTime();
+        long allocatedBytes = threadBean != null ? threadBean.getCurrentThreadAllocatedBytes() : 0;
+        long collections = 0;
+        long collectionMillis = 0;
+        for (GarbageCollectorMXBean collectorBean : collectorBeans) {
+            collections += Math.max(0, collectorBean.getCollectionCount());
+            collectionMillis += Math.max(0, collectorBean.getCollectionTime());
+        }
+        if (sampleNanos >= 0 && now > sampleNanos) {
+            double seconds = (now - sampleNanos) / 1e9;
+            allocationRate = (allocatedBytes - sampledAllocatedBytes) / seconds;
+            collectionRate = (collections - sampledCollections) / seconds;
+            collectionMillisRate = (collectionMillis - sampledCollectionMillis) / seconds;
+        }
+        sampleNanos = now;
+        sampledAllocatedBytes = allocatedBytes;
+        sampledCollections = collections;
+        sampledCollectionMillis = collectionMillis;
+    }
+}
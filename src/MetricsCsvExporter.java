@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MetricsCsvExporter class appends the metrics to a CSV file at a fixed period, from its own daemon
+ * thread: for each histogram, the number of values, their 50th and 99th percentiles and their maximum over
+ * the period, in milliseconds, then the value of each gauge. The columns are those registered when the
+ * exporter starts.
+ * Exporting enables the metrics until the exporter is closed.
+ */
+public class MetricsCsvExporter implements Closeable {
+    private final Metrics metrics; // Measurements exported
+    private final BufferedWriter writer;
+    private final ScheduledExecutorService scheduler;
+    private final long startNanos = System.nanoTime();
+    private List<LatencyHistogram> exportedHistograms; // Copies of the histograms at the last export
+    private final int gaugeCount; // Number of gauges in the header
+    private boolean closed = false;
+
+    /**
+     * Creates the CSV file, writes its header and starts exporting.
+     *
+     * @param metrics      The metrics to export, enabled by the exporter.
+     * @param pathName     The CSV file to write.
+     * @param periodMillis The period of the export in milliseconds.
+     */
+    public MetricsCsvExporter(Metrics metrics, String pathName, long periodMillis) throws IOException {
+        this.metrics = metrics;
+        this.writer = new BufferedWriter(new FileWriter(pathName));
+        this.exportedHistograms = copy(metrics.getHistograms());
+        List<String> gaugeNames = metrics.getGaugeNames();
+        this.gaugeCount = gaugeNames.size();
+
+        StringBuilder header = new StringBuilder("seconds");
+        for (LatencyHistogram histogram : exportedHistograms) {
+            String name = histogram.getName();
+            header.append(',').append(name).append(".count,").append(name).append(".p50Ms,")
+                    .append(name).append(".p99Ms,").append(name).append(".maxMs");
+        }
+        for (String gaugeName : gaugeNames) {
+            header.append(',').append(gaugeName);
+        }
+        writer.write(header.toString());
+        writer.newLine();
+        writer.flush();
+
+        metrics.setEnabled(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-csv");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::export, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<LatencyHistogram> copy(List<LatencyHistogram> histograms) {
+        List<LatencyHistogram> copies = new ArrayList<>(histograms.size());
+        for (LatencyHistogram histogram : histograms) {
+            copies.add(histogram.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Writes one row with the values measured since the previous row.
+     */
+    private synchronized void export() {
+        if (closed) {
+            return;
+        }
+        List<LatencyHistogram> histograms = metrics.getHistograms();
+        double[] gauges = metrics.readGauges();
+        StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - startNanos) / 1e9));
+        List<LatencyHistogram> current = new ArrayList<>(exportedHistograms.size());
+        for (int i = 0; i < exportedHistograms.size(); i++) {
+            LatencyHistogram histogram = histograms.get(i).copy();
+            LatencyHistogram interval = histogram.since(exportedHistograms.get(i));
+            row.append(String.format(Locale.ROOT, ",%d,%.4f,%.4f,%.4f", interval.getCount(),
+                    interval.getPercentile(50) / 1e6, interval.getPercentile(99) / 1e6, interval.getMax() / 1e6));
+            current.add(histogram);
+        }
+        for (int i = 0; i < gaugeCount; i++) {
+            row.append(String.format(Locale.ROOT, ",%.2f", gauges[i]));
+        }
+        exportedHistograms = current;
+        try {
+            writer.write(row.toString());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.out.println("Error: the metrics could not be exported: " + e.getMessage());
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Stops exporting, disables the metrics and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdown();
+        metrics.setEnabled(false);
+        writer.close();
+    }
+}
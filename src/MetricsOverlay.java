@@ -0,0 +1,122 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MetricsOverlay class draws the metrics in the top-left corner of the screen: the 50th and 99th
+ * percentiles and the maximum of each histogram over the last half second, then the gauges.
+ * It is toggled with F3. Showing it enables the metrics if they were disabled, and hiding it disables them
+ * again, so that nothing is measured while nobody looks at them.
+ * The text is only rebuilt twice per second; drawing it in between costs a few draw calls.
+ */
+public class MetricsOverlay extends KeyAdapter {
+    private static final long REFRESH_NANOS = 500_000_000L; // Period of the refresh of the text
+    private static final int LINE_HEIGHT = 14;
+    private static final int WIDTH = 430; // Width of the background of the text
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160); // Translucent, the game stays visible
+
+    private final Metrics metrics; // Measurements displayed
+    private volatile boolean visible = false;
+    private boolean enabledByOverlay = false; // Indicates whether the metrics were enabled when it was shown
+    private String[] lines = new String[0]; // Text drawn, rebuilt at the refresh period
+    private List<LatencyHistogram> refreshedHistograms; // Copies of the histograms at the last refresh
+    private long refreshNanos = 0; // Time of the last refresh
+
+    /**
+     * Constructs a hidden MetricsOverlay.
+     *
+     * @param metrics The metrics to display.
+     */
+    public MetricsOverlay(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Shows or hides the overlay, enabling the metrics while it is shown if nothing else enabled them.
+     */
+    public synchronized void setVisible(boolean visible) {
+        if (visible == this.visible) {
+            return;
+        }
+        this.visible = visible;
+        if (visible && !metrics.isEnabled()) {
+            metrics.setEnabled(true);
+            enabledByOverlay = true;
+        } else if (!visible && enabledByOverlay) {
+            metrics.setEnabled(false);
+            enabledByOverlay = false;
+        }
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            setVisible(!visible);
+        }
+    }
+
+    /**
+     * @return The part of the screen the overlay draws on.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(0, 0, WIDTH, (lines.length + 1) * LINE_HEIGHT);
+    }
+
+    /**
+     * Draws the overlay in screen coordinates, if it is visible.
+     *
+     * @param g The Graphics context, not translated by the camera.
+     */
+    public synchronized void draw(Graphics g) {
+        if (!visible) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (refreshedHistograms == null || now - refreshNanos >= REFRESH_NANOS) {
+            refresh();
+            refreshNanos = now;
+        }
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, WIDTH, (lines.length + 1) * LINE_HEIGHT);
+        g.setColor(Color.WHITE);
+        g.setFont(FONT);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 6, (i + 1) * LINE_HEIGHT);
+        }
+    }
+
+    /**
+     * Rebuilds the text from the values measured since the previous refresh.
+     */
+    private void refresh() {
+        List<LatencyHistogram> histograms = new ArrayList<>(metrics.getHistograms());
+        List<String> gaugeNames = metrics.getGaugeNames();
+        double[] gauges = metrics.readGauges();
+        String[] text = new String[histograms.size() + gauges.length + 1];
+        int line = 0;
+        text[line++] = String.format("%-22s %8s %8s %8s", "ms (F3 to hide)", "p50", "p99", "max");
+        for (int i = 0; i < histograms.size(); i++) {
+            LatencyHistogram current = histograms.get(i).copy();
+            LatencyHistogram interval = refreshedHistograms != null && i < refreshedHistograms.size()
+                    ? current.since(refreshedHistograms.get(i)) : current;
+            text[line++] = String.format("%-22s %8.3f %8.3f %8.3f", current.getName(),
+                    interval.getPercentile(50) / 1e6, interval.getPercentile(99) / 1e6, interval.getMax() / 1e6);
+            histograms.set(i, current);
+        }
+        for (int i = 0; i < gauges.length; i++) {
+            text[line++] = String.format("%-22s %,.1f", gaugeNames.get(i), gauges[i]);
+        }
+        refreshedHistograms = histograms;
+        lines = text;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * The NavigationGrid class tells which tiles of a level can be walked through, one flag per tile, for the
+ * pathfinding. It is built from the solid tiles of the level's TileMap, and rebuilt only when tiles of the
+ * map have been changed since; its version tells the paths and flow fields computed from it when they are
+ * out of date.
+ * Tiles are addressed by an index, row * columns + column, relative to the origin of the tile map.
+ * Limitations: the grid covers a single TileMap held in memory, so it does not work on a level streamed by
+ * chunks (see ChunkedPlayground), and only the solid tiles block it: solid sprites and moving obstacles are
+ * walked through. The chase of the NPCs (ChaseSystem) is only used by the HeadlessRunner on whole levels, and
+ * the Pathfinder only by the benchmarks.
+ */
+public class NavigationGrid {
+    private final TileMap tileMap; // Tiles of the level
+    private final int columns; // Number of tiles per line
+    private final int rows; // Number of lines of tiles
+    private final boolean[] walkable; // Indicates whether each tile can be walked through
+    private int version = 0; // Incremented each time the walkable tiles are rebuilt
+    private int builtModificationCount = -1; // Modification count of the tile map the flags were built from
+
+    /**
+     * Constructs a NavigationGrid over the tiles of a level.
+     *
+     * @param tileMap The tiles of the whole level.
+     */
+    public NavigationGrid(TileMap tileMap) {
+        this.tileMap = tileMap;
+        this.columns = tileMap.getColumns();
+        this.rows = tileMap.getRows();
+        this.walkable = new boolean[Math.multiplyExact(columns, rows)];
+        refresh();
+    }
+
+    /**
+     * Rebuilds the walkable flags if tiles were changed since they were built.
+     *
+     * @return True if the flags were rebuilt, false if they were up to date.
+     */
+    public boolean refresh() {
+        if (tileMap.getModificationCount() == builtModificationCount) {
+            return false;
+        }
+        int originColumn = tileMap.getOriginColumn();
+        int originRow = tileMap.getOriginRow();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                walkable[row * columns + column] = !tileMap.isSolid(originColumn + column, originRow + row);
+            }
+        }
+        builtModificationCount = tileMap.getModificationCount();
+        version++;
+        return true;
+    }
+
+    /**
+     * @return A number that changes each time the walkable tiles are rebuilt.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileWidth() {
+        return tileMap.getTileWidth();
+    }
+
+    public int getTileHeight() {
+        return tileMap.getTileHeight();
+    }
+
+    /**
+     * @return True if the tile at the given index can be walked through.
+     */
+    public boolean isWalkable(int index) {
+        return walkable[index];
+    }
+
+    /**
+     * @return True if the tile is inside the grid and can be walked through.
+     */
+    public boolean isWalkable(int column, int row) {
+        return column >= 0 && row >= 0 && column < columns && row < rows && walkable[row * columns + column];
+    }
+
+    /**
+     * @return The index of a tile, or -1 if it is outside of the grid.
+     */
+    public int index(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    public int columnOf(int index) {
+        return index % columns;
+    }
+
+    public int rowOf(int index) {
+        return index / columns;
+    }
+
+    /**
+     * @return The column of the grid containing the given x-coordinate of the level.
+     */
+    public int columnAt(double x) {
+        return (int) Math.floor(x / tileMap.getTileWidth()) - tileMap.getOriginColumn();
+    }
+
+    /**
+     * @return The row of the grid containing the given y-coordinate of the level.
+     */
+    public int rowAt(double y) {
+        return (int) Math.floor(y / tileMap.getTileHeight()) - tileMap.getOriginRow();
+    }
+
+    /**
+     * @return The x-coordinate of the left edge of a column of the grid, in the level.
+     */
+    public double columnX(int column) {
+        return (double) (column + tileMap.getOriginColumn()) * tileMap.getTileWidth();
+    }
+
+    /**
+     * @return The y-coordinate of the top edge of a row of the grid, in the level.
+     */
+    public double rowY(int row) {
+        return (double) (row + tileMap.getOriginRow()) * tileMap.getTileHeight();
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The NetProtocol class defines the datagrams exchanged by a NetworkClient and a NetworkServer. Each client
+ * has a world of its own on the server, which advances exactly one tick per input command of the client,
+ * so the client can predict the ticks of its hero and check them against the states the server sends back.
+ *
+ * A client first asks for a challenge: the server answers with a cookie derived from the address of the
+ * client and a secret, without keeping anything, and only creates the world of a client when an INPUT
+ * datagram repeats the cookie of its address. A spoofed address never receives its cookie, and a request
+ * is never smaller than its answer, so the server can neither be made to allocate worlds nor to flood a
+ * third party.
+ *
+ * Datagram layouts (integers are variable-length, see writeVarLong, except the 8-byte cookies):
+ *   CONNECT  : byte type, padded with zeros to CONNECT_SIZE bytes.
+ *   CHALLENGE: byte type, long cookie. Also the answer to an INPUT datagram with a wrong cookie, such as
+ *              one sent before the server restarted.
+ *   INPUT    : byte type, long cookie, ack (1 + last snapshot tick received, 0 if none), sequence number of
+ *              the first command, byte number of commands, then for each command a byte number of key events
+ *              followed by (key code << 1 | 1 if pressed) for each event. A datagram repeats the commands the
+ *              server has not confirmed yet, so a lost datagram costs nothing as long as a later one arrives.
+ *   SNAPSHOT : byte type, tick (number of commands applied to the world), 1 + baseline tick (0 for a full
+ *              snapshot), byte flags, number of sprites, then the sprites as encoded by SnapshotCodec.
+ */
+public final class NetProtocol {
+    static final byte INPUT = 1; // Input commands, from a client to the server
+    static final byte SNAPSHOT = 2; // State of a world, from the server to a client
+    static final byte CONNECT = 3; // Request of a cookie, from a client to the server
+    static final byte CHALLENGE = 4; // Cookie of a client, from the server
+    static final int CONNECT_SIZE = 16; // Size of a CONNECT datagram, more than the CHALLENGE answering it
+    static final int GAME_OVER = 1; // Flag of a snapshot: the game is over
+    static final int MAX_DATAGRAM_SIZE = 65507; // Largest UDP payload, snapshots of a few sprites take far less
+    static final int MAX_RESENT_COMMANDS = 8; // Commands repeated in an INPUT datagram, the last one included
+    static final int UDP_OVERHEAD = 28; // Bytes of the IPv4 and UDP headers of each datagram
+
+    private NetProtocol() {
+    }
+
+    /**
+     * @return The next byte of a datagram.
+     * @throws IOException If the datagram is truncated.
+     */
+    static byte readByte(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Truncated datagram");
+        }
+        return buffer.get();
+    }
+
+    /**
+     * @return The next 8 bytes of a datagram, as a long.
+     * @throws IOException If the datagram is truncated.
+     */
+    static long readLong(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            throw new IOException("Truncated datagram");
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * Writes a non-negative value on as few bytes as possible, 7 bits per byte, the high bit telling whether
+     * another byte follows.
+     */
+    static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated datagram");
+            }
+            int b = buffer.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted datagram: variable-length integer too long");
+    }
+
+    /**
+     * Writes a signed value so that small negative values are as short as small positive ones.
+     */
+    static void writeSignedVarLong(ByteBuffer buffer, long value) {
+        writeVarLong(buffer, (value << 1) ^ (value >> 63)); // Zigzag: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+    }
+
+    static long readSignedVarLong(ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return A key event as written in an INPUT datagram.
+     */
+    static int encodeKeyEvent(InputCommand command) {
+        return command.getKeyCode() << 1 | (command.isPressed() ? 1 : 0);
+    }
+
+    /**
+     * @return The key event read from an INPUT datagram.
+     */
+    static InputCommand decodeKeyEvent(int event) {
+        return new InputCommand((event & 1) != 0, event >>> 1);
+    }
+}
@@ -0,0 +1,447 @@
+import java.awt.Image;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * The NetworkClient class is a thin client of a NetworkServer. Key events become input commands, one per
+ * tick, sent to the server instead of being applied to a local game; the server simulates the world and
+ * sends its state back.
+ * The hero is predicted: each command is applied at once to a local copy of the hero, moved through the
+ * tiles of the level by a local PhysicEngine, so that the player does not wait for the server to see it
+ * move. When a state of the server arrives, the hero is reset to it and the commands the server has not
+ * applied yet are replayed on top of it (reconciliation); a prediction that differs from the server, for
+ * instance because an NPC blocked the hero, is corrected that way. The NPCs are shown at the positions of
+ * the last state received.
+ * The client is an Engine updated on each tick before the physics: by a GameLoop drawing it, with
+ * getPhysicEngine() and getGameEngine() as the engines of the loop, or by tick() without a display.
+ */
+public class NetworkClient implements Engine, KeyListener, Closeable {
+    private static final int HISTORY = 64; // Commands and states kept, by tick
+    private static final int MAX_KEY_EVENTS = 16; // Key events per command, the others wait for the next one
+    private static final double CORRECTION_TOLERANCE = 0.01; // Prediction error in pixels counted as a correction
+
+    private final DatagramChannel channel;
+    private final HeroWithHealth hero; // Predicted hero
+    private final PhysicEngine physicEngine; // Moves the predicted hero through the tiles
+    private final GameEngine gameEngine; // Applies the commands to the predicted hero
+    private final ArrayList<DynamicSprite> npcs = new ArrayList<>(); // NPCs, at the positions of the last state
+    private final Image npcImage; // Sprite sheet of the NPCs, can be null
+    private Consumer<DynamicSprite> npcListener; // Receives each NPC once created, can be null
+    private final ConcurrentLinkedQueue<InputCommand> keyEvents = new ConcurrentLinkedQueue<>(); // Pending input
+    private final ByteBuffer buffer = ByteBuffer.allocate(NetProtocol.MAX_DATAGRAM_SIZE);
+    private final int[] eventScratch = new int[MAX_KEY_EVENTS];
+
+    // Commands, by sequence number, which is also the tick they are applied on
+    private long sequence = 0; // Last command created, also the last tick predicted
+    private long confirmedTick = 0; // Last tick of the server received, the commands up to it are applied
+    private final int[][] commands = new int[HISTORY][]; // Key events of each command
+    private final int[] heldArrows = new int[HISTORY]; // Arrow keys held after each command
+    private final double[] predictedX = new double[HISTORY]; // Predicted position of the hero after each tick
+    private final double[] predictedY = new double[HISTORY];
+    private final long[] sentNanos = new long[HISTORY]; // Time each command was first sent
+
+    // States received from the server, by tick
+    private final long[][] states = new long[HISTORY][];
+    private final long[] stateTicks = new long[HISTORY];
+    private long latestTick = -1; // Last tick received, -1 if none
+    private boolean gameOver = false; // Indicates whether the server ended the game
+    private long cookie; // Cookie of this client, repeated by the INPUT datagrams once challenged
+    private boolean challenged = false; // Indicates whether the server sent the cookie
+
+    // Packet loss simulation, for testing on a loopback interface that never loses anything
+    private double lossRate = 0;
+    private Random lossRandom;
+
+    // Statistics
+    private long bytesSent = 0; // Payload of the datagrams sent, without the IP and UDP headers
+    private long bytesReceived = 0;
+    private long snapshotsReceived = 0;
+    private long corrections = 0; // Predictions that differed from the server
+    private double maxCorrection = 0; // Largest prediction error, in pixels
+    private long roundTripNanos = 0; // Sum of the round trips, from sending a command to receiving its tick
+    private long roundTripCount = 0;
+
+    /**
+     * Opens a client of a server. Nothing is sent before connect() or the first update().
+     *
+     * @param server       The address of the server.
+     * @param level        The level played on the server, for the prediction.
+     * @param heroImage    The sprite sheet of the hero, can be null.
+     * @param healthBar    The image of the health bar of the hero, can be null.
+     * @param npcImage     The sprite sheet of the NPCs, can be null.
+     */
+    public NetworkClient(InetSocketAddress server, SharedLevel level, Image heroImage, Image healthBar,
+                         Image npcImage) throws IOException {
+        this.npcImage = npcImage;
+        hero = new HeroWithHealth(64, 64, heroImage, 48, 50, healthBar); // Where the server places it too
+        physicEngine = new PhysicEngine();
+        physicEngine.setTileMap(level.getTileMap());
+        physicEngine.addToMovingSpriteList(hero);
+        gameEngine = new GameEngine(hero, physicEngine.getEnvironment());
+        Arrays.fill(stateTicks, -1);
+        channel = DatagramChannel.open();
+        channel.connect(server);
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Contacts the server and waits for the first state of the world, which tells the number of NPCs. Only
+     * needed to know the NPCs before the first tick: update() contacts the server too, the hero being
+     * predicted from its starting position until the first state arrives.
+     *
+     * @param timeoutMillis The time to wait for the server, in milliseconds.
+     * @throws IOException If the server did not answer in time.
+     */
+    public void connect(long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (latestTick < 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("No answer from " + channel.getRemoteAddress());
+            }
+            sendCommands(); // Asks for the cookie, then without any command only creates the world on the server
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while connecting", e);
+            }
+            receive();
+        }
+        reconcile();
+        sendCommands(); // Acknowledges the state, so that the next ones are deltas
+    }
+
+    /**
+     * Simulates packet loss: drops each datagram sent or received with the given probability.
+     *
+     * @param lossRate The probability of dropping a datagram, between 0 and 1.
+     * @param seed     The seed of the drops.
+     */
+    public void setPacketLoss(double lossRate, long seed) {
+        this.lossRate = lossRate;
+        this.lossRandom = new Random(seed);
+    }
+
+    /**
+     * Queues an input command, sent with the command of the next tick. Can be called from any thread.
+     */
+    public void submit(InputCommand command) {
+        keyEvents.offer(command);
+    }
+
+    /**
+     * Receives the states of the server and reconciles the hero with the last one, then creates the
+     * command of this tick, applies it to the predicted hero and sends it. The physics and the game engine
+     * must be updated right after, to predict the tick.
+     */
+    @Override
+    public void update() {
+        if (sequence > 0) {
+            int slot = slot(sequence);
+            predictedX[slot] = hero.getX();
+            predictedY[slot] = hero.getY();
+        }
+        try {
+            if (receive()) {
+                reconcile();
+            }
+            if (!gameOver && sequence - confirmedTick < HISTORY - 1) { // Otherwise wait for the server
+                sequence++;
+                int slot = slot(sequence);
+                commands[slot] = drainKeyEvents();
+                apply(commands[slot]);
+                heldArrows[slot] = gameEngine.getHeldArrows();
+                sentNanos[slot] = System.nanoTime();
+            }
+            sendCommands();
+        } catch (IOException e) {
+            System.out.println("Error: the connection to the server failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one tick of the client without a GameLoop: update(), then the physics and the game engine.
+     */
+    public void tick() {
+        update();
+        physicEngine.update();
+        gameEngine.update();
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % HISTORY);
+    }
+
+    private int[] drainKeyEvents() {
+        int count = 0;
+        InputCommand command;
+        while (count < MAX_KEY_EVENTS && (command = keyEvents.poll()) != null) {
+            eventScratch[count++] = NetProtocol.encodeKeyEvent(command);
+        }
+        return Arrays.copyOf(eventScratch, count);
+    }
+
+    /**
+     * Applies the key events of a command to the predicted hero.
+     */
+    private void apply(int[] events) {
+        for (int event : events) {
+            InputCommand command = NetProtocol.decodeKeyEvent(event);
+            if (command.isPressed()) {
+                gameEngine.pressKey(command.getKeyCode());
+            } else {
+                gameEngine.releaseKey(command.getKeyCode());
+            }
+        }
+    }
+
+    /**
+     * Sends the commands the server has not confirmed yet, the oldest first, with the acknowledgement of
+     * the last state received.
+     */
+    private void sendCommands() throws IOException {
+        buffer.clear();
+        if (!challenged) { // The commands are kept until the server sends the cookie
+            buffer.put(NetProtocol.CONNECT);
+            buffer.put(new byte[NetProtocol.CONNECT_SIZE - 1]);
+            buffer.flip();
+            send();
+            return;
+        }
+        long first = Math.max(confirmedTick + 1, sequence - NetProtocol.MAX_RESENT_COMMANDS + 1);
+        buffer.put(NetProtocol.INPUT);
+        buffer.putLong(cookie);
+        NetProtocol.writeVarLong(buffer, latestTick + 1);
+        NetProtocol.writeVarLong(buffer, first);
+        buffer.put((byte) (sequence - first + 1));
+        for (long tick = first; tick <= sequence; tick++) {
+            int[] events = commands[slot(tick)];
+            buffer.put((byte) events.length);
+            for (int event : events) {
+                NetProtocol.writeVarLong(buffer, event);
+            }
+        }
+        buffer.flip();
+        send();
+    }
+
+    /**
+     * Sends the datagram in the buffer, unless the simulated packet loss drops it.
+     */
+    private void send() throws IOException {
+        int size = buffer.remaining();
+        if (lossRate > 0 && lossRandom.nextDouble() < lossRate) {
+            return;
+        }
+        channel.write(buffer);
+        bytesSent += size;
+    }
+
+    /**
+     * Reads the datagrams received since the last call.
+     *
+     * @return True if a state more recent than the last one was received.
+     */
+    private boolean receive() throws IOException {
+        boolean received = false;
+        while (true) {
+            buffer.clear();
+            if (channel.receive(buffer) == null) {
+                return received;
+            }
+            buffer.flip();
+            bytesReceived += buffer.remaining();
+            if (lossRate > 0 && lossRandom.nextDouble() < lossRate) {
+                continue;
+            }
+            try {
+                byte type = NetProtocol.readByte(buffer);
+                if (type == NetProtocol.CHALLENGE) {
+                    cookie = NetProtocol.readLong(buffer); // Also replaces the cookie of a restarted server
+                    challenged = true;
+                } else if (type == NetProtocol.SNAPSHOT) {
+                    received |= readSnapshot();
+                } else {
+                    throw new IOException("Unexpected datagram type");
+                }
+            } catch (IOException e) {
+                // A corrupted datagram is dropped like a lost one
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of a SNAPSHOT datagram, after its type.
+     *
+     * @return True if the snapshot in the buffer is more recent than the last state received.
+     */
+    private boolean readSnapshot() throws IOException {
+        long tick = NetProtocol.readVarLong(buffer);
+        long baselineTick = NetProtocol.readVarLong(buffer) - 1;
+        int flags = NetProtocol.readByte(buffer);
+        long spriteCount = NetProtocol.readVarLong(buffer);
+        if (spriteCount < 1 || spriteCount > buffer.remaining()) { // At least the hero, and a byte per sprite
+            throw new IOException("Corrupted snapshot: " + spriteCount + " sprites");
+        }
+        if (tick <= latestTick || tick > sequence) {
+            return false; // Late, or not a tick this client asked for
+        }
+        long[] baseline = null;
+        if (baselineTick >= 0) {
+            if (stateTicks[slot(baselineTick)] != baselineTick) {
+                return false; // Baseline no longer kept, the server sends a full state once it stops using it
+            }
+            baseline = states[slot(baselineTick)];
+        }
+        int slot = slot(tick);
+        long[] reuse = states[slot] != baseline ? states[slot] : null;
+        states[slot] = SnapshotCodec.decode(buffer, (int) spriteCount, baseline, reuse);
+        stateTicks[slot] = tick;
+        latestTick = tick;
+        gameOver = (flags & NetProtocol.GAME_OVER) != 0;
+        snapshotsReceived++;
+        return true;
+    }
+
+    /**
+     * Resets the hero to the last state of the server, replays the commands the server has not applied yet,
+     * and moves the NPCs to their positions in that state.
+     */
+    private void reconcile() {
+        long[] state = states[slot(latestTick)];
+        long tick = latestTick;
+        int slot = slot(tick);
+        if (tick > 0) {
+            double error = Math.hypot(predictedX[slot] - SnapshotCodec.getX(state, 0),
+                    predictedY[slot] - SnapshotCodec.getY(state, 0));
+            if (error > CORRECTION_TOLERANCE) {
+                corrections++;
+                maxCorrection = Math.max(maxCorrection, error);
+            }
+            roundTripNanos += System.nanoTime() - sentNanos[slot];
+            roundTripCount++;
+        }
+        confirmedTick = tick;
+
+        SnapshotCodec.apply(state, 0, hero);
+        gameEngine.setHeldArrows(tick > 0 ? heldArrows[slot] : 0);
+        for (long replayed = tick + 1; replayed <= sequence; replayed++) {
+            apply(commands[slot(replayed)]);
+            physicEngine.update();
+            gameEngine.update();
+            predictedX[slot(replayed)] = hero.getX();
+            predictedY[slot(replayed)] = hero.getY();
+        }
+
+        int npcCount = SnapshotCodec.spriteCount(state) - 1;
+        for (int i = 0; i < npcCount; i++) {
+            if (i == npcs.size()) {
+                DynamicSprite npc = new DynamicSprite(0, 0, npcImage, 48, 50);
+                SnapshotCodec.apply(state, i + 1, npc);
+                npc.savePreviousPosition(); // No earlier position to interpolate from
+                npcs.add(npc);
+                if (npcListener != null) {
+                    npcListener.accept(npc);
+                }
+                continue;
+            }
+            DynamicSprite npc = npcs.get(i);
+            npc.savePreviousPosition();
+            SnapshotCodec.apply(state, i + 1, npc);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public HeroWithHealth getHero() {
+        return hero;
+    }
+
+    /**
+     * @return The NPCs of the world, known after connect().
+     */
+    public List<DynamicSprite> getNpcs() {
+        return npcs;
+    }
+
+    /**
+     * Sets the receiver of the NPCs created when a state of the server holds more NPCs than the previous
+     * ones, such as the render engine drawing them. It is called from the thread updating the client.
+     *
+     * @param npcListener The receiver, or null if none.
+     */
+    public void setNpcListener(Consumer<DynamicSprite> npcListener) {
+        this.npcListener = npcListener;
+    }
+
+    public PhysicEngine getPhysicEngine() {
+        return physicEngine;
+    }
+
+    public GameEngine getGameEngine() {
+        return gameEngine;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshotCount() {
+        return snapshotsReceived;
+    }
+
+    public long getCorrectionCount() {
+        return corrections;
+    }
+
+    /**
+     * @return The largest difference between a predicted position of the hero and the server, in pixels.
+     */
+    public double getMaxCorrection() {
+        return maxCorrection;
+    }
+
+    /**
+     * @return The mean time between sending a command and receiving the state of its tick, in nanoseconds.
+     */
+    public double getMeanRoundTripNanos() {
+        return roundTripCount == 0 ? 0 : (double) roundTripNanos / roundTripCount;
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        submit(new InputCommand(true, e.getKeyCode()));
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        submit(new InputCommand(false, e.getKeyCode()));
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        // Not used but required
+    }
+}
@@ -0,0 +1,557 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The NetworkServer class is the authoritative side of the network mode: it owns the world of each client
+ * (hero, NPCs and engines, see HeadlessRunner) and simulates it from the input commands the client sends,
+ * one world tick per command, then sends back the new state of the world. Everything runs on one thread,
+ * over a non-blocking UDP channel: on each server tick, the datagrams received since the previous tick are
+ * read, the worlds are advanced, and one snapshot is sent to each client whose world changed or which did
+ * not acknowledge its last state yet.
+ * Snapshots are encoded as deltas against the last state the client acknowledged (see SnapshotCodec), or
+ * in full when the client acknowledged none of the states still kept.
+ * A client is known by its address; its world is created once it repeats the cookie of its address (see
+ * NetProtocol), at most maxConnectionsPerHost per IP address, and dropped after a few seconds of silence.
+ *
+ * Usage: java NetworkServer [options]
+ *   --port n          UDP port to listen on (default 7777)
+ *   --level path      level file, text or binary (default ./data/level1.txt)
+ *   --npcs n          NPCs in the world of each client (default 2)
+ *   --tick-rate n     server ticks per second (default 20)
+ *   --seed n          seed of the NPCs of the first client, incremented for each client (default 42)
+ *   --chase           the NPCs chase the hero instead of wandering
+ *   --immortal        heal the heroes instead of ending their game
+ *   --max-per-host n  clients allowed per IP address (default 8)
+ */
+public class NetworkServer implements Closeable {
+    private static final int HISTORY = 64; // Commands buffered and snapshots kept as baselines, per client
+    private static final int MAX_COMMANDS_PER_TICK = 3; // Commands applied per server tick when a client is behind
+    private static final int MAX_LEAD = 4; // Ticks the world of a client can run ahead of the server clock
+    private static final int MAX_COMMAND_LEAD = HISTORY / 2; // Ticks a command received can be ahead of the clock
+    private static final long TIMEOUT_NANOS = 5_000_000_000L; // Silence after which a client is dropped
+
+    private final DatagramChannel channel;
+    private final SharedLevel level; // Level of every world
+    private final int npcCount; // NPCs per world
+    private final long seed; // Seed of the NPCs of the first client
+    private final boolean chase; // Indicates whether the NPCs chase the heroes
+    private final boolean immortal; // Indicates whether the heroes are healed instead of dying
+    private final long tickNanos; // Duration of a server tick
+    private final HashMap<SocketAddress, Connection> connections = new HashMap<>(); // Clients by address
+    private final HashMap<InetAddress, Integer> hostConnections = new HashMap<>(); // Clients by IP address
+    private final Mac cookieMac; // Keyed hash of the addresses, with a secret drawn when the server starts
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(NetProtocol.MAX_DATAGRAM_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(NetProtocol.MAX_DATAGRAM_SIZE);
+    private final int[] eventScratch = new int[256]; // Key events of the command being read
+    private final LatencyHistogram tickHistogram; // Duration of each server tick, written by the server thread
+    private volatile boolean running = false;
+    private Thread thread;
+    private int nextClientId = 0;
+    private int maxConnectionsPerHost = 8;
+
+    // Counters written by the server thread only, read by the reports
+    private volatile int clientCount = 0;
+    private volatile long bytesReceived = 0;
+    private volatile long bytesSent = 0; // Payload of the snapshots, without the IP and UDP headers
+    private volatile long fullSnapshots = 0;
+    private volatile long deltaSnapshots = 0;
+    private volatile long fullSnapshotBytes = 0;
+    private volatile long deltaSnapshotBytes = 0;
+    private volatile long droppedSnapshots = 0; // Snapshots not sent because the socket buffer was full or failed
+    private volatile long lostCommands = 0; // Commands never received, applied as commands without input
+    private volatile long overruns = 0; // Server ticks longer than their period
+    private volatile long rejectedDatagrams = 0; // Corrupted datagrams, wrong cookies and clients over the cap
+    private volatile long receiveErrors = 0; // Failures of the channel while reading a datagram
+
+    /**
+     * Opens the channel of the server. The server thread starts with start().
+     *
+     * @param address  The address to listen on, port 0 picking any free port.
+     * @param level    The level of every world, shared between them.
+     * @param npcCount The number of NPCs in the world of each client.
+     * @param seed     The seed of the NPCs of the first client, incremented for each client.
+     * @param chase    Indicates whether the NPCs chase the hero instead of wandering.
+     * @param immortal Indicates whether the heroes are healed instead of dying.
+     * @param tickRate The number of server ticks per second.
+     * @param metrics  The registry of the server tick histogram and of the gauges, can be null.
+     */
+    public NetworkServer(InetSocketAddress address, SharedLevel level, int npcCount, long seed, boolean chase,
+                         boolean immortal, int tickRate, Metrics metrics) throws IOException {
+        this.level = level;
+        this.npcCount = npcCount;
+        this.seed = seed;
+        this.chase = chase;
+        this.immortal = immortal;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20); // Room for the input of hundreds of clients
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 1 << 20);
+        channel.bind(address);
+        channel.configureBlocking(false);
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        try {
+            cookieMac = Mac.getInstance("HmacSHA256");
+            cookieMac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot create the cookies of the clients", e);
+        }
+        tickHistogram = metrics != null ? metrics.histogram("server.tick") : new LatencyHistogram("server.tick");
+        if (metrics != null) {
+            metrics.gauge("net.clients", () -> clientCount);
+            metrics.gauge("net.bytesSent", () -> bytesSent);
+            metrics.gauge("net.bytesReceived", () -> bytesReceived);
+        }
+    }
+
+    /**
+     * @return The address the server listens on, with the port picked if 0 was given.
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Sets the number of clients allowed per IP address, 8 by default. Must be called before start().
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Starts the server thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "network-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the server thread and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            tick(start);
+            long end = System.nanoTime();
+            tickHistogram.record(end - start);
+            nextTick += tickNanos;
+            if (end > nextTick) {
+                overruns++;
+                nextTick = end; // No catch-up: the clients get their snapshots late instead of in bursts
+            }
+            long remaining;
+            while (running && (remaining = nextTick - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+
+    /**
+     * Runs one server tick: reads the pending datagrams, advances the worlds and sends the snapshots. A
+     * failure of the channel only loses the datagram it happened on, like a packet loss: the server and the
+     * other clients go on.
+     */
+    private void tick(long now) {
+        while (true) {
+            SocketAddress address;
+            try {
+                address = receive();
+            } catch (IOException e) {
+                receiveErrors++; // The next datagrams are read on the next tick
+                break;
+            }
+            if (address == null) {
+                break;
+            }
+            try {
+                handle(address, now);
+            } catch (IOException e) {
+                // A corrupted datagram is dropped like a lost one, the commands it carried are resent
+                rejectedDatagrams++;
+            }
+        }
+        for (Iterator<Connection> iterator = connections.values().iterator(); iterator.hasNext(); ) {
+            Connection connection = iterator.next();
+            if (now - connection.lastHeardNanos > TIMEOUT_NANOS) {
+                iterator.remove();
+                hostConnections.merge(connection.host, -1, (count, decrement) -> count > 1 ? count - 1 : null);
+                continue;
+            }
+            connection.advance(now);
+            if (connection.needsSnapshot()) {
+                try {
+                    connection.sendSnapshot();
+                } catch (IOException e) {
+                    droppedSnapshots++; // The snapshot is sent again on the next tick, as it is not acknowledged
+                }
+            }
+        }
+        clientCount = connections.size();
+    }
+
+    /**
+     * Handles the datagram in the receive buffer: answers a CONNECT with the cookie of its sender, and reads
+     * an INPUT carrying the right cookie, creating the world of a new client.
+     */
+    private void handle(SocketAddress address, long now) throws IOException {
+        byte type = NetProtocol.readByte(receiveBuffer);
+        if (type == NetProtocol.CONNECT) {
+            if (receiveBuffer.limit() < NetProtocol.CONNECT_SIZE) {
+                throw new IOException("CONNECT datagram not padded");
+            }
+            sendChallenge(address);
+            return;
+        }
+        if (type != NetProtocol.INPUT) {
+            throw new IOException("Unexpected datagram type");
+        }
+        long cookie = NetProtocol.readLong(receiveBuffer);
+        Connection connection = connections.get(address);
+        long expected = connection != null ? connection.cookie : cookie(address);
+        if (cookie != expected) {
+            sendChallenge(address); // No larger than the INPUT datagram, which holds at least a cookie
+            throw new IOException("Wrong cookie");
+        }
+        if (connection == null) {
+            InetAddress host = ((InetSocketAddress) address).getAddress();
+            if (hostConnections.getOrDefault(host, 0) >= maxConnectionsPerHost) {
+                throw new IOException("Too many clients from " + host);
+            }
+            connection = new Connection(address, nextClientId++, cookie, now);
+            connections.put(address, connection);
+            hostConnections.merge(host, 1, Integer::sum);
+        }
+        connection.lastHeardNanos = now;
+        connection.read(receiveBuffer, now);
+    }
+
+    /**
+     * @return The cookie of an address: the first 8 bytes of its keyed hash.
+     */
+    private long cookie(SocketAddress address) {
+        InetSocketAddress socketAddress = (InetSocketAddress) address;
+        cookieMac.update(socketAddress.getAddress().getAddress());
+        cookieMac.update((byte) (socketAddress.getPort() >> 8));
+        cookieMac.update((byte) socketAddress.getPort());
+        return ByteBuffer.wrap(cookieMac.doFinal()).getLong();
+    }
+
+    private void sendChallenge(SocketAddress address) throws IOException {
+        sendBuffer.clear();
+        sendBuffer.put(NetProtocol.CHALLENGE);
+        sendBuffer.putLong(cookie(address));
+        sendBuffer.flip();
+        channel.send(sendBuffer, address);
+    }
+
+    /**
+     * @return The sender of the datagram read into the receive buffer, or null if none is pending.
+     */
+    private SocketAddress receive() throws IOException {
+        receiveBuffer.clear();
+        SocketAddress address = channel.receive(receiveBuffer);
+        if (address != null) {
+            receiveBuffer.flip();
+            bytesReceived += receiveBuffer.remaining();
+        }
+        return address;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * @return The durations of the server ticks so far. Slightly stale counts are possible while the server
+     * runs.
+     */
+    public LatencyHistogram getTickHistogram() {
+        return tickHistogram;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return The bytes of snapshot sent so far, without the IP and UDP headers.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFullSnapshotCount() {
+        return fullSnapshots;
+    }
+
+    public long getDeltaSnapshotCount() {
+        return deltaSnapshots;
+    }
+
+    /**
+     * @return The mean size of a full snapshot in bytes, or 0 if none was sent.
+     */
+    public double getMeanFullSnapshotSize() {
+        long count = fullSnapshots;
+        return count == 0 ? 0 : (double) fullSnapshotBytes / count;
+    }
+
+    /**
+     * @return The mean size of a delta snapshot in bytes, or 0 if none was sent.
+     */
+    public double getMeanDeltaSnapshotSize() {
+        long count = deltaSnapshots;
+        return count == 0 ? 0 : (double) deltaSnapshotBytes / count;
+    }
+
+    /**
+     * @return The snapshots not sent so far, because the socket buffer was full or the channel failed.
+     */
+    public long getDroppedSnapshotCount() {
+        return droppedSnapshots;
+    }
+
+    public long getReceiveErrorCount() {
+        return receiveErrors;
+    }
+
+    public long getLostCommandCount() {
+        return lostCommands;
+    }
+
+    public long getOverrunCount() {
+        return overruns;
+    }
+
+    /**
+     * @return The datagrams dropped so far: corrupted ones, those with a wrong cookie, those of new clients
+     * over the limit of their IP address, and those with commands too far ahead of the server clock.
+     */
+    public long getRejectedDatagramCount() {
+        return rejectedDatagrams;
+    }
+
+    /**
+     * A client: its world, the commands received from it and the snapshots sent to it.
+     */
+    private final class Connection {
+        private final SocketAddress address;
+        private final InetAddress host; // IP address of the client, for the limit of clients per host
+        private final long cookie; // Cookie of the address, repeated by every INPUT datagram
+        private final HeadlessRunner world;
+        private final int[][] commands = new int[HISTORY][]; // Key events of the buffered commands, by sequence number
+        private final long[] commandSequences = new long[HISTORY]; // Sequence number of each buffered command
+        private final long[][] sentStates = new long[HISTORY][]; // States sent, by tick
+        private final long[] sentTicks = new long[HISTORY]; // Tick of each state sent
+        private long receivedSequence = 0; // Highest sequence number received
+        private long tick = 0; // Commands applied to the world, which is also the tick of the world
+        private long acknowledgedTick = -1; // Last tick the client received, -1 if none
+        private long sentTick = -1; // Tick of the last snapshot sent
+        private final long connectedNanos; // Start of the server clock of the client
+        private long lastHeardNanos;
+
+        Connection(SocketAddress address, int id, long cookie, long now) throws IOException {
+            this.address = address;
+            this.connectedNanos = now;
+            this.host = ((InetSocketAddress) address).getAddress();
+            this.cookie = cookie;
+            this.world = new HeadlessRunner(level, npcCount, new Random(seed + id));
+            if (chase) {
+                world.enableChase();
+            }
+            world.setImmortal(immortal);
+            Arrays.fill(commandSequences, -1);
+            Arrays.fill(sentTicks, -1);
+        }
+
+        /**
+         * @return The ticks of the server clock since the client connected.
+         */
+        long clockTick(long now) {
+            return (now - connectedNanos) / tickNanos;
+        }
+
+        /**
+         * Reads the rest of an INPUT datagram, after its cookie: the acknowledgement and the commands not
+         * buffered yet. The datagram is rejected if its last command is more than MAX_COMMAND_LEAD ticks ahead
+         * of the server clock, which no client ticking at the rate of the server can send.
+         */
+        void read(ByteBuffer buffer, long now) throws IOException {
+            long acknowledged = NetProtocol.readVarLong(buffer) - 1;
+            if (acknowledged > acknowledgedTick && acknowledged <= tick) {
+                acknowledgedTick = acknowledged;
+            }
+            long firstSequence = NetProtocol.readVarLong(buffer);
+            int commandCount = NetProtocol.readByte(buffer) & 0xFF;
+            if (firstSequence + commandCount - 1 > clockTick(now) + MAX_COMMAND_LEAD) {
+                throw new IOException("Commands ahead of the server");
+            }
+            for (int i = 0; i < commandCount; i++) {
+                long sequence = firstSequence + i;
+                int eventCount = NetProtocol.readByte(buffer) & 0xFF;
+                for (int event = 0; event < eventCount; event++) {
+                    eventScratch[event] = (int) NetProtocol.readVarLong(buffer);
+                }
+                int slot = (int) (sequence % HISTORY);
+                if (sequence > tick && sequence <= tick + HISTORY && commandSequences[slot] != sequence) {
+                    commands[slot] = Arrays.copyOf(eventScratch, eventCount);
+                    commandSequences[slot] = sequence;
+                    receivedSequence = Math.max(receivedSequence, sequence);
+                }
+            }
+        }
+
+        /**
+         * Applies the buffered commands in order, one world tick each, up to MAX_COMMANDS_PER_TICK, and never
+         * past MAX_LEAD ticks ahead of the server clock: a client that sends its commands faster than the
+         * server ticks does not make its world run faster, while a late client catches up on its backlog.
+         * A missing command is waited for while later datagrams may still carry it, then applied without input.
+         */
+        void advance(long now) {
+            long lastTick = Math.min(receivedSequence, clockTick(now) + MAX_LEAD);
+            for (int applied = 0; applied < MAX_COMMANDS_PER_TICK && tick < lastTick; applied++) {
+                long sequence = tick + 1;
+                int slot = (int) (sequence % HISTORY);
+                GameEngine gameEngine = world.getGameEngine();
+                if (commandSequences[slot] == sequence) {
+                    for (int event : commands[slot]) {
+                        gameEngine.submit(NetProtocol.decodeKeyEvent(event));
+                    }
+                } else if (receivedSequence - sequence < NetProtocol.MAX_RESENT_COMMANDS) {
+                    return; // Later datagrams repeat it
+                } else {
+                    lostCommands++;
+                }
+                world.tick();
+                tick = sequence;
+            }
+        }
+
+        /**
+         * @return True if the world changed since the last snapshot, or the client did not receive it yet.
+         */
+        boolean needsSnapshot() {
+            return sentTick != tick || acknowledgedTick != tick;
+        }
+
+        /**
+         * Sends the state of the world, as a delta against the last state acknowledged by the client when
+         * it is still kept.
+         */
+        void sendSnapshot() throws IOException {
+            int slot = (int) (tick % HISTORY);
+            long[] state = SnapshotCodec.capture(world.getPhysicEngine().getMovingSpriteList(), sentStates[slot]);
+            sentStates[slot] = state;
+            sentTicks[slot] = tick;
+            sentTick = tick;
+
+            long[] baseline = null;
+            if (acknowledgedTick >= 0 && acknowledgedTick < tick && tick - acknowledgedTick < HISTORY) {
+                int baselineSlot = (int) (acknowledgedTick % HISTORY);
+                if (sentTicks[baselineSlot] == acknowledgedTick && sentStates[baselineSlot].length == state.length) {
+                    baseline = sentStates[baselineSlot];
+                }
+            }
+            sendBuffer.clear();
+            sendBuffer.put(NetProtocol.SNAPSHOT);
+            NetProtocol.writeVarLong(sendBuffer, tick);
+            NetProtocol.writeVarLong(sendBuffer, baseline != null ? acknowledgedTick + 1 : 0);
+            sendBuffer.put((byte) (world.getGameEngine().isGameOver() ? NetProtocol.GAME_OVER : 0));
+            NetProtocol.writeVarLong(sendBuffer, SnapshotCodec.spriteCount(state));
+            SnapshotCodec.encode(sendBuffer, state, baseline);
+            sendBuffer.flip();
+            int size = sendBuffer.remaining();
+            if (channel.send(sendBuffer, address) == 0) {
+                droppedSnapshots++;
+                return;
+            }
+            bytesSent += size;
+            if (baseline != null) {
+                deltaSnapshots++;
+                deltaSnapshotBytes += size;
+            } else {
+                fullSnapshots++;
+                fullSnapshotBytes += size;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true"); // Never open a display, even if one is available
+
+        int port = 7777;
+        String levelPath = "./data/level1.txt";
+        int npcCount = 2;
+        int tickRate = 20;
+        long seed = 42;
+        boolean chase = false;
+        boolean immortal = false;
+        int maxPerHost = 8;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--level" -> levelPath = args[++i];
+                case "--npcs" -> npcCount = Integer.parseInt(args[++i]);
+                case "--tick-rate" -> tickRate = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--chase" -> chase = true;
+                case "--immortal" -> immortal = true;
+                case "--max-per-host" -> maxPerHost = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        NetworkServer server = new NetworkServer(new InetSocketAddress(port), SharedLevel.load(levelPath), npcCount,
+                seed, chase, immortal, tickRate, null);
+        server.setMaxConnectionsPerHost(maxPerHost);
+        server.start();
+        System.out.println("Listening on " + server.getLocalAddress());
+        LatencyHistogram reported = server.getTickHistogram().copy();
+        long reportedBytes = 0;
+        while (true) {
+            Thread.sleep(5000);
+            LatencyHistogram current = server.getTickHistogram().copy();
+            LatencyHistogram interval = current.since(reported);
+            reported = current;
+            long bytes = server.getBytesSent();
+            int clients = server.getClientCount();
+            System.out.printf("%d clients, %.0f B/s per client, tick p50 %.3f ms, p99 %.3f ms%n", clients,
+                    clients == 0 ? 0.0 : (bytes - reportedBytes) / 5.0 / clients, interval.getPercentile(50) / 1e6,
+                    interval.getPercentile(99) / 1e6);
+            reportedBytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Pathfinder class finds shortest paths between two tiles of a navigation grid with A*, moving in the
+ * four directions the sprites can walk in. The search reuses its arrays from one call to the next, and the
+ * paths found are kept in a cache with a bounded number of entries, which is emptied when the walkable
+ * tiles change.
+ * A path is an array of tile indices of the grid, from the start tile to the goal tile included.
+ */
+public class Pathfinder {
+    private final NavigationGrid grid; // Walkable tiles
+    private final int[] cost; // Number of steps from the start to each tile reached
+    private final int[] parent; // Tile each tile was reached from
+    private final int[] visitMark; // Search during which each tile was reached, so nothing has to be cleared
+    private final boolean[] closed; // Indicates whether the shortest path to each tile is known
+    private int search = 0; // Number of the current search
+    private int[] heapTiles = new int[64]; // Binary heap of the tiles to expand, by estimated total cost
+    private int[] heapPriorities = new int[64];
+    private int heapSize = 0;
+
+    private final LinkedHashMap<Long, int[]> cache; // Paths already found, by start and goal tiles
+    private int cachedVersion; // Version of the grid the cached paths were found on
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+
+    /**
+     * Constructs a Pathfinder.
+     *
+     * @param grid           The walkable tiles.
+     * @param maxCachedPaths The maximum number of paths kept in the cache.
+     */
+    public Pathfinder(NavigationGrid grid, int maxCachedPaths) {
+        this.grid = grid;
+        int size = grid.getColumns() * grid.getRows();
+        this.cost = new int[size];
+        this.parent = new int[size];
+        this.visitMark = new int[size];
+        this.closed = new boolean[size];
+        this.cachedVersion = grid.getVersion();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) { // Access order, the eldest entry is the least used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > maxCachedPaths;
+            }
+        };
+    }
+
+    /**
+     * Finds a shortest path between two tiles.
+     *
+     * @param startColumn The column of the start tile in the grid.
+     * @param startRow    The row of the start tile in the grid.
+     * @param goalColumn  The column of the goal tile in the grid.
+     * @param goalRow     The row of the goal tile in the grid.
+     * @return The tile indices of the path, start and goal included, or null if the goal cannot be reached.
+     * The array is shared with the cache and must not be modified.
+     */
+    public int[] findPath(int startColumn, int startRow, int goalColumn, int goalRow) {
+        if (grid.refresh() || grid.getVersion() != cachedVersion) {
+            cache.clear(); // The walkable tiles changed, every path may be wrong
+            cachedVersion = grid.getVersion();
+        }
+        int start = grid.index(startColumn, startRow);
+        int goal = grid.index(goalColumn, goalRow);
+        if (start < 0 || goal < 0 || !grid.isWalkable(start) || !grid.isWalkable(goal)) {
+            return null;
+        }
+        long key = (long) start << 32 | goal;
+        if (cache.containsKey(key)) {
+            cacheHits++;
+            return cache.get(key);
+        }
+        cacheMisses++;
+        int[] path = search(start, goal);
+        cache.put(key, path);
+        return path;
+    }
+
+    /**
+     * Runs A* with the Manhattan distance as heuristic, which never overestimates with four directions.
+     */
+    private int[] search(int start, int goal) {
+        search++;
+        heapSize = 0;
+        int columns = grid.getColumns();
+        int goalColumn = grid.columnOf(goal);
+        int goalRow = grid.rowOf(goal);
+        reach(start, -1, 0, goalColumn, goalRow);
+        while (heapSize > 0) {
+            int tile = pop();
+            if (closed[tile]) {
+                continue; // Already expanded through a shorter path
+            }
+            closed[tile] = true;
+            if (tile == goal) {
+                return buildPath(goal);
+            }
+            int column = grid.columnOf(tile);
+            int row = grid.rowOf(tile);
+            int nextCost = cost[tile] + 1;
+            if (grid.isWalkable(column, row - 1)) {
+                reach(tile - columns, tile, nextCost, goalColumn, goalRow);
+            }
+            if (grid.isWalkable(column, row + 1)) {
+                reach(tile + columns, tile, nextCost, goalColumn, goalRow);
+            }
+            if (grid.isWalkable(column - 1, row)) {
+                reach(tile - 1, tile, nextCost, goalColumn, goalRow);
+            }
+            if (grid.isWalkable(column + 1, row)) {
+                reach(tile + 1, tile, nextCost, goalColumn, goalRow);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records that a tile can be reached with the given cost, if it is the first or a cheaper way to reach it.
+     */
+    private void reach(int tile, int from, int tileCost, int goalColumn, int goalRow) {
+        if (visitMark[tile] == search && (closed[tile] || cost[tile] <= tileCost)) {
+            return;
+        }
+        if (visitMark[tile] != search) {
+            visitMark[tile] = search;
+            closed[tile] = false;
+        }
+        cost[tile] = tileCost;
+        parent[tile] = from;
+        int estimate = Math.abs(grid.columnOf(tile) - goalColumn) + Math.abs(grid.rowOf(tile) - goalRow);
+        push(tile, tileCost + estimate);
+    }
+
+    private int[] buildPath(int goal) {
+        int[] path = new int[cost[goal] + 1];
+        int tile = goal;
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = tile;
+            tile = parent[tile];
+        }
+        return path;
+    }
+
+    private void push(int tile, int priority) {
+        if (heapSize == heapTiles.length) {
+            heapTiles = Arrays.copyOf(heapTiles, heapSize * 2);
+            heapPriorities = Arrays.copyOf(heapPriorities, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parentSlot = (i - 1) / 2;
+            if (heapPriorities[parentSlot] <= priority) {
+                break;
+            }
+            heapTiles[i] = heapTiles[parentSlot];
+            heapPriorities[i] = heapPriorities[parentSlot];
+            i = parentSlot;
+        }
+        heapTiles[i] = tile;
+        heapPriorities[i] = priority;
+    }
+
+    private int pop() {
+        int top = heapTiles[0];
+        int lastTile = heapTiles[--heapSize];
+        int lastPriority = heapPriorities[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapPriorities[child + 1] < heapPriorities[child]) {
+                child++;
+            }
+            if (heapPriorities[child] >= lastPriority) {
+                break;
+            }
+            heapTiles[i] = heapTiles[child];
+            heapPriorities[i] = heapPriorities[child];
+            i = child;
+        }
+        heapTiles[i] = lastTile;
+        heapPriorities[i] = lastPriority;
+        return top;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+}
@@ -1,18 +1,51 @@
-import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The PhysicEngine class handles the movement of dynamic sprites within the game environment.
  * It updates the positions of the sprites based on their possible movement, considering obstacles and boundaries.
+ * Solid sprites of the environment are indexed in a uniform grid so that each collision query only
+ * looks at the cells overlapped by the moved hitbox. The tiles of the level are tested directly on
+ * their tile maps.
+ * In parallel mode, a tick is split in two phases: the collision queries against the static world (tiles and
+ * solid sprites that never move) are read-only and run in parallel over a ForkJoin pool, then the moves are
+ * resolved sequentially in list order against the moving obstacles, which gives exactly the sequential result.
+ * The state of the moving sprites is held in an EntityStore, in the order they are moved, so that a tick walks
+ * its arrays linearly; the sprites are views over it.
+ * Once every sprite has moved, the contacts of the tracked sprites are updated and their listeners notified,
+ * so game rules reacting to overlaps reuse this pass instead of scanning the level again.
  */
-public class PhysicEngine implements Engine {
+public class PhysicEngine implements Engine, ChunkListener, CollisionSpace {
+    public static final double DEFAULT_CELL_SIZE = 64; // Size of a grid cell, matches the tile size of the levels
+    private static final int PARALLEL_THRESHOLD = 256; // Sprites handled by one parallel task, and minimum to go parallel
+
     private ArrayList<DynamicSprite> movingSpriteList;  // List of dynamic sprites that can move
+    private final EntityStore entities;                 // State of the moving sprites, in the order of the list
     private ArrayList<Sprite> environment;              // List of all sprites in the environment, including obstacles
+    private SpatialGrid<SolidSprite> collisionGrid;     // Broadphase index of the static solid sprites of the environment
+    private SpatialGrid<DynamicSprite> dynamicObstacleGrid; // Index of the moving sprites that are also obstacles
+    private SpatialGrid<Sprite> triggerGrid;            // Sprites of the environment that do not block, such as pickups
+    private ContactTracker contactTracker;              // Contacts of the tracked sprites, null if none is tracked
+    private ArrayList<TileMap> tileMaps;                // Tiles of the level, a whole level or its resident chunks
     private boolean gameOver = false;
+    private ForkJoinPool pool;                          // Threads of the parallel mode, null in sequential mode
+    private boolean[] staticallyBlocked = new boolean[0]; // Result of the parallel phase, per moving sprite
+    private double[] staticX = new double[0]; // Position reached through the static world in the parallel phase
+    private double[] staticY = new double[0];
+    private long collisionChecks = 0; // Collision queries made to move the sprites since the start
+    private volatile long lastTickCollisionChecks = 0; // Collision queries made on the last tick, read by the metrics
 
     public PhysicEngine() {
         movingSpriteList = new ArrayList<>();
+        entities = new EntityStore(64);
         environment = new ArrayList<>();
+        collisionGrid = new SpatialGrid<>(DEFAULT_CELL_SIZE);
+        dynamicObstacleGrid = new SpatialGrid<>(DEFAULT_CELL_SIZE);
+        triggerGrid = new SpatialGrid<>(DEFAULT_CELL_SIZE);
+        tileMaps = new ArrayList<>();
     }
 
     /**
@@ -24,6 +57,7 @@ public class PhysicEngine implements Engine {
     public void addToEnvironmentList(Sprite sprite) {
         if (!environment.contains(sprite)) {
             environment.add(sprite);
+            index(sprite);
         }
     }
 
@@ -33,32 +67,353 @@ public class PhysicEngine implements Engine {
     public ArrayList<Sprite> getEnvironment() {
         return environment;
     }
+
+    /**
+     * @return The spatial grid indexing the static solid sprites of the environment
+     */
+    public SpatialGrid<SolidSprite> getCollisionGrid() {
+        return collisionGrid;
+    }
+
     public void setGameOver(boolean gameOver) {
         this.gameOver = gameOver;
     }
 
+    /**
+     * Enables or disables the parallel mode.
+     *
+     * @param parallelism The number of threads of the parallel mode, or 0 or less for the sequential mode.
+     */
+    public void setParallelism(int parallelism) {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (parallelism > 0) {
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    /**
+     * Replaces the environment and rebuilds the collision grid from it.
+     *
+     * @param environment The new list of environment sprites
+     */
     public void setEnvironment(ArrayList<Sprite> environment) {
+        for (Sprite sprite : this.environment) {
+            if (sprite instanceof DynamicSprite) {
+                ((DynamicSprite) sprite).setObstacle(false);
+            }
+        }
         this.environment = environment;
+        collisionGrid.clear();
+        dynamicObstacleGrid.clear();
+        triggerGrid.clear();
+        for (Sprite sprite : environment) {
+            index(sprite);
+        }
+    }
+
+    /**
+     * Sets the tiles of the level, replacing the tile maps and chunks previously set.
+     *
+     * @param tileMap The tiles of the level.
+     */
+    public void setTileMap(TileMap tileMap) {
+        tileMaps.clear();
+        tileMaps.add(tileMap);
+    }
+
+    /**
+     * @return The tile maps of the level, a whole level or its resident chunks.
+     */
+    List<TileMap> getTileMaps() {
+        return Collections.unmodifiableList(tileMaps);
+    }
+
+    /**
+     * @return The contact tracker, or null if no sprite is tracked.
+     */
+    ContactTracker peekContactTracker() {
+        return contactTracker;
+    }
+
+    /**
+     * Adds a chunk of tiles that was just streamed in.
+     *
+     * @param chunk The tiles of the chunk.
+     */
+    @Override
+    public void chunkLoaded(TileMap chunk) {
+        tileMaps.add(chunk);
     }
 
     /**
-     * Adds a dynamic sprite to the list of moving sprites if it is not already present.
+     * Removes the tiles of an evicted chunk.
+     *
+     * @param chunk The tiles of the chunk.
+     */
+    @Override
+    public void chunkEvicted(TileMap chunk) {
+        tileMaps.remove(chunk);
+    }
+
+    /**
+     * Checks whether a solid tile or a solid sprite of the environment intersects the given rectangle.
+     */
+    @Override
+    public boolean anyIntersects(double x, double y, double width, double height, Sprite ignore) {
+        collisionChecks++;
+        return anyStaticIntersects(x, y, width, height, ignore)
+                || dynamicObstacleGrid.anyIntersects(x, y, width, height, ignore);
+    }
+
+    /**
+     * Checks whether a solid tile or a static solid sprite intersects the given rectangle. Only reads
+     * state that does not change during a tick, so it can be called from several threads.
+     */
+    private boolean anyStaticIntersects(double x, double y, double width, double height, Sprite ignore) {
+        for (int i = 0; i < tileMaps.size(); i++) {
+            TileMap tileMap = tileMaps.get(i);
+            if (tileMap.overlaps(x, y, width, height) && tileMap.anyIntersects(x, y, width, height, ignore)) {
+                return true;
+            }
+        }
+        return collisionGrid.anyIntersects(x, y, width, height, ignore);
+    }
+
+    /**
+     * Adds the solid tiles and solid sprites of the environment intersecting the given rectangle.
+     */
+    @Override
+    public void collectObstacles(double x, double y, double width, double height, Sprite ignore,
+                                 SweptCollision collision) {
+        collisionChecks++;
+        collectStaticObstacles(x, y, width, height, ignore, collision);
+        dynamicObstacleGrid.collectObstacles(x, y, width, height, ignore, collision);
+    }
+
+    /**
+     * Adds the solid tiles and static solid sprites intersecting the given rectangle. Only reads state that
+     * does not change during a tick, so it can be called from several threads.
+     */
+    private void collectStaticObstacles(double x, double y, double width, double height, Sprite ignore,
+                                        SweptCollision collision) {
+        for (int i = 0; i < tileMaps.size(); i++) {
+            TileMap tileMap = tileMaps.get(i);
+            if (tileMap.overlaps(x, y, width, height)) {
+                tileMap.collectObstacles(x, y, width, height, ignore, collision);
+            }
+        }
+        collisionGrid.collectObstacles(x, y, width, height, ignore, collision);
+    }
+
+    private void index(Sprite sprite) {
+        if (sprite instanceof DynamicSprite) {
+            dynamicObstacleGrid.insert((DynamicSprite) sprite);
+            ((DynamicSprite) sprite).setObstacle(true); // Kept up to date in the grid when it moves
+        } else if (sprite instanceof SolidSprite) {
+            collisionGrid.insert((SolidSprite) sprite);
+        } else {
+            triggerGrid.insert(sprite);
+        }
+    }
+
+    /**
+     * Rebuilds the index of the moving sprites that are also obstacles from their current positions, once they
+     * were placed without being moved through the world, such as when a save is loaded.
+     */
+    void reindexDynamicObstacles() {
+        dynamicObstacleGrid.clear();
+        for (int i = 0; i < environment.size(); i++) {
+            if (environment.get(i) instanceof DynamicSprite dynamicSprite) {
+                dynamicObstacleGrid.insert(dynamicSprite);
+            }
+        }
+    }
+
+    /**
+     * Starts computing the contacts of a moving sprite on each tick.
+     *
+     * @param sprite The sprite whose overlaps are reported to the contact listeners.
+     */
+    public void trackContacts(DynamicSprite sprite) {
+        getContactTracker().track(sprite);
+    }
+
+    /**
+     * Adds a listener notified of the contacts of the tracked sprites.
+     *
+     * @param listener The listener to add.
+     */
+    public void addContactListener(ContactListener listener) {
+        getContactTracker().addListener(listener);
+    }
+
+    public ContactTracker getContactTracker() {
+        if (contactTracker == null) {
+            contactTracker = new ContactTracker();
+        }
+        return contactTracker;
+    }
+
+    /**
+     * Adds a dynamic sprite to the list of moving sprites if it is not already present, and moves its state
+     * into the store of the engine. A sprite can only be moved by one engine.
      *
      * @param sprite The dynamic sprite to be added to the moving list
      */
     public void addToMovingSpriteList(DynamicSprite sprite) {
-        if (!movingSpriteList.contains(sprite)) {
+        if (sprite.getStore() != entities) {
+            sprite.moveTo(entities); // Same index in the store as in the list
             movingSpriteList.add(sprite);
         }
     }
 
+    /**
+     * @return The state of the moving sprites, indexed like the moving sprite list.
+     */
+    EntityStore getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The moving sprites, in the order they are moved on each tick.
+     */
+    public List<DynamicSprite> getMovingSpriteList() {
+        return Collections.unmodifiableList(movingSpriteList);
+    }
+
+    public int getMovingSpriteCount() {
+        return movingSpriteList.size();
+    }
+
     /**
      * Updates the state of all moving sprites by attempting to move them.
      */
     public void update() {
-        // Iterate through all moving sprites and attempt to move them
-        for (DynamicSprite dynamicSprite : movingSpriteList) {
-            dynamicSprite.moveIfPossible(environment, gameOver);  // Check if the sprite can move and update position
+        long checksBefore = collisionChecks;
+        if (pool != null && movingSpriteList.size() >= PARALLEL_THRESHOLD) {
+            updateParallel();
+        } else {
+            updateSequential();
+        }
+        if (contactTracker != null && !gameOver) { // Once the game is over, contacts no longer have any effect
+            contactTracker.update(tileMaps, collisionGrid, dynamicObstacleGrid, triggerGrid);
+        }
+        lastTickCollisionChecks = collisionChecks - checksBefore;
+    }
+
+    /**
+     * @return The number of collision queries made to move the sprites on the last tick.
+     */
+    public long getLastTickCollisionChecks() {
+        return lastTickCollisionChecks;
+    }
+
+    /**
+     * Moves the sprites one after the other.
+     */
+    private void updateSequential() {
+        // Walk the entities of the moving sprites and attempt to move them
+        SweptCollision collision = SweptCollision.forCurrentThread();
+        for (int i = 0; i < entities.size(); i++) {
+            double oldX = entities.getX(i);
+            double oldY = entities.getY(i);
+            entities.savePreviousPosition(i);
+            if (gameOver) {
+                continue;  // Do not allow movement if the game is over
+            }
+            collision.clear();
+            collectObstacles(entities.getSweptX(i), entities.getSweptY(i), entities.getSweptWidth(i),
+                    entities.getSweptHeight(i), entities.getSprite(i), collision);
+            collision.move(oldX, oldY, entities.getWidth(i), entities.getHeight(i), entities.getVelocityX(i),
+                    entities.getVelocityY(i));
+            entities.resolveMove(i, collision.getX(), collision.getY(), collision.isBlocked());
+            if (entities.hasFlag(i, EntityStore.OBSTACLE)) {
+                // Keep the grid up to date for the sprites others collide with
+                dynamicObstacleGrid.move(entities.getSprite(i), oldX, oldY);
+            }
+        }
+    }
+
+    /**
+     * Updates the moving sprites in two phases: parallel swept moves through the static world, then
+     * sequential resolution in list order. A sprite whose swept box meets no moving obstacle keeps the result
+     * of the first phase, which is then exactly the result of the sequential mode; the others are moved
+     * again through the whole world.
+     */
+    private void updateParallel() {
+        int count = entities.size();
+        if (staticallyBlocked.length < count) {
+            staticallyBlocked = new boolean[count];
+            staticX = new double[count];
+            staticY = new double[count];
+        }
+        if (!gameOver) {
+            pool.invoke(new IntentTask(0, count)); // Intent phase: read-only, results in staticX, staticY and staticallyBlocked
+            collisionChecks += count;
+        }
+        SweptCollision collision = SweptCollision.forCurrentThread();
+        for (int i = 0; i < count; i++) { // Resolve phase: same order as the sequential mode
+            double oldX = entities.getX(i);
+            double oldY = entities.getY(i);
+            entities.savePreviousPosition(i);
+            if (gameOver) {
+                continue;  // Do not allow movement if the game is over
+            }
+            DynamicSprite dynamicSprite = entities.getSprite(i);
+            double sweptX = entities.getSweptX(i);
+            double sweptY = entities.getSweptY(i);
+            double sweptWidth = entities.getSweptWidth(i);
+            double sweptHeight = entities.getSweptHeight(i);
+            collisionChecks++;
+            if (dynamicObstacleGrid.anyIntersects(sweptX, sweptY, sweptWidth, sweptHeight, dynamicSprite)) {
+                collision.clear();
+                collectObstacles(sweptX, sweptY, sweptWidth, sweptHeight, dynamicSprite, collision);
+                collision.move(oldX, oldY, entities.getWidth(i), entities.getHeight(i), entities.getVelocityX(i),
+                        entities.getVelocityY(i));
+                entities.resolveMove(i, collision.getX(), collision.getY(), collision.isBlocked());
+            } else {
+                entities.resolveMove(i, staticX[i], staticY[i], staticallyBlocked[i]);
+            }
+            if (entities.hasFlag(i, EntityStore.OBSTACLE)) {
+                dynamicObstacleGrid.move(dynamicSprite, oldX, oldY);
+            }
+        }
+    }
+
+    /**
+     * Moves, for a range of moving sprites, their next step through the static world, without changing them.
+     */
+    private class IntentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        IntentTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new IntentTask(from, middle), new IntentTask(middle, to));
+                return;
+            }
+            SweptCollision collision = SweptCollision.forCurrentThread(); // One per worker thread
+            for (int i = from; i < to; i++) {
+                collision.clear();
+                collectStaticObstacles(entities.getSweptX(i), entities.getSweptY(i), entities.getSweptWidth(i),
+                        entities.getSweptHeight(i), entities.getSprite(i), collision);
+                collision.move(entities.getX(i), entities.getY(i), entities.getWidth(i), entities.getHeight(i),
+                        entities.getVelocityX(i), entities.getVelocityY(i));
+                staticX[i] = collision.getX();
+                staticY[i] = collision.getY();
+                staticallyBlocked[i] = collision.isBlocked();
+            }
         }
     }
 }
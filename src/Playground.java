@@ -1,73 +1,122 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
+/**
+ * The Playground class loads a level, either from the text format (one character per tile) or from the
+ * binary format written by LevelConverter, into a TileMap.
+ */
 public class Playground {
-    private ArrayList<Sprite> environment = new ArrayList<>();
+    protected TileType[] palette; // Tile types of the level, indexed by tile id
+    protected byte[] symbolTable; // Tile id of each character of a level file
+    protected TileMap tileMap; // Tiles of the level
 
     public Playground (String pathName){
         try{
-            final Image imageTree = ImageIO.read(new File("./img/tree.png"));
-            final Image imageGrass = ImageIO.read(new File("./img/grass.png"));
-            final Image imageRock = ImageIO.read(new File("./img/rock.png"));
-            final Image imageTrap = ImageIO.read(new File("./img/trap.png"));
-
-            final int imageTreeWidth = imageTree.getWidth(null);
-            final int imageTreeHeight = imageTree.getHeight(null);
-
-            final int imageGrassWidth = imageGrass.getWidth(null);
-            final int imageGrassHeight = imageGrass.getHeight(null);
-
-            final int imageRockWidth = imageRock.getWidth(null);
-            final int imageRockHeight = imageRock.getHeight(null);
-
-            final int imageTrapWidth = imageRock.getWidth(null);
-            final int imageTrapHeight = imageRock.getHeight(null);
+            loadPalette();
+            if (BinaryLevel.isBinaryLevel(pathName)){
+                // Memory-mapped, the tile ids are used without parsing nor copying
+                tileMap = BinaryLevel.load(pathName, palette);
+                palette = tileMap.getPalette();
+                symbolTable = TileMap.createSymbolTable(palette);
+                return;
+            }
 
+            // Read the lines first: the size of the level is needed to allocate the tile map
             BufferedReader bufferedReader = new BufferedReader(new FileReader(pathName));
+            ArrayList<byte[]> lines = new ArrayList<>();
+            int columnCount = 0;
             String line=bufferedReader.readLine();
-            int lineNumber = 0;
-            int columnNumber = 0;
             while (line!= null){
-                for (byte element : line.getBytes(StandardCharsets.UTF_8)){
-                    switch (element){
-                        case 'T' : environment.add(new SolidSprite(columnNumber*imageTreeWidth,
-                                lineNumber*imageTreeHeight,imageTree, imageTreeWidth, imageTreeHeight));
-                                    break;
-                        case ' ' : environment.add(new Sprite(columnNumber*imageGrassWidth,
-                                lineNumber*imageGrassHeight, imageGrass, imageGrassWidth, imageGrassHeight));
-                            break;
-                        case 'R' : environment.add(new SolidSprite(columnNumber*imageRockWidth,
-                                lineNumber*imageRockHeight, imageRock, imageRockWidth, imageRockHeight));
-                            break;
-                    }
-                    columnNumber++;
-                }
-                columnNumber =0;
-                lineNumber++;
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                lines.add(bytes);
+                columnCount = Math.max(columnCount, bytes.length);
                 line=bufferedReader.readLine();
             }
+            bufferedReader.close();
+
+            tileMap = new TileMap(columnCount, lines.size(), 0, 0, getTileWidth(), getTileHeight(), palette);
+            for (int lineNumber = 0; lineNumber < lines.size(); lineNumber++){
+                byte[] bytes = lines.get(lineNumber);
+                for (int columnNumber = 0; columnNumber < bytes.length; columnNumber++){
+                    tileMap.setTileId(columnNumber, lineNumber, symbolTable[bytes[columnNumber] & 0xFF]);
+                }
+            }
         }
         catch (Exception e){
             e.printStackTrace();
         }
     }
 
+    /**
+     * Constructs an empty Playground with its tile types loaded, for subclasses that load the level themselves.
+     */
+    protected Playground() throws IOException {
+        loadPalette();
+    }
+
+    /**
+     * Loads the tile images and builds the table of tile types. The id 0 is the empty tile.
+     */
+    private void loadPalette() throws IOException {
+        final Image imageTree = Assets.getImage("./img/tree.png");
+        final Image imageGrass = Assets.getImage("./img/grass.png");
+        final Image imageRock = Assets.getImage("./img/rock.png");
+        final Image imageTrap = Assets.getImage("./img/trap.png");
+
+        palette = new TileType[]{
+                new TileType('\0', null, false, 0), // Empty tile, for unknown characters
+                new TileType(' ', imageGrass, false, 0),
+                new TileType('T', imageTree, true, 0),
+                new TileType('R', imageRock, true, 0),
+                new TileType('X', imageTrap, false, 10), // Trap, hurts the hero stepping on it
+        };
+        symbolTable = TileMap.createSymbolTable(palette);
+    }
+
+    /**
+     * @return The width of a tile in pixels.
+     */
+    public int getTileWidth(){
+        if (tileMap != null) return tileMap.getTileWidth();
+        return palette[1].getImage().getWidth(null);
+    }
+
+    /**
+     * @return The height of a tile in pixels.
+     */
+    public int getTileHeight(){
+        if (tileMap != null) return tileMap.getTileHeight();
+        return palette[1].getImage().getHeight(null);
+    }
+
+    public TileType[] getPalette(){
+        return palette;
+    }
+
+    /**
+     * @return The tiles of the level.
+     */
+    public TileMap getTileMap(){
+        return tileMap;
+    }
+
+    /**
+     * Creates one SolidSprite per solid tile. Prefer getTileMap(), which does not allocate per tile.
+     */
     public ArrayList<Sprite> getSolidSpriteList(){
-        ArrayList <Sprite> solidSpriteArrayList = new ArrayList<>();
-        for (Sprite sprite : environment){
-            if (sprite instanceof SolidSprite) solidSpriteArrayList.add(sprite);
-        }
-        return solidSpriteArrayList;
+        return tileMap.toSprites(true);
     }
 
+    /**
+     * Creates one Sprite per tile. Prefer getTileMap(), which does not allocate per tile.
+     */
     public ArrayList<Displayable> getSpriteList(){
         ArrayList <Displayable> displayableArrayList = new ArrayList<>();
-        for (Sprite sprite : environment){
+        for (Sprite sprite : tileMap.toSprites(false)){
             displayableArrayList.add((Displayable) sprite);
         }
         return displayableArrayList;
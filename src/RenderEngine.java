@@ -1,11 +1,74 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class RenderEngine extends JPanel implements Engine {
-    private ArrayList<Displayable> renderList; // List of objects to render
+/**
+ * The RenderEngine class draws the level and its sprites.
+ * By default it relies on passive Swing painting (repaint() then paint() on the event thread). In active mode,
+ * frames are drawn directly by the caller of update() into the BufferStrategy of a Canvas.
+ * The tiles of the level, or sprites that never move, can be baked once into a static layer image that is
+ * blitted on each frame.
+ * When a camera is set, only the part of the level inside its view is drawn.
+ * Frames where nothing changed are skipped in both modes. In passive mode, only the parts of the panel where
+ * a sprite changed are repainted; in active mode, a frame is drawn whole, as the buffers of the canvas flip.
+ * Moving sprites are drawn from the last world snapshot published by the simulation rather than from the
+ * sprites themselves, so frames can be drawn on another thread than the one running the simulation.
+ */
+public class RenderEngine extends JPanel implements Engine, ChunkListener {
+    private static final long MAX_STATIC_LAYER_PIXELS = 4096L * 4096L; // Larger levels are drawn tile by tile
+    private static final double STATIC_GRID_CELL_SIZE = 256; // Cell size of the index of the static sprites
+    private static final long MAX_SKIPPED_MILLIS = 1000; // Active mode: longest time without drawing, repairs damage
+    private static final int CULLING_MARGIN = 64; // Margin around the view, covers what sprites draw outside their bounds
+
+    private final CopyOnWriteArrayList<Displayable> renderList = new CopyOnWriteArrayList<>(); // Objects to render, network NPCs are added by the simulation thread
+    private Image staticLayer; // Pre-rendered image of the sprites that never move, drawn first
+    private TileMap bakedTileMap; // Tiles baked into the static layer, null if none
+    private int bakedModificationCount; // Modification count of the baked tiles when they were baked
+    private SpatialGrid<Sprite> staticGrid; // Index of the static sprites, used when they are too many to be baked
+    private final ArrayList<Sprite> visibleStaticSprites = new ArrayList<>(); // Reused result of the view query
+    private final ArrayList<DynamicSprite> movingSprites = new ArrayList<>(); // Sprites of the render list captured in snapshots
+    private final CopyOnWriteArrayList<Displayable> otherRenderList = new CopyOnWriteArrayList<>(); // Objects of the render list not captured
+    private int[] visibleMovingSprites = new int[0]; // Reused result of the view query of the snapshot
+    private final CopyOnWriteArrayList<TileMap> tileMaps = new CopyOnWriteArrayList<>(); // Tiles drawn directly when not baked, streamed chunks change from the simulation thread
+    private int worldWidth; // Width of the level in pixels
+    private int worldHeight; // Height of the level in pixels
+    private Camera camera; // Part of the level to show, null to draw from the top-left corner
+    private Canvas canvas; // Canvas used for active rendering, null in passive mode
+    private BufferStrategy bufferStrategy; // Buffers of the canvas, created once the canvas is displayable
+    private long lastActiveFrameMillis; // Time the last frame was drawn in active mode
     private boolean gameOver = false; // Indicates whether the game is in a game-over state
     private Image gameOverImage; // Image displayed when the game ends
+    private boolean gameOverImageFailed = false; // Indicates whether loading the game-over image failed, logged once
+    private volatile double interpolation = 1; // Position of the frame between the last two physics ticks
+    private volatile WorldSnapshot snapshot; // Last state of the moving sprites published by the simulation
+    private Metrics metrics; // Receives the paint durations of the passive mode, null if none is set
+    private LatencyHistogram paintHistogram; // Durations of paint() in passive mode, null if no metrics are set
+    private MetricsOverlay overlay; // Drawn over the scene when visible, null if none is set
+
+    // What the panel or the canvas shows, to draw only what changed
+    private volatile PreparedFrame preparedFrame; // Frame painted by paint(), prepared by update()
+    private volatile boolean fullRepaintNeeded = true; // Set when the level or the view changed
+    private int[] paintedX = new int[0]; // Drawn x-coordinate of each sprite of the snapshot
+    private int[] paintedY = new int[0]; // Drawn y-coordinate of each sprite of the snapshot
+    private int[] paintedFrame = new int[0]; // Animation frame drawn for each sprite of the snapshot
+    private int[] paintedDirection = new int[0]; // Ordinal of the direction drawn for each sprite of the snapshot
+    private int[] paintedHealth = new int[0]; // Health drawn for each sprite of the snapshot, -1 if none
+    private double[] paintedOtherX = new double[0]; // Position of each other Sprite of the render list
+    private double[] paintedOtherY = new double[0];
+    private long paintedTileModifications; // Sum of the modification counts of the tile maps drawn
+    private int paintedViewX; // Position and size of the view drawn
+    private int paintedViewY;
+    private int paintedViewWidth;
+    private int paintedViewHeight;
+    private boolean paintedGameOver; // Indicates whether the game-over screen is drawn
+    private boolean paintedOverlay; // Indicates whether the metrics overlay is drawn
+    private Rectangle dirtyRegion; // Part of the panel repainted for the last frame, null if skipped
+    private long skippedFrames = 0; // Frames not drawn at all because nothing changed
 
     /**
      * Constructs a new RenderEngine with an associated JFrame.
@@ -14,7 +77,6 @@ public class RenderEngine extends JPanel implements Engine {
      * @param jFrame The JFrame that serves as the parent container for this JPanel.
      */
     public RenderEngine(JFrame jFrame) {
-        renderList = new ArrayList<>();
     }
 
     /**
@@ -25,6 +87,11 @@ public class RenderEngine extends JPanel implements Engine {
     public void addToRenderList(Displayable displayable) {
         if (!renderList.contains(displayable)) {
             renderList.add(displayable);
+            if (displayable instanceof DynamicSprite dynamicSprite) {
+                movingSprites.add(dynamicSprite);
+            } else {
+                otherRenderList.add(displayable);
+            }
         }
     }
 
@@ -35,57 +102,619 @@ public class RenderEngine extends JPanel implements Engine {
      */
     public void addToRenderList(ArrayList<Displayable> displayables) {
         for (Displayable displayable : displayables) {
-            if (!renderList.contains(displayable)) {
-                renderList.add(displayable);
+            addToRenderList(displayable);
+        }
+    }
+
+    /**
+     * Registers sprites that never move (the tiles of the level). When the level is small enough they are
+     * rasterized once into a single image, created compatible with the screen so that it can be cached in
+     * video memory, and each frame then draws it with one blit instead of one draw call per tile.
+     * Otherwise they are indexed in a spatial grid and only those inside the camera view are drawn.
+     *
+     * @param displayables The static objects of the level.
+     */
+    public void setStaticLayer(ArrayList<Displayable> displayables) {
+        fullRepaintNeeded = true;
+        worldWidth = 1;
+        worldHeight = 1;
+        staticGrid = new SpatialGrid<>(STATIC_GRID_CELL_SIZE);
+        for (Displayable displayable : displayables) {
+            if (displayable instanceof Sprite sprite) {
+                worldWidth = Math.max(worldWidth, (int) Math.ceil(sprite.getX() + sprite.width));
+                worldHeight = Math.max(worldHeight, (int) Math.ceil(sprite.getY() + sprite.height));
+                staticGrid.insert(sprite);
+            } else {
+                addToRenderList(displayable); // No bounds to index or bake it with
+            }
+        }
+        staticLayer = null;
+        bakedTileMap = null;
+        tileMaps.clear();
+        if ((long) worldWidth * worldHeight > MAX_STATIC_LAYER_PIXELS) {
+            return; // Too large to be held in a single image
+        }
+        BufferedImage layer = Assets.createCompatibleImage(worldWidth, worldHeight);
+        Graphics2D g = layer.createGraphics();
+        for (Displayable displayable : displayables) {
+            if (displayable instanceof Sprite) {
+                displayable.draw(g);
             }
         }
+        g.dispose();
+        staticLayer = layer;
+        staticGrid = null; // Not needed anymore
+    }
+
+    /**
+     * Sets the tiles of the level. Small levels are baked once into the static layer image, larger ones
+     * are drawn from the tile map, looking only at the tiles inside the camera view.
+     *
+     * @param tileMap The tiles of the level.
+     */
+    public void setTileMap(TileMap tileMap) {
+        fullRepaintNeeded = true;
+        worldWidth = (int) Math.ceil(tileMap.getPixelX() + tileMap.getPixelWidth());
+        worldHeight = (int) Math.ceil(tileMap.getPixelY() + tileMap.getPixelHeight());
+        staticGrid = null;
+        staticLayer = null;
+        bakedTileMap = null;
+        tileMaps.clear();
+        if ((long) worldWidth * worldHeight > MAX_STATIC_LAYER_PIXELS) {
+            tileMaps.add(tileMap); // Too large to be held in a single image
+            return;
+        }
+        bakedModificationCount = tileMap.getModificationCount();
+        BufferedImage layer = Assets.createCompatibleImage(Math.max(1, worldWidth), Math.max(1, worldHeight));
+        Graphics2D g = layer.createGraphics();
+        tileMap.draw(g, 0, 0, worldWidth, worldHeight);
+        g.dispose();
+        staticLayer = layer;
+        bakedTileMap = tileMap;
+    }
+
+    /**
+     * Prepares the static layer of a level streamed by chunks, whose tiles are added and removed later.
+     *
+     * @param levelWidth  The width of the whole level in pixels.
+     * @param levelHeight The height of the whole level in pixels.
+     */
+    public void setStreamedStaticLayer(int levelWidth, int levelHeight) {
+        fullRepaintNeeded = true;
+        worldWidth = levelWidth;
+        worldHeight = levelHeight;
+        staticLayer = null;
+        bakedTileMap = null;
+        staticGrid = null;
+        tileMaps.clear();
+    }
+
+    /**
+     * Adds a chunk of tiles that was just streamed in.
+     *
+     * @param chunk The tiles of the chunk.
+     */
+    @Override
+    public void chunkLoaded(TileMap chunk) {
+        fullRepaintNeeded = true;
+        tileMaps.add(chunk);
+    }
+
+    /**
+     * Removes the tiles of an evicted chunk.
+     *
+     * @param chunk The tiles of the chunk.
+     */
+    @Override
+    public void chunkEvicted(TileMap chunk) {
+        fullRepaintNeeded = true;
+        tileMaps.remove(chunk);
+    }
+
+    /**
+     * Sets the camera defining the part of the level to draw.
+     *
+     * @param camera The camera, or null to draw the level from its top-left corner.
+     */
+    public void setCamera(Camera camera) {
+        fullRepaintNeeded = true;
+        this.camera = camera;
+    }
+
+    /**
+     * Switches to active rendering: frames are drawn into the BufferStrategy of a Canvas by update(),
+     * from the calling thread, instead of being requested from Swing with repaint().
+     * Must be called before the frame is made visible.
+     */
+    public void enableActiveRendering() {
+        if (canvas != null) {
+            return;
+        }
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true); // Repaints are driven by the game loop only
+        canvas.setFocusable(false); // Keep the keyboard focus on the frame and its key listener
+        setIgnoreRepaint(true);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+    }
+
+    /**
+     * Registers the measurements of the rendering in a metrics registry: the duration of paint() in passive
+     * mode, on the event thread, and the number of skipped frames. The duration of update() is measured by
+     * its caller.
+     *
+     * @param metrics The registry, measured only while it is enabled.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        paintHistogram = metrics.histogram("render.paint");
+        metrics.gauge("skippedFrames", () -> skippedFrames);
+    }
+
+    /**
+     * Sets the metrics overlay drawn over the scene in screen coordinates when it is visible.
+     *
+     * @param overlay The overlay, or null to draw none.
+     */
+    public void setOverlay(MetricsOverlay overlay) {
+        fullRepaintNeeded = true;
+        this.overlay = overlay;
+    }
+
+    public boolean isActiveRendering() {
+        return canvas != null;
     }
 
     public void setGameOver(boolean gameOver) {
+        fullRepaintNeeded = true;
         this.gameOver = gameOver;
     }
 
+    /**
+     * Sets the interpolation factor used to draw moving sprites between two physics ticks.
+     *
+     * @param interpolation The factor, from 0 (previous tick) to 1 (last tick).
+     */
+    public void setInterpolation(double interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Captures the state of the moving sprites of the render list and publishes it to the rendering.
+     * Called by the simulation thread after its ticks; the frames drawn until the next call use this state.
+     *
+     * @param tick     The number of ticks simulated so far.
+     * @param gameOver Indicates whether the game is over.
+     */
+    public void captureSnapshot(long tick, boolean gameOver) {
+        snapshot = WorldSnapshot.capture(tick, gameOver, movingSprites);
+    }
+
+    /**
+     * @return The last published world snapshot, or null if none was captured yet.
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Draws the game-over screen on top of the existing rendered objects.
      *
-     * @param g The Graphics context used for rendering.
+     * @param g          The Graphics context used for rendering.
+     * @param viewWidth  The width of the drawn area.
+     * @param viewHeight The height of the drawn area.
      */
-    private void drawGameOver(Graphics g) {
-        gameOverImage = new ImageIcon("./img/Game_Over.png").getImage();
+    private void drawGameOver(Graphics g, int viewWidth, int viewHeight) {
+        if (gameOverImage == null && !gameOverImageFailed) {
+            try {
+                gameOverImage = Assets.getImage("./img/Game_Over.png"); // Loaded once, on the first game-over frame
+            } catch (IOException e) {
+                gameOverImage = null;
+            }
+            if (gameOverImage == null) {
+                gameOverImageFailed = true; // Not tried again on every frame
+                System.out.println("Error: Game_Over.png could not be loaded.");
+            }
+        }
         if (gameOverImage != null) {
-            // Draw the game-over image at the center of the screen
-            int centerX = 352 - gameOverImage.getWidth(null) / 2;
-            int centerY = 288 - gameOverImage.getHeight(null) / 2;
+            // Draw the game-over image at the center of the visible part of the level
+            int centerX = Math.min(viewWidth, worldWidth) / 2 - gameOverImage.getWidth(null) / 2;
+            int centerY = Math.min(viewHeight, worldHeight) / 2 - gameOverImage.getHeight(null) / 2;
             g.drawImage(gameOverImage, centerX, centerY, null);
-        } else {
-            System.out.println("Error: Game_Over.png could not be loaded.");
         }
     }
 
     /**
      * Paints all the objects in the render list and optionally the game-over screen.
+     * In passive mode, the frame prepared by the last update() is painted, restricted to the clip requested
+     * with it.
      *
      * @param g The Graphics context used for drawing.
      */
     @Override
     public void paint(Graphics g) {
         super.paint(g);
-        // Draw all objects in the render list
-        for (Displayable renderObject : renderList) {
-            renderObject.draw(g);
+        if (canvas != null) {
+            return;
+        }
+        boolean measured = metrics != null && metrics.isEnabled();
+        FrameEvent event = FrameEvent.isRecorded() ? new FrameEvent() : null;
+        long start = measured ? System.nanoTime() : 0;
+        if (event != null) {
+            event.begin();
+        }
+        PreparedFrame prepared = preparedFrame;
+        if (prepared == null) {
+            renderScene(g, getWidth(), getHeight()); // Nothing prepared yet, draw the current state
+        } else {
+            drawScene(g, getWidth(), getHeight(), prepared.viewX, prepared.viewY, prepared.snapshot,
+                    prepared.alpha, prepared.timeMillis);
+        }
+        if (measured) {
+            paintHistogram.record(System.nanoTime() - start);
+        }
+        if (event != null) {
+            commitFrameEvent(event, prepared != null ? prepared.snapshot : snapshot);
+        }
+    }
+
+    private void commitFrameEvent(FrameEvent event, WorldSnapshot frame) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.tick = frame != null ? frame.getTick() : -1;
+            event.active = canvas != null;
+            event.commit();
         }
+    }
+
+    /**
+     * Positions the camera on the current state of the world, then draws it.
+     *
+     * @param g          The Graphics context used for drawing.
+     * @param viewWidth  The width of the drawn area.
+     * @param viewHeight The height of the drawn area.
+     */
+    private void renderScene(Graphics g, int viewWidth, int viewHeight) {
+        WorldSnapshot frame = snapshot; // Read once, the simulation may publish a new one meanwhile
+        double alpha = interpolation;
+        int viewX = 0;
+        int viewY = 0;
+        if (camera != null) {
+            camera.setViewSize(viewWidth, viewHeight);
+            camera.setWorldSize(worldWidth, worldHeight);
+            camera.update(frame, alpha);
+            viewX = camera.getX();
+            viewY = camera.getY();
+        }
+        drawScene(g, viewWidth, viewHeight, viewX, viewY, frame, alpha, System.currentTimeMillis());
+    }
+
+    /**
+     * Draws the static layer, the objects of the render list and the game-over screen.
+     * Only what intersects both the view and the clip of the Graphics context is drawn.
+     *
+     * @param g          The Graphics context used for drawing.
+     * @param viewWidth  The width of the drawn area.
+     * @param viewHeight The height of the drawn area.
+     * @param viewX      The x-coordinate of the view in the level.
+     * @param viewY      The y-coordinate of the view in the level.
+     * @param frame      The state of the moving sprites, or null to draw the sprites themselves.
+     * @param alpha      The interpolation factor between the previous and current physics ticks.
+     * @param timeMillis The time of the frame, selecting the frames of the animations.
+     */
+    private void drawScene(Graphics g, int viewWidth, int viewHeight, int viewX, int viewY, WorldSnapshot frame,
+                           double alpha, long timeMillis) {
+        // Part of the level to draw: the view, or only its part inside the clip
+        int regionX = viewX;
+        int regionY = viewY;
+        int regionWidth = viewWidth;
+        int regionHeight = viewHeight;
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            int left = Math.max(0, clip.x);
+            int top = Math.max(0, clip.y);
+            regionX = viewX + left;
+            regionY = viewY + top;
+            regionWidth = Math.max(0, Math.min(viewWidth, clip.x + clip.width) - left);
+            regionHeight = Math.max(0, Math.min(viewHeight, clip.y + clip.height) - top);
+        }
+        g.translate(-viewX, -viewY);
+
+        if (staticLayer != null) {
+            // Blit only the visible part of the pre-rendered level
+            g.drawImage(staticLayer, regionX, regionY, regionX + regionWidth, regionY + regionHeight,
+                    regionX, regionY, regionX + regionWidth, regionY + regionHeight, null);
+        } else if (staticGrid != null) {
+            visibleStaticSprites.clear();
+            staticGrid.query(regionX, regionY, regionWidth, regionHeight, visibleStaticSprites);
+            for (int i = 0; i < visibleStaticSprites.size(); i++) {
+                visibleStaticSprites.get(i).draw(g);
+            }
+        }
+        for (int i = 0; i < tileMaps.size(); i++) {
+            TileMap tileMap = tileMaps.get(i);
+            if (tileMap.overlaps(regionX, regionY, regionWidth, regionHeight)) {
+                tileMap.draw(g, regionX, regionY, regionWidth, regionHeight);
+            }
+        }
+        // Draw the objects of the render list that are close enough to the drawn region
+        double cullX = regionX - CULLING_MARGIN;
+        double cullY = regionY - CULLING_MARGIN;
+        double cullWidth = regionWidth + 2 * CULLING_MARGIN;
+        double cullHeight = regionHeight + 2 * CULLING_MARGIN;
+        for (Displayable renderObject : frame != null ? otherRenderList : renderList) { // Moving sprites drawn below
+            if (renderObject instanceof Sprite sprite && !sprite.intersects(cullX, cullY, cullWidth, cullHeight)) {
+                continue;
+            }
+            renderObject.draw(g, alpha);
+        }
+        if (frame != null) {
+            if (visibleMovingSprites.length < frame.size()) {
+                visibleMovingSprites = new int[frame.size()];
+            }
+            int visibleCount = frame.query(cullX, cullY, cullWidth, cullHeight, visibleMovingSprites);
+            for (int i = 0; i < visibleCount; i++) {
+                frame.draw(visibleMovingSprites[i], g, alpha, timeMillis);
+            }
+        }
+
+        g.translate(viewX, viewY);
         // Draw the game-over screen if the game is over
-        if (gameOver) {
-            drawGameOver(g);
-            return; // stop any further updates or actions
+        if (gameOver || (frame != null && frame.isGameOver())) {
+            drawGameOver(g, viewWidth, viewHeight);
+        }
+        if (overlay != null) {
+            overlay.draw(g);
         }
     }
 
     /**
-     * Updates the rendering by repainting the panel.
+     * Draws one frame into the back buffer of the canvas and shows it, unless nothing changed since the
+     * previous frame and it was drawn less than MAX_SKIPPED_MILLIS ago.
+     * The loops follow the BufferStrategy contract: a frame is redrawn if its buffer was lost or restored.
+     */
+    private void renderActiveFrame() {
+        if (!canvas.isDisplayable() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            return; // The canvas is not on screen yet
+        }
+        if (bufferStrategy == null) {
+            canvas.createBufferStrategy(2);
+            bufferStrategy = canvas.getBufferStrategy();
+        }
+        WorldSnapshot frame = snapshot; // Read once, the simulation may publish a new one meanwhile
+        double alpha = interpolation;
+        long timeMillis = System.currentTimeMillis();
+        int viewWidth = canvas.getWidth();
+        int viewHeight = canvas.getHeight();
+        int viewX = 0;
+        int viewY = 0;
+        if (camera != null) {
+            camera.setViewSize(viewWidth, viewHeight);
+            camera.setWorldSize(worldWidth, worldHeight);
+            camera.update(frame, alpha);
+            viewX = camera.getX();
+            viewY = camera.getY();
+        }
+        boolean changed = detectChanges(frame, alpha, timeMillis, viewX, viewY, viewWidth, viewHeight)
+                || dirtyRegion != null;
+        if (!changed && !bufferStrategy.contentsLost() && timeMillis - lastActiveFrameMillis < MAX_SKIPPED_MILLIS) {
+            dirtyRegion = null;
+            skippedFrames++; // The canvas still shows this frame
+            return;
+        }
+        dirtyRegion = new Rectangle(0, 0, viewWidth, viewHeight);
+        lastActiveFrameMillis = timeMillis;
+        FrameEvent event = FrameEvent.isRecorded() ? new FrameEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        do {
+            do {
+                Graphics g = bufferStrategy.getDrawGraphics();
+                try {
+                    g.setColor(getBackground());
+                    g.fillRect(0, 0, viewWidth, viewHeight);
+                    drawScene(g, viewWidth, viewHeight, viewX, viewY, frame, alpha, timeMillis);
+                } finally {
+                    g.dispose();
+                }
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // Flush the pipeline on systems that buffer graphics events
+        if (event != null) {
+            commitFrameEvent(event, frame);
+        }
+    }
+
+    /**
+     * Updates the rendering: draws a frame directly in active mode, or prepares a frame and repaints the parts
+     * of the panel that changed in passive mode.
      */
     @Override
     public void update() {
-        this.repaint();
+        if (canvas != null) {
+            renderActiveFrame();
+        } else {
+            preparePassiveFrame();
+        }
+    }
+
+    /**
+     * Prepares the frame painted by the next paint() and requests the repaint of what changed since the
+     * previous frame (see detectChanges). The whole panel is repainted when the view scrolled or the level
+     * changed, tiles included, and nothing at all when nothing changed.
+     */
+    private void preparePassiveFrame() {
+        WorldSnapshot frame = snapshot;
+        double alpha = interpolation;
+        long timeMillis = System.currentTimeMillis();
+        int viewWidth = getWidth();
+        int viewHeight = getHeight();
+        int viewX = 0;
+        int viewY = 0;
+        if (camera != null) {
+            camera.setViewSize(viewWidth, viewHeight);
+            camera.setWorldSize(worldWidth, worldHeight);
+            camera.update(frame, alpha);
+            viewX = camera.getX();
+            viewY = camera.getY();
+        }
+        boolean repaintAll = detectChanges(frame, alpha, timeMillis, viewX, viewY, viewWidth, viewHeight);
+        preparedFrame = new PreparedFrame(frame, alpha, viewX, viewY, timeMillis);
+
+        if (repaintAll) {
+            dirtyRegion = new Rectangle(0, 0, viewWidth, viewHeight);
+            repaint();
+        } else if (dirtyRegion != null) {
+            repaint(dirtyRegion.x, dirtyRegion.y, dirtyRegion.width, dirtyRegion.height);
+        } else {
+            skippedFrames++; // Nothing changed, the panel still shows this frame
+        }
+    }
+
+    /**
+     * Compares the frame about to be drawn with the previous one, and sets the dirty region to the old and new
+     * bounds of the sprites whose position, animation frame, direction or health changed.
+     *
+     * @return True if the whole view must be drawn again: the view scrolled or the level changed.
+     */
+    private boolean detectChanges(WorldSnapshot frame, double alpha, long timeMillis, int viewX, int viewY,
+                                  int viewWidth, int viewHeight) {
+        boolean gameOverShown = gameOver || (frame != null && frame.isGameOver());
+        boolean overlayShown = overlay != null && overlay.isVisible();
+        if (bakedTileMap != null && bakedTileMap.getModificationCount() != bakedModificationCount) {
+            setTileMap(bakedTileMap); // Bake the changed tiles again
+        }
+        long tileModifications = 0;
+        for (int i = 0; i < tileMaps.size(); i++) {
+            tileModifications += tileMaps.get(i).getModificationCount();
+        }
+        boolean repaintAll = fullRepaintNeeded || frame == null || frame.size() != paintedX.length
+                || viewX != paintedViewX || viewY != paintedViewY
+                || viewWidth != paintedViewWidth || viewHeight != paintedViewHeight || gameOverShown != paintedGameOver
+                || overlayShown != paintedOverlay || tileModifications != paintedTileModifications;
+        fullRepaintNeeded = false;
+        paintedTileModifications = tileModifications;
+        if (frame != null && frame.size() != paintedX.length) {
+            paintedX = new int[frame.size()];
+            paintedY = new int[frame.size()];
+            paintedFrame = new int[frame.size()];
+            paintedDirection = new int[frame.size()];
+            paintedHealth = new int[frame.size()];
+        }
+
+        dirtyRegion = null;
+        for (int i = 0; frame != null && i < frame.size(); i++) {
+            DynamicSprite sprite = frame.getSprite(i);
+            int x = (int) frame.interpolatedX(i, alpha);
+            int y = (int) frame.interpolatedY(i, alpha);
+            int animationFrame = sprite.getAnimationFrame(timeMillis);
+            int direction = frame.getDirection(i).ordinal();
+            int health = frame.getHealth(i);
+            if (!repaintAll && (x != paintedX[i] || y != paintedY[i] || animationFrame != paintedFrame[i]
+                    || direction != paintedDirection[i] || health != paintedHealth[i])) {
+                addDirtyBounds(paintedX[i] - viewX, paintedY[i] - viewY, sprite, viewWidth, viewHeight);
+                addDirtyBounds(x - viewX, y - viewY, sprite, viewWidth, viewHeight);
+            }
+            paintedX[i] = x;
+            paintedY[i] = y;
+            paintedFrame[i] = animationFrame;
+            paintedDirection[i] = direction;
+            paintedHealth[i] = health;
+        }
+        repaintAll = checkOtherRenderObjects(repaintAll, viewX, viewY, viewWidth, viewHeight);
+        paintedViewX = viewX;
+        paintedViewY = viewY;
+        paintedViewWidth = viewWidth;
+        paintedViewHeight = viewHeight;
+        paintedGameOver = gameOverShown;
+        paintedOverlay = overlayShown;
+        if (overlayShown && !repaintAll) {
+            // Its text changes independently of the sprites
+            Rectangle bounds = overlay.getBounds().intersection(new Rectangle(0, 0, viewWidth, viewHeight));
+            dirtyRegion = dirtyRegion == null ? bounds : dirtyRegion.union(bounds);
+        }
+        return repaintAll;
+    }
+
+    /**
+     * Adds to the dirty region the old and new bounds of the sprites of the render list that are not drawn
+     * from the snapshot and moved since the previous frame.
+     *
+     * @return True if the whole panel must be repainted: the render list holds an object without bounds, whose
+     * changes cannot be told.
+     */
+    private boolean checkOtherRenderObjects(boolean repaintAll, int viewX, int viewY, int viewWidth,
+                                            int viewHeight) {
+        int count = 0;
+        for (Displayable renderObject : otherRenderList) {
+            if (!(renderObject instanceof Sprite sprite)) {
+                return true;
+            }
+            if (count == paintedOtherX.length) {
+                paintedOtherX = Arrays.copyOf(paintedOtherX, count + 1);
+                paintedOtherY = Arrays.copyOf(paintedOtherY, count + 1);
+                repaintAll = true; // Not painted yet
+            }
+            if (!repaintAll && (sprite.getX() != paintedOtherX[count] || sprite.getY() != paintedOtherY[count])) {
+                addDirtyBounds((int) paintedOtherX[count] - viewX, (int) paintedOtherY[count] - viewY, sprite,
+                        viewWidth, viewHeight);
+                addDirtyBounds((int) sprite.getX() - viewX, (int) sprite.getY() - viewY, sprite, viewWidth, viewHeight);
+            }
+            paintedOtherX[count] = sprite.getX();
+            paintedOtherY[count] = sprite.getY();
+            count++;
+        }
+        return repaintAll;
+    }
+
+    /**
+     * Adds to the dirty region what a sprite draws at the given position of the panel, its health bar and
+     * animation included, as far as it is inside the panel.
+     */
+    private void addDirtyBounds(int x, int y, Sprite sprite, int viewWidth, int viewHeight) {
+        Rectangle bounds = new Rectangle(x - CULLING_MARGIN, y - CULLING_MARGIN,
+                (int) Math.ceil(sprite.width) + 2 * CULLING_MARGIN, (int) Math.ceil(sprite.height) + 2 * CULLING_MARGIN)
+                .intersection(new Rectangle(0, 0, viewWidth, viewHeight));
+        if (bounds.isEmpty()) {
+            return;
+        }
+        dirtyRegion = dirtyRegion == null ? bounds : dirtyRegion.union(bounds);
+    }
+
+    /**
+     * @return The part of the panel repainted by the last update(), the whole canvas in active mode, or null if
+     * the frame was skipped.
+     */
+    public Rectangle getDirtyRegion() {
+        return dirtyRegion;
+    }
+
+    /**
+     * @return The number of frames skipped because nothing changed.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * The state a frame is painted with, fixed when it is prepared so that every part of the panel repainted
+     * for it shows the same moment.
+     */
+    private static final class PreparedFrame {
+        private final WorldSnapshot snapshot;
+        private final double alpha;
+        private final int viewX;
+        private final int viewY;
+        private final long timeMillis;
+
+        PreparedFrame(WorldSnapshot snapshot, double alpha, int viewX, int viewY, long timeMillis) {
+            this.snapshot = snapshot;
+            this.alpha = alpha;
+            this.viewX = viewX;
+            this.viewY = viewY;
+            this.timeMillis = timeMillis;
+        }
     }
 }
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Replays a session recorded by an InputRecorder, without any display and as fast as possible: the level,
+ * NPCs and options of the recording are set up again, then the recorded commands are submitted on the tick
+ * they were applied on. The state checksums are compared with the recorded ones, and the first tick where
+ * they differ is reported, which makes a recording both a regression test of the simulation and a
+ * reproducible benchmark.
+ *
+ * Usage: java ReplayRunner recording
+ * Exits with status 1 if the replay diverges from the recording.
+ */
+public class ReplayRunner {
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true"); // Never open a display, even if one is available
+        if (args.length != 1) {
+            System.out.println("Usage: java ReplayRunner recording");
+            System.exit(2);
+        }
+
+        try (InputRecording recording = new InputRecording(args[0])) {
+            HeadlessRunner runner = new HeadlessRunner(recording.getLevelPath(), recording.getNpcCount(),
+                    new Random(recording.getSeed()));
+            if (recording.isChase()) {
+                runner.enableChase();
+            }
+            runner.setImmortal(recording.isImmortal());
+            GameEngine gameEngine = runner.getGameEngine();
+
+            long checksums = 0;
+            long start = System.nanoTime();
+            while (recording.next()) {
+                byte type = recording.getType();
+                if (type == InputRecording.PRESS || type == InputRecording.RELEASE) {
+                    // Simulate up to the tick the command was applied on
+                    while (gameEngine.getTickCount() < recording.getTick()) {
+                        runner.tick();
+                    }
+                    gameEngine.submit(new InputCommand(type == InputRecording.PRESS, recording.getKeyCode()));
+                    continue;
+                }
+                while (gameEngine.getTickCount() < recording.getTick()) {
+                    runner.tick();
+                }
+                long checksum = gameEngine.getStateChecksum();
+                if (checksum != recording.getChecksum()) {
+                    System.out.printf("Replay diverged: checksum %016x instead of %016x after %,d ticks%n",
+                            checksum, recording.getChecksum(), recording.getTick());
+                    System.exit(1);
+                }
+                checksums++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long ticks = gameEngine.getTickCount();
+            System.out.printf("Replayed %,d ticks in %.2f s: %,.0f ticks/s, %d checksums match%n",
+                    ticks, seconds, ticks / seconds, checksums);
+        }
+    }
+}
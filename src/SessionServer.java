@@ -0,0 +1,362 @@
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The SessionServer class hosts many independent game sessions in one JVM, without any display. The sessions
+ * are sharded over a fixed number of simulation threads: each session belongs to one shard for its whole
+ * life, so its world is only ever touched by one thread and needs no locking. On each server tick, a shard
+ * ticks all its running sessions back to back in one batch, then sleeps until the next tick, so the cost of
+ * waking a thread is paid once per batch instead of once per session.
+ * Sessions without input for a while are parked and cost nothing until their next input; a shard without
+ * running sessions parks its thread. Levels are loaded once and shared by all the sessions playing them.
+ * The duration of every session tick is measured, per session and in one histogram per shard.
+ *
+ * Usage: java SessionServer [options]   (load test: random players drive part of the sessions)
+ *   --sessions n      number of sessions (default 1000)
+ *   --threads n       number of simulation threads (default: number of processors)
+ *   --level path,...  level files, assigned to the sessions in turn (default ./data/level1.txt)
+ *   --npcs n          NPCs per session (default 2)
+ *   --tick-rate n     ticks per second of each session (default 20)
+ *   --idle-ticks n    ticks without input before a session is parked (default 100)
+ *   --players f       fraction of the sessions receiving input, the others end up parked (default 0.5)
+ *   --seconds n       duration of the load test (default 10)
+ *   --seed n          seed of the NPCs and of the random input (default 42)
+ *   --chase           the NPCs chase the hero instead of wandering
+ *   --immortal        heal the heroes instead of ending the sessions at game over
+ */
+public class SessionServer {
+    private static final int[] RANDOM_KEYS = {KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT,
+            KeyEvent.VK_SHIFT, KeyEvent.VK_SPACE, KeyEvent.VK_H};
+
+    private final Shard[] shards; // Simulation threads, each owning a part of the sessions
+    private final long periodNanos; // Duration of a server tick
+    private final int maxIdleTicks; // Ticks without input before a session is parked
+    private final LevelCache levels = new LevelCache(); // Levels shared by the sessions
+    private final ConcurrentHashMap<Integer, GameSession> sessions = new ConcurrentHashMap<>(); // Open sessions by id
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile boolean running = false;
+
+    /**
+     * Creates a server and its shards. The threads start with start().
+     *
+     * @param threadCount  The number of simulation threads.
+     * @param tickRate     The number of ticks per second of each session.
+     * @param maxIdleTicks The number of ticks without input after which a session is parked.
+     * @param metrics      The registry of the session tick histograms and of the gauges, can be null.
+     */
+    public SessionServer(int threadCount, int tickRate, int maxIdleTicks, Metrics metrics) {
+        this.periodNanos = 1_000_000_000L / tickRate;
+        this.maxIdleTicks = maxIdleTicks;
+        shards = new Shard[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            shards[i] = new Shard(i, metrics != null ? metrics.histogram("session.tick." + i)
+                    : new LatencyHistogram("session.tick." + i));
+        }
+        if (metrics != null) {
+            metrics.gauge("sessions.open", sessions::size);
+            metrics.gauge("sessions.running", this::getRunningCount);
+            metrics.gauge("sessions.overruns", this::getOverrunCount);
+        }
+    }
+
+    /**
+     * Starts the simulation threads.
+     */
+    public void start() {
+        running = true;
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Stops the simulation threads and waits for them to finish their batch.
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join();
+        }
+    }
+
+    /**
+     * Opens a session, ticked from the next server tick on by the shard with the fewest sessions.
+     *
+     * @param levelPath The level file, loaded once for all the sessions playing it.
+     * @param npcCount  The number of NPCs.
+     * @param seed      The seed of the positions and directions of the NPCs.
+     * @param chase     Indicates whether the NPCs chase the hero instead of wandering.
+     * @param immortal  Indicates whether the hero is healed instead of dying.
+     * @return The new session.
+     * @throws IOException If the level cannot be loaded.
+     */
+    public GameSession open(String levelPath, int npcCount, long seed, boolean chase, boolean immortal)
+            throws IOException {
+        Shard shard = shards[0];
+        for (Shard candidate : shards) {
+            if (candidate.sessionCount.get() < shard.sessionCount.get()) {
+                shard = candidate;
+            }
+        }
+        GameSession session = new GameSession(nextId.getAndIncrement(), shard, levels.get(levelPath), npcCount,
+                seed, chase, immortal);
+        sessions.put(session.getId(), session);
+        shard.sessionCount.incrementAndGet();
+        shard.wake(session);
+        return session;
+    }
+
+    /**
+     * Closes a session: its shard drops it before its next tick.
+     */
+    public void close(GameSession session) {
+        if (sessions.remove(session.getId()) != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * @return The open sessions, in no particular order. The sessions that reached game over are closed once
+     * their shard drops them.
+     */
+    public List<GameSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * @return The number of sessions ticked on each server tick, the others being parked or over.
+     */
+    public int getRunningCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.runningCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of batches that lasted longer than a server tick, since the start.
+     */
+    public long getOverrunCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.overruns;
+        }
+        return count;
+    }
+
+    /**
+     * @return The durations of all the session ticks so far, merged over the shards. Slightly stale counts
+     * are possible while the shards run.
+     */
+    public LatencyHistogram getSessionTickHistogram() {
+        LatencyHistogram merged = new LatencyHistogram("session.tick");
+        for (Shard shard : shards) {
+            merged.add(shard.sessionTicks);
+        }
+        return merged;
+    }
+
+    /**
+     * @return The number of distinct levels loaded for the sessions.
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * A simulation thread and the sessions it owns.
+     */
+    final class Shard implements Runnable {
+        private final Thread thread;
+        private final ArrayList<GameSession> running = new ArrayList<>(); // Sessions ticked on each batch
+        private final ConcurrentLinkedQueue<GameSession> arrivals = new ConcurrentLinkedQueue<>(); // New or woken up
+        private final AtomicInteger sessionCount = new AtomicInteger(); // Sessions assigned, parked ones included
+        private final LatencyHistogram sessionTicks; // Duration of each session tick, written by the thread only
+        private volatile int runningCount = 0; // Size of running, read by the reports
+        private volatile long overruns = 0; // Batches longer than a server tick
+
+        Shard(int index, LatencyHistogram sessionTicks) {
+            this.sessionTicks = sessionTicks;
+            this.thread = new Thread(this, "session-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Hands a new or woken up session over to the shard, and wakes the thread up if it was parked. Can be
+         * called from any thread.
+         */
+        void wake(GameSession session) {
+            arrivals.offer(session);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime();
+            while (SessionServer.this.running) {
+                GameSession arrival;
+                while ((arrival = arrivals.poll()) != null) {
+                    running.add(arrival);
+                }
+                if (running.isEmpty()) {
+                    runningCount = 0;
+                    LockSupport.park(this); // Until a session arrives
+                    nextTick = System.nanoTime();
+                    continue;
+                }
+
+                tickBatch();
+
+                nextTick += periodNanos;
+                long now = System.nanoTime();
+                if (now > nextTick) {
+                    overruns++; // The sessions run slower than real time, they do not catch up
+                    nextTick = now;
+                }
+                long remaining;
+                while (SessionServer.this.running && (remaining = nextTick - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, remaining); // Wake-ups by arrivals wait for the next tick
+                }
+            }
+        }
+
+        /**
+         * Ticks every running session once, dropping the closed and finished ones and parking the idle ones.
+         * A finished session is closed, so that the server forgets it like a closed one. The order of the sessions changes as they are removed, which does not matter since they are
+         * independent.
+         */
+        private void tickBatch() {
+            for (int i = 0; i < running.size(); ) {
+                GameSession session = running.get(i);
+                if (session.isClosed() || session.isGameOver()) {
+                    removeRunning(i);
+                    sessionCount.decrementAndGet();
+                    close(session); // Removes it from the open sessions, unless it was closed already
+                    continue;
+                }
+                sessionTicks.record(session.tick());
+                if (session.parkIfIdle(maxIdleTicks)) {
+                    removeRunning(i);
+                    continue;
+                }
+                i++;
+            }
+            runningCount = running.size();
+        }
+
+        private void removeRunning(int index) {
+            int last = running.size() - 1;
+            running.set(index, running.get(last));
+            running.remove(last);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true"); // Never open a display, even if one is available
+
+        int sessionCount = 1000;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        String[] levelPaths = {"./data/level1.txt"};
+        int npcCount = 2;
+        int tickRate = 20;
+        int idleTicks = 100;
+        double playerFraction = 0.5;
+        int seconds = 10;
+        long seed = 42;
+        boolean chase = false;
+        boolean immortal = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions" -> sessionCount = Integer.parseInt(args[++i]);
+                case "--threads" -> threadCount = Integer.parseInt(args[++i]);
+                case "--level" -> levelPaths = args[++i].split(",");
+                case "--npcs" -> npcCount = Integer.parseInt(args[++i]);
+                case "--tick-rate" -> tickRate = Integer.parseInt(args[++i]);
+                case "--idle-ticks" -> idleTicks = Integer.parseInt(args[++i]);
+                case "--players" -> playerFraction = Double.parseDouble(args[++i]);
+                case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--chase" -> chase = true;
+                case "--immortal" -> immortal = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        SessionServer server = new SessionServer(threadCount, tickRate, idleTicks, null);
+        long start = System.nanoTime();
+        GameSession[] players = new GameSession[(int) Math.round(sessionCount * playerFraction)];
+        for (int i = 0; i < sessionCount; i++) {
+            GameSession session = server.open(levelPaths[i % levelPaths.length], npcCount, seed + i, chase, immortal);
+            if (i < players.length) {
+                players[i] = session;
+            }
+        }
+        System.gc();
+        long heapPerSession = (runtime.totalMemory() - runtime.freeMemory() - heapBefore) / sessionCount;
+        System.out.printf("%,d sessions opened in %.2f s on %d levels, %,d bytes of heap per session, %d threads%n",
+                sessionCount, (System.nanoTime() - start) / 1e9, server.getLevelCount(), heapPerSession, threadCount);
+
+        server.start();
+        Random random = new Random(seed);
+        long inputPeriodNanos = 1_000_000_000L / tickRate;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long nextReport = System.nanoTime() + 1_000_000_000L;
+        LatencyHistogram reported = server.getSessionTickHistogram();
+        while (System.nanoTime() < end) {
+            // Each player presses or releases a random key on one tick out of ten, like the HeadlessRunner
+            for (GameSession player : players) {
+                if (random.nextInt(10) == 0) {
+                    player.submit(new InputCommand(random.nextBoolean(), RANDOM_KEYS[random.nextInt(RANDOM_KEYS.length)]));
+                }
+            }
+            LockSupport.parkNanos(inputPeriodNanos);
+            if (System.nanoTime() >= nextReport) {
+                LatencyHistogram current = server.getSessionTickHistogram();
+                LatencyHistogram interval = current.since(reported);
+                reported = current;
+                System.out.printf("%,d running, %,d parked: %,d session ticks/s, tick p50 %.1f us, p99 %.1f us, max %.1f us, %d overruns%n",
+                        server.getRunningCount(), countParked(server), interval.getCount(),
+                        interval.getPercentile(50) / 1e3, interval.getPercentile(99) / 1e3,
+                        interval.getMax() / 1e3, server.getOverrunCount());
+                nextReport += 1_000_000_000L;
+            }
+        }
+        server.shutdown();
+
+        LatencyHistogram total = server.getSessionTickHistogram();
+        System.out.printf("%,d session ticks, mean %.1f us, p99 %.1f us, max %.1f us%n", total.getCount(),
+                total.getMean() / 1e3, total.getPercentile(99) / 1e3, total.getMax() / 1e3);
+        List<GameSession> costliest = server.getSessions();
+        costliest.sort((a, b) -> Long.compare(b.getTotalTickNanos(), a.getTotalTickNanos()));
+        System.out.println("Costliest sessions:");
+        for (GameSession session : costliest.subList(0, Math.min(5, costliest.size()))) {
+            System.out.printf("  #%d: %,d ticks, %.1f us/tick, max %.1f us, %d moving sprites%s%n", session.getId(),
+                    session.getTickCount(), session.getMeanTickNanos() / 1e3, session.getMaxTickNanos() / 1e3,
+                    session.getMovingSpriteCount(), session.isGameOver() ? ", game over" : "");
+        }
+    }
+
+    private static int countParked(SessionServer server) {
+        int count = 0;
+        for (GameSession session : server.getSessions()) {
+            if (session.isParked()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
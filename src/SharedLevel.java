@@ -0,0 +1,56 @@
+import java.io.IOException;
+
+/**
+ * The SharedLevel class holds the data of a level that never changes during a game: its tiles and the
+ * walkable flags computed from them. Any number of sessions, on any number of threads, can play on one
+ * SharedLevel, since they only read it; each session keeps its own moving sprites and search state.
+ * The tiles must not be modified once the level is shared.
+ */
+public final class SharedLevel {
+    private final String pathName; // Level file the data was loaded from
+    private final TileMap tileMap; // Tiles of the level, only read
+    private NavigationGrid navigationGrid; // Walkable tiles for the chasing NPCs, built on the first request
+
+    /**
+     * @param pathName The level file the tiles were loaded from.
+     * @param tileMap  The tiles of the level, not modified from now on.
+     */
+    public SharedLevel(String pathName, TileMap tileMap) {
+        this.pathName = pathName;
+        this.tileMap = tileMap;
+    }
+
+    /**
+     * Loads a level file, text or binary.
+     *
+     * @param pathName The level file.
+     * @return The data of the level.
+     * @throws IOException If the level cannot be loaded.
+     */
+    public static SharedLevel load(String pathName) throws IOException {
+        TileMap tileMap = new Playground(pathName).getTileMap();
+        if (tileMap == null) {
+            throw new IOException("The level " + pathName + " could not be loaded");
+        }
+        return new SharedLevel(pathName, tileMap);
+    }
+
+    public String getPathName() {
+        return pathName;
+    }
+
+    public TileMap getTileMap() {
+        return tileMap;
+    }
+
+    /**
+     * @return The walkable tiles of the level, built on the first call. Never rebuilt afterwards, since the
+     * tiles do not change.
+     */
+    public synchronized NavigationGrid getNavigationGrid() {
+        if (navigationGrid == null) {
+            navigationGrid = new NavigationGrid(tileMap);
+        }
+        return navigationGrid;
+    }
+}
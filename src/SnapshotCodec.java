@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The SnapshotCodec class captures the state of moving sprites into flat arrays of integers and encodes
+ * them as a delta against an earlier state known by both sides, usually the last state the client
+ * acknowledged. Each sprite takes FIELDS values: position, direction, health, speed and heading, positions
+ * and speeds being fixed-point numbers with 16 bits after the point. A sprite is encoded as a byte telling
+ * which of its fields changed, followed by the differences of the changed fields as signed variable-length
+ * integers: a sprite that did not move costs one byte, a walking one usually 4 to 7.
+ */
+public final class SnapshotCodec {
+    static final int FIELDS = 7; // Values per sprite
+    static final int X = 0;
+    static final int Y = 1;
+    static final int DIRECTION = 2; // Ordinal of the Direction
+    static final int HEALTH = 3; // Health of a hero, -1 for the other sprites
+    static final int SPEED = 4;
+    static final int HEADING_X = 5;
+    static final int HEADING_Y = 6;
+    private static final double FIXED_ONE = 1 << 16; // Fixed-point value of 1
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Copies the state of the given sprites.
+     *
+     * @param sprites The moving sprites, in the order they are sent in.
+     * @param reuse   An array to write into if it is large enough, can be null.
+     * @return The state, FIELDS values per sprite.
+     */
+    static long[] capture(List<DynamicSprite> sprites, long[] reuse) {
+        int length = sprites.size() * FIELDS;
+        long[] state = reuse != null && reuse.length == length ? reuse : new long[length];
+        for (int i = 0; i < sprites.size(); i++) {
+            DynamicSprite sprite = sprites.get(i);
+            int offset = i * FIELDS;
+            state[offset + X] = toFixed(sprite.getX());
+            state[offset + Y] = toFixed(sprite.getY());
+            state[offset + DIRECTION] = sprite.getDirection().ordinal();
+            state[offset + HEALTH] = sprite instanceof HeroWithHealth hero ? hero.getHealth() : -1;
+            state[offset + SPEED] = toFixed(sprite.getSpeed());
+            state[offset + HEADING_X] = toFixed(sprite.getHeadingX());
+            state[offset + HEADING_Y] = toFixed(sprite.getHeadingY());
+        }
+        return state;
+    }
+
+    /**
+     * Writes a state as a delta against a baseline.
+     *
+     * @param buffer   The buffer to write into.
+     * @param state    The state to write.
+     * @param baseline A state of the same sprites known by the reader, or null to write the whole state.
+     */
+    static void encode(ByteBuffer buffer, long[] state, long[] baseline) {
+        for (int offset = 0; offset < state.length; offset += FIELDS) {
+            int changed = 0;
+            for (int field = 0; field < FIELDS; field++) {
+                if (state[offset + field] != base(baseline, offset + field)) {
+                    changed |= 1 << field;
+                }
+            }
+            buffer.put((byte) changed);
+            for (int field = 0; field < FIELDS; field++) {
+                if ((changed & 1 << field) != 0) {
+                    NetProtocol.writeSignedVarLong(buffer, state[offset + field] - base(baseline, offset + field));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a state written by encode.
+     *
+     * @param buffer      The buffer to read from.
+     * @param spriteCount The number of sprites of the state.
+     * @param baseline    The baseline the state was written against, or null for a whole state.
+     * @param reuse       An array to read into if it has the right size, can be null.
+     * @return The state.
+     * @throws IOException If the data is truncated or corrupted.
+     */
+    static long[] decode(ByteBuffer buffer, int spriteCount, long[] baseline, long[] reuse) throws IOException {
+        int length = spriteCount * FIELDS;
+        if (baseline != null && baseline.length != length) {
+            throw new IOException("Corrupted snapshot: " + spriteCount + " sprites, baseline has "
+                    + baseline.length / FIELDS);
+        }
+        long[] state = reuse != null && reuse.length == length ? reuse : new long[length];
+        for (int offset = 0; offset < length; offset += FIELDS) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated snapshot");
+            }
+            int changed = buffer.get();
+            for (int field = 0; field < FIELDS; field++) {
+                long value = base(baseline, offset + field);
+                if ((changed & 1 << field) != 0) {
+                    value += NetProtocol.readSignedVarLong(buffer);
+                }
+                state[offset + field] = value;
+            }
+            if (state[offset + DIRECTION] < 0 || state[offset + DIRECTION] >= DIRECTIONS.length) {
+                throw new IOException("Corrupted snapshot: unknown direction " + state[offset + DIRECTION]);
+            }
+        }
+        return state;
+    }
+
+    private static long base(long[] baseline, int index) {
+        return baseline == null ? 0 : baseline[index];
+    }
+
+    /**
+     * Sets the position and motion of a sprite, and the health of a hero, to those of a state.
+     *
+     * @param state  The state.
+     * @param index  The index of the sprite in the state.
+     * @param sprite The sprite to update.
+     */
+    static void apply(long[] state, int index, DynamicSprite sprite) {
+        int offset = index * FIELDS;
+        sprite.restoreMotion(toDouble(state[offset + X]), toDouble(state[offset + Y]),
+                DIRECTIONS[(int) state[offset + DIRECTION]], toDouble(state[offset + HEADING_X]),
+                toDouble(state[offset + HEADING_Y]), toDouble(state[offset + SPEED]));
+        if (sprite instanceof HeroWithHealth hero && state[offset + HEALTH] >= 0) {
+            hero.setHealth((int) state[offset + HEALTH]);
+        }
+    }
+
+    /**
+     * @return The number of sprites of a state.
+     */
+    static int spriteCount(long[] state) {
+        return state.length / FIELDS;
+    }
+
+    /**
+     * @return The x-coordinate of a sprite of a state.
+     */
+    static double getX(long[] state, int index) {
+        return toDouble(state[index * FIELDS + X]);
+    }
+
+    /**
+     * @return The y-coordinate of a sprite of a state.
+     */
+    static double getY(long[] state, int index) {
+        return toDouble(state[index * FIELDS + Y]);
+    }
+
+    static long toFixed(double value) {
+        return Math.round(value * FIXED_ONE);
+    }
+
+    static double toDouble(long fixed) {
+        return fixed / FIXED_ONE;
+    }
+}
@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.geom.Rectangle2D;
 
 public class SolidSprite extends Sprite {
+    private final Rectangle2D.Double hitBox = new Rectangle2D.Double(); // Reused hitbox, refreshed on each request
 
     /**
      * Constructs a SolidSprite, Extends Sprite, with the specified position, image, and dimensions.
@@ -18,11 +19,14 @@ public class SolidSprite extends Sprite {
 
     /**
      * Retrieves the hitbox of the sprite, defined as a rectangle matching its position and size.
+     * The same mutable rectangle is returned on every call and refreshed from the current position,
+     * so callers must not keep it nor modify it.
      *
      * @return A Rectangle2D representing the sprite's hitbox.
      */
     public Rectangle2D getHitBox() {
-        return new Rectangle2D.Double(x, y, width, height);
+        hitBox.setRect(getX(), getY(), width, height);
+        return hitBox;
     }
 
     /**
@@ -32,6 +36,6 @@ public class SolidSprite extends Sprite {
      * @return True if the hitboxes intersect, false otherwise.
      */
     public boolean intersect(Rectangle2D.Double hitBox) {
-        return this.getHitBox().intersects(hitBox);
+        return intersects(hitBox.x, hitBox.y, hitBox.width, hitBox.height); // Hitbox and bounds are the same
     }
 }
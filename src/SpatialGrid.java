@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The SpatialGrid class is a uniform grid used as a broadphase for collision and visibility queries.
+ * Each cell covers cellSize x cellSize pixels and stores the sprites whose bounds overlap it, so a query
+ * only has to look at the few cells covered by the queried rectangle instead of every sprite of the level.
+ * The grid grows automatically when a sprite is inserted outside of its current bounds.
+ *
+ * @param <T> The type of sprite stored in the grid.
+ */
+public class SpatialGrid<T extends Sprite> implements CollisionSpace {
+    private final double cellSize; // Size of a cell in pixels (usually the tile size)
+    private int columns; // Number of columns of the grid
+    private int rows; // Number of rows of the grid
+    private ArrayList<T>[] cells; // Sprites overlapping each cell, indexed by row * columns + column
+    private int size = 0; // Number of sprites stored in the grid
+
+    /**
+     * Constructs an empty SpatialGrid.
+     *
+     * @param cellSize The size of a cell in pixels.
+     */
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = 1;
+        this.rows = 1;
+        this.cells = newCells(1);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic arrays cannot be created directly
+    private ArrayList<T>[] newCells(int count) {
+        return (ArrayList<T>[]) new ArrayList[count];
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every sprite from the grid.
+     */
+    public void clear() {
+        for (ArrayList<T> cell : cells) {
+            if (cell != null) {
+                cell.clear();
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts a sprite in every cell overlapped by its bounds.
+     *
+     * @param sprite The sprite to insert.
+     */
+    public void insert(T sprite) {
+        ensureCapacity(sprite.getX() + sprite.width, sprite.getY() + sprite.height);
+        int minColumn = column(sprite.getX());
+        int maxColumn = lastColumn(sprite.getX(), sprite.width);
+        int minRow = row(sprite.getY());
+        int maxRow = lastRow(sprite.getY(), sprite.height);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int index = row * columns + column;
+                if (cells[index] == null) {
+                    cells[index] = new ArrayList<>(4);
+                }
+                cells[index].add(sprite);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Removes a sprite from the grid. The sprite must still be at the position it was inserted at.
+     *
+     * @param sprite The sprite to remove.
+     */
+    public void remove(T sprite) {
+        remove(sprite, sprite.getX(), sprite.getY());
+    }
+
+    /**
+     * Removes a sprite that was inserted at the given position.
+     *
+     * @param sprite The sprite to remove.
+     * @param oldX   The x-coordinate the sprite had when it was inserted.
+     * @param oldY   The y-coordinate the sprite had when it was inserted.
+     */
+    public void remove(T sprite, double oldX, double oldY) {
+        int minColumn = column(oldX);
+        int maxColumn = lastColumn(oldX, sprite.width);
+        int minRow = row(oldY);
+        int maxRow = lastRow(oldY, sprite.height);
+        boolean found = false;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                ArrayList<T> cell = cells[row * columns + column];
+                if (cell != null && cell.remove(sprite)) {
+                    found = true;
+                }
+            }
+        }
+        if (found) {
+            size--;
+        }
+    }
+
+    /**
+     * Updates the cells of a sprite that moved since it was inserted.
+     *
+     * @param sprite The sprite that moved.
+     * @param oldX   The x-coordinate of the sprite before it moved.
+     * @param oldY   The y-coordinate of the sprite before it moved.
+     */
+    public void move(T sprite, double oldX, double oldY) {
+        if (column(oldX) == column(sprite.getX()) && row(oldY) == row(sprite.getY())
+                && lastColumn(oldX, sprite.width) == lastColumn(sprite.getX(), sprite.width)
+                && lastRow(oldY, sprite.height) == lastRow(sprite.getY(), sprite.height)) {
+            return; // Still in the same cells, nothing to do
+        }
+        remove(sprite, oldX, oldY);
+        insert(sprite);
+    }
+
+    /**
+     * Collects the sprites intersecting the given rectangle. Each sprite is reported once, even when it
+     * spans several cells: it is only kept from the cell containing the top-left corner of its overlap
+     * with the rectangle.
+     *
+     * @param x      The x-coordinate of the queried rectangle.
+     * @param y      The y-coordinate of the queried rectangle.
+     * @param width  The width of the queried rectangle.
+     * @param height The height of the queried rectangle.
+     * @param result The list receiving the sprites (it is not cleared).
+     */
+    public void query(double x, double y, double width, double height, ArrayList<T> result) {
+        int minColumn = column(x);
+        int maxColumn = lastColumn(x, width);
+        int minRow = row(y);
+        int maxRow = lastRow(y, height);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                ArrayList<T> cell = cells[row * columns + column];
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    T s = cell.get(i);
+                    if (s.intersects(x, y, width, height)
+                            && column(Math.max(x, s.getX())) == column && row(Math.max(y, s.getY())) == row) {
+                        result.add(s);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a sprite of the grid intersects the given rectangle.
+     *
+     * @param x      The x-coordinate of the queried rectangle.
+     * @param y      The y-coordinate of the queried rectangle.
+     * @param width  The width of the queried rectangle.
+     * @param height The height of the queried rectangle.
+     * @param ignore A sprite to ignore (usually the sprite being moved), can be null.
+     * @return True if at least one sprite intersects the rectangle, false otherwise.
+     */
+    @Override
+    public boolean anyIntersects(double x, double y, double width, double height, Sprite ignore) {
+        int minColumn = column(x);
+        int maxColumn = lastColumn(x, width);
+        int minRow = row(y);
+        int maxRow = lastRow(y, height);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                ArrayList<T> cell = cells[row * columns + column];
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    T s = cell.get(i);
+                    if (s != ignore && s.intersects(x, y, width, height)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the sprites of the grid intersecting the given rectangle. A sprite overlapping several of the
+     * queried cells is only added from the first one.
+     */
+    @Override
+    public void collectObstacles(double x, double y, double width, double height, Sprite ignore,
+                                 SweptCollision collision) {
+        int minColumn = column(x);
+        int maxColumn = lastColumn(x, width);
+        int minRow = row(y);
+        int maxRow = lastRow(y, height);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                ArrayList<T> cell = cells[row * columns + column];
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    T s = cell.get(i);
+                    if (s != ignore && s.intersects(x, y, width, height)
+                            && column(Math.max(x, s.getX())) == column && row(Math.max(y, s.getY())) == row) {
+                        collision.addObstacle(s.getX(), s.getY(), s.width, s.height);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts an x-coordinate to a column, clamped to the grid. Sprites outside of the grid end up
+     * in the border cells, which keeps queries correct without growing the grid towards negative values.
+     */
+    private int column(double x) {
+        int column = (int) Math.floor(x / cellSize);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    /**
+     * @return The column of the right-most pixel of a span starting at x. Spans are half-open, so a sprite
+     * whose right edge lies exactly on a cell border does not belong to the next cell.
+     */
+    private int lastColumn(double x, double width) {
+        return Math.max(column(x), column(Math.nextDown(x + width)));
+    }
+
+    private int lastRow(double y, double height) {
+        return Math.max(row(y), row(Math.nextDown(y + height)));
+    }
+
+    private int row(double y) {
+        int row = (int) Math.floor(y / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    /**
+     * Grows the grid so that it covers the point (x, y). The grid at least doubles each time it grows
+     * so that inserting a whole level one sprite at a time stays linear.
+     */
+    private void ensureCapacity(double x, double y) {
+        int neededColumns = (int) Math.floor(x / cellSize) + 1;
+        int neededRows = (int) Math.floor(y / cellSize) + 1;
+        if (neededColumns <= columns && neededRows <= rows) {
+            return;
+        }
+        // Sprites outside of the old grid were clamped into its border cells, so everything is re-inserted
+        Set<T> sprites = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ArrayList<T> cell : cells) {
+            if (cell != null) {
+                sprites.addAll(cell);
+            }
+        }
+        if (neededColumns > columns) {
+            columns = Math.max(neededColumns, columns * 2);
+        }
+        if (neededRows > rows) {
+            rows = Math.max(neededRows, rows * 2);
+        }
+        cells = newCells(columns * rows);
+        size = 0;
+        for (T sprite : sprites) {
+            insert(sprite);
+        }
+    }
+}
@@ -1,8 +1,8 @@
 import java.awt.*;
 
 public class Sprite implements Displayable {
-    protected double x; // X-coordinate of the sprite
-    protected double y; // Y-coordinate of the sprite
+    private final double x; // X-coordinate of the sprite, see getX for the sprites that move
+    private final double y; // Y-coordinate of the sprite, see getY for the sprites that move
     protected final Image image; // Image representing the sprite
     protected final double width; // Width of the sprite
     protected final double height; // Height of the sprite
@@ -24,6 +24,37 @@ public class Sprite implements Displayable {
         this.height = height;
     }
 
+    /**
+     * @return The x-coordinate of the sprite.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return The y-coordinate of the sprite.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Checks whether the bounds of this sprite intersect with the given rectangle, without allocating.
+     *
+     * @param x      The x-coordinate of the rectangle.
+     * @param y      The y-coordinate of the rectangle.
+     * @param width  The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @return True if the bounds intersect the rectangle, false otherwise.
+     */
+    public boolean intersects(double x, double y, double width, double height) {
+        double spriteX = getX();
+        double spriteY = getY();
+        return width > 0 && height > 0 && this.width > 0 && this.height > 0
+                && x < spriteX + this.width && x + width > spriteX
+                && y < spriteY + this.height && y + height > spriteY;
+    }
+
     /**
      * Draws the sprite's image at its current position.
      *
@@ -31,6 +62,6 @@ public class Sprite implements Displayable {
      */
     @Override
     public void draw(Graphics g) {
-        g.drawImage(image, (int) x, (int) y, null);
+        g.drawImage(image, (int) getX(), (int) getY(), null);
     }
 }
@@ -0,0 +1,90 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+
+/**
+ * The SpriteSheet class slices a sprite sheet into its frames once, when it is loaded. Each frame is copied
+ * into its own image compatible with the screen, so drawing a frame is a single unscaled blit instead of a
+ * scaled copy of a part of the whole sheet. Frames are indexed by line (for instance the frame line of a
+ * Direction) and by column (the animation frame).
+ */
+public class SpriteSheet {
+    private static final IdentityHashMap<Image, SpriteSheet> sheets = new IdentityHashMap<>(); // Sliced sheets
+
+    private final Image[][] frames; // Frames indexed by line, then column
+    private final int frameWidth;
+    private final int frameHeight;
+
+    /**
+     * Slices a sprite sheet into frames of the given size. Partial frames on the right and bottom edges are dropped.
+     *
+     * @param sheet       The sprite sheet.
+     * @param frameWidth  The width of a frame in pixels.
+     * @param frameHeight The height of a frame in pixels.
+     */
+    public SpriteSheet(Image sheet, int frameWidth, int frameHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        int columns = Math.max(1, sheet.getWidth(null) / frameWidth);
+        int lines = Math.max(1, sheet.getHeight(null) / frameHeight);
+        frames = new Image[lines][columns];
+        for (int line = 0; line < lines; line++) {
+            for (int column = 0; column < columns; column++) {
+                BufferedImage frame = Assets.createCompatibleImage(frameWidth, frameHeight);
+                Graphics2D g = frame.createGraphics();
+                g.drawImage(sheet, 0, 0, frameWidth, frameHeight,
+                        column * frameWidth, line * frameHeight,
+                        (column + 1) * frameWidth, (line + 1) * frameHeight, null);
+                g.dispose();
+                frames[line][column] = frame;
+            }
+        }
+    }
+
+    /**
+     * Returns the sliced frames of a sheet, slicing it on the first request only, so that every sprite
+     * sharing a sheet also shares its frames.
+     *
+     * @param sheet       The sprite sheet, can be null.
+     * @param frameWidth  The width of a frame in pixels.
+     * @param frameHeight The height of a frame in pixels.
+     * @return The sliced sheet, or null if the sheet is null.
+     */
+    public static synchronized SpriteSheet of(Image sheet, int frameWidth, int frameHeight) {
+        if (sheet == null) {
+            return null;
+        }
+        SpriteSheet spriteSheet = sheets.get(sheet);
+        if (spriteSheet == null || spriteSheet.frameWidth != frameWidth || spriteSheet.frameHeight != frameHeight) {
+            spriteSheet = new SpriteSheet(sheet, frameWidth, frameHeight);
+            sheets.put(sheet, spriteSheet);
+        }
+        return spriteSheet;
+    }
+
+    /**
+     * @param line   The line of the frame in the sheet.
+     * @param column The column of the frame in the sheet, wrapped around the number of columns.
+     * @return The frame.
+     */
+    public Image getFrame(int line, int column) {
+        Image[] lineFrames = frames[line];
+        return lineFrames[column % lineFrames.length];
+    }
+
+    public int getLineCount() {
+        return frames.length;
+    }
+
+    public int getColumnCount() {
+        return frames[0].length;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.List;
+
+/**
+ * Computes a 64-bit checksum of the state of a simulation: position, direction, speed and health of the
+ * moving sprites, and the game-over flag. Two runs fed with the same input must produce the same checksums
+ * on every tick; the first tick where they differ is where the simulations diverged.
+ */
+public final class StateChecksum {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StateChecksum() {
+    }
+
+    /**
+     * @param sprites  The moving sprites of the simulation, in a stable order.
+     * @param gameOver Indicates whether the game is over.
+     * @return The checksum of their state.
+     */
+    public static long of(List<DynamicSprite> sprites, boolean gameOver) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < sprites.size(); i++) {
+            DynamicSprite sprite = sprites.get(i);
+            hash = mix(hash, Double.doubleToLongBits(sprite.getX()));
+            hash = mix(hash, Double.doubleToLongBits(sprite.getY()));
+            hash = mix(hash, Double.doubleToLongBits(sprite.getSpeed()));
+            hash = mix(hash, sprite.getDirection().ordinal());
+            if (sprite instanceof HeroWithHealth hero) {
+                hash = mix(hash, hero.getHealth());
+            }
+        }
+        return mix(hash, gameOver ? 1 : 0);
+    }
+
+    /**
+     * Mixes the 8 bytes of a value into a FNV-1a hash.
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
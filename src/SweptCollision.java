@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * The SweptCollision class moves a box along a displacement through a set of obstacle boxes, with continuous
+ * collision detection: the box stops at the exact time of impact with the first obstacle on its way, then
+ * the rest of the displacement is projected on the contact surface so that the box slides along it. Nothing
+ * is skipped whatever the length of the displacement, so fast sprites neither stop short of walls nor
+ * tunnel through thin obstacles.
+ * The obstacles are collected first, with one broadphase query over the box swept by the whole
+ * displacement (see sweptMin and sweptSize): the slides never leave that box, so they are resolved against
+ * the same obstacles.
+ * Obstacles that already overlap the box before it moves are ignored, so that overlapping sprites can
+ * separate. Boxes that only touch do not collide.
+ * An instance is reused from one move to the next and must only be used by one thread at a time.
+ */
+public final class SweptCollision {
+    private static final ThreadLocal<SweptCollision> PER_THREAD = ThreadLocal.withInitial(SweptCollision::new);
+    private static final int MAX_SLIDES = 2; // Each impact cancels one axis of the motion, so two at most
+
+    private double[] obstacles = new double[4 * 16]; // Left, top, right and bottom of each obstacle
+    private int obstacleCount = 0;
+
+    // Result of the last move
+    private double resultX;
+    private double resultY;
+    private boolean hit; // Indicates whether an obstacle was on the way
+    private boolean blocked; // Indicates whether the box was stopped before the end of its slide
+    private double timeOfImpact = 1; // Fraction of the displacement travelled before the first impact
+
+    /**
+     * @return The instance of the calling thread, for callers without one of their own.
+     */
+    static SweptCollision forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Removes the collected obstacles, before collecting those of a new move.
+     */
+    public void clear() {
+        obstacleCount = 0;
+    }
+
+    /**
+     * Adds an obstacle box, usually from CollisionSpace.collectObstacles.
+     */
+    public void addObstacle(double x, double y, double width, double height) {
+        if (4 * obstacleCount == obstacles.length) {
+            obstacles = Arrays.copyOf(obstacles, obstacles.length * 2);
+        }
+        int i = 4 * obstacleCount++;
+        obstacles[i] = x;
+        obstacles[i + 1] = y;
+        obstacles[i + 2] = x + width;
+        obstacles[i + 3] = y + height;
+    }
+
+    public int getObstacleCount() {
+        return obstacleCount;
+    }
+
+    /**
+     * @return The x-coordinate (or y-coordinate) of the box swept by a box at the given position moving by the
+     * given displacement along the same axis.
+     */
+    public static double sweptMin(double position, double displacement) {
+        return displacement < 0 ? position + displacement : position;
+    }
+
+    /**
+     * @return The width (or height) of the box swept by a box of the given size moving by the given
+     * displacement along the same axis.
+     */
+    public static double sweptSize(double size, double displacement) {
+        return size + Math.abs(displacement);
+    }
+
+    /**
+     * Moves a box through the collected obstacles, stopping at the first impact and sliding along the
+     * contact surface for the rest of the displacement.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @param dx     The displacement along x.
+     * @param dy     The displacement along y.
+     * @return True if an obstacle was on the way. The position reached is given by getX() and getY().
+     */
+    public boolean move(double x, double y, double width, double height, double dx, double dy) {
+        hit = false;
+        blocked = false;
+        timeOfImpact = 1;
+        for (int slide = 0; slide <= MAX_SLIDES && (dx != 0 || dy != 0); slide++) {
+            // Earliest impact along the remaining displacement
+            double firstEntry = 1;
+            boolean normalAlongX = false;
+            double contact = 0; // Coordinate of the box on the blocked axis at the impact
+            for (int i = 0; i < 4 * obstacleCount; i += 4) {
+                double left = obstacles[i];
+                double top = obstacles[i + 1];
+                double right = obstacles[i + 2];
+                double bottom = obstacles[i + 3];
+                double entryX;
+                double exitX;
+                if (dx > 0) {
+                    entryX = (left - (x + width)) / dx;
+                    exitX = (right - x) / dx;
+                } else if (dx < 0) {
+                    entryX = (right - x) / dx;
+                    exitX = (left - (x + width)) / dx;
+                } else if (x < right && x + width > left) {
+                    entryX = Double.NEGATIVE_INFINITY;
+                    exitX = Double.POSITIVE_INFINITY;
+                } else {
+                    continue; // Never overlaps along x
+                }
+                double entryY;
+                double exitY;
+                if (dy > 0) {
+                    entryY = (top - (y + height)) / dy;
+                    exitY = (bottom - y) / dy;
+                } else if (dy < 0) {
+                    entryY = (bottom - y) / dy;
+                    exitY = (top - (y + height)) / dy;
+                } else if (y < bottom && y + height > top) {
+                    entryY = Double.NEGATIVE_INFINITY;
+                    exitY = Double.POSITIVE_INFINITY;
+                } else {
+                    continue; // Never overlaps along y
+                }
+                double entry = Math.max(entryX, entryY);
+                double exit = Math.min(exitX, exitY);
+                if (entry >= exit || entry < 0 || entry >= 1 || entry > firstEntry) {
+                    continue; // Missed, overlapping from the start, or behind an earlier impact
+                }
+                boolean alongX = entryX >= entryY;
+                if (entry == firstEntry && (normalAlongX || !alongX)) {
+                    continue; // Simultaneous impacts: x first, so the result does not depend on the order
+                }
+                firstEntry = entry;
+                normalAlongX = alongX;
+                if (normalAlongX) {
+                    contact = dx > 0 ? left - width : right;
+                } else {
+                    contact = dy > 0 ? top - height : bottom;
+                }
+            }
+            if (firstEntry >= 1) {
+                x += dx; // Nothing on the way
+                y += dy;
+                break;
+            }
+            if (!hit) {
+                hit = true;
+                timeOfImpact = firstEntry;
+            }
+            // Stop at the contact, then slide along it with the rest of the displacement
+            double remaining = 1 - firstEntry;
+            if (normalAlongX) {
+                x = contact; // Exactly against the obstacle, no drift from the division
+                y += dy * firstEntry;
+                dx = 0;
+                dy *= remaining;
+            } else {
+                x += dx * firstEntry;
+                y = contact;
+                dx *= remaining;
+                dy = 0;
+            }
+            blocked = dx == 0 && dy == 0;
+        }
+        resultX = x;
+        resultY = y;
+        return hit;
+    }
+
+    /**
+     * @return The x-coordinate reached by the last move.
+     */
+    public double getX() {
+        return resultX;
+    }
+
+    /**
+     * @return The y-coordinate reached by the last move.
+     */
+    public double getY() {
+        return resultY;
+    }
+
+    /**
+     * @return True if the last move hit an obstacle.
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * @return True if the last move was stopped by an obstacle, and did not just slide along it.
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * @return The fraction of the displacement travelled before the first impact of the last move, 1 if
+     * nothing was hit.
+     */
+    public double getTimeOfImpact() {
+        return timeOfImpact;
+    }
+}
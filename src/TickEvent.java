@@ -0,0 +1,47 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event committed by the GameLoop for each simulation tick while a recording enables it,
+ * with the time spent in each engine. Recorded with, for instance:
+ *   java -XX:StartFlightRecording=filename=game.jfr Main
+ */
+@Name("dungeon.Tick")
+@Label("Simulation Tick")
+@Category({"Dungeon Crawler", "Game Loop"})
+@Description("One fixed step of the simulation")
+class TickEvent extends jdk.jfr.Event {
+    private static final EventType TYPE = EventType.getEventType(TickEvent.class);
+
+    @Label("Tick")
+    long tick;
+
+    @Label("Input and Game Logic")
+    @Timespan(Timespan.NANOSECONDS)
+    long gameNanos;
+
+    @Label("Tick Engines")
+    @Timespan(Timespan.NANOSECONDS)
+    long tickEnginesNanos;
+
+    @Label("Physics")
+    @Timespan(Timespan.NANOSECONDS)
+    long physicsNanos;
+
+    @Label("Moving Sprites")
+    int movingSprites;
+
+    @Label("Collision Checks")
+    long collisionChecks;
+
+    /**
+     * @return True if a running recording enables the event, checked without creating one.
+     */
+    static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,305 @@
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.zip.CRC32C;
+
+/**
+ * The TileMap class stores a rectangular block of tiles as one byte per tile, each byte being the id of a
+ * TileType in a shared palette. It replaces one Sprite object per tile: collision and rendering work
+ * directly on the tile ids. A TileMap can be a whole level or a chunk of it, placed at an origin in tiles.
+ * The ids are held in a ByteBuffer, so a tile map can also be a view over a memory-mapped level file; a
+ * read-only buffer is copied to the heap the first time a tile is set.
+ */
+public class TileMap implements CollisionSpace {
+    public static final byte EMPTY = 0; // Id of the empty tile, present in every palette
+
+    private final int columns; // Number of tiles per line
+    private final int rows; // Number of lines of tiles
+    private final int originColumn; // Column of the first tile in the level
+    private final int originRow; // Line of the first tile in the level
+    private final int tileWidth; // Width of a tile in pixels
+    private final int tileHeight; // Height of a tile in pixels
+    private final TileType[] palette; // Tile types indexed by id
+    private volatile ByteBuffer tiles; // Tile ids, indexed by row * columns + column, replaced once if read-only
+    private int modificationCount = 0; // Number of calls to setTileId, lets caches built from the tiles expire
+    private long checksum; // Checksum of the tile ids, see getChecksum
+    private int checksumModificationCount = -1; // Modification count the checksum was computed at
+
+    /**
+     * Constructs a TileMap filled with empty tiles.
+     *
+     * @param columns      The number of tiles per line.
+     * @param rows         The number of lines of tiles.
+     * @param originColumn The column of the first tile in the level.
+     * @param originRow    The line of the first tile in the level.
+     * @param tileWidth    The width of a tile in pixels.
+     * @param tileHeight   The height of a tile in pixels.
+     * @param palette      The tile types indexed by id, the first one being the empty tile.
+     */
+    public TileMap(int columns, int rows, int originColumn, int originRow, int tileWidth, int tileHeight,
+                   TileType[] palette) {
+        this(columns, rows, originColumn, originRow, tileWidth, tileHeight, palette,
+                ByteBuffer.allocate(Math.multiplyExact(columns, rows)));
+    }
+
+    /**
+     * Constructs a TileMap over existing tile ids, without copying them. A read-only buffer, such as a
+     * memory-mapped level file, is only copied when a tile is set.
+     *
+     * @param columns      The number of tiles per line.
+     * @param rows         The number of lines of tiles.
+     * @param originColumn The column of the first tile in the level.
+     * @param originRow    The line of the first tile in the level.
+     * @param tileWidth    The width of a tile in pixels.
+     * @param tileHeight   The height of a tile in pixels.
+     * @param palette      The tile types indexed by id, the first one being the empty tile.
+     * @param tiles        The columns * rows tile ids, starting at index 0 of the buffer.
+     */
+    public TileMap(int columns, int rows, int originColumn, int originRow, int tileWidth, int tileHeight,
+                   TileType[] palette, ByteBuffer tiles) {
+        if (tiles.capacity() < (long) columns * rows) {
+            throw new IllegalArgumentException("Not enough tile ids for a " + columns + "x" + rows + " map");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.originColumn = originColumn;
+        this.originRow = originRow;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.palette = palette;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Builds the table giving the id of the tile type represented by each character of a level file.
+     *
+     * @param palette The tile types indexed by id.
+     * @return A table of 256 ids indexed by character, EMPTY for the characters of no type.
+     */
+    public static byte[] createSymbolTable(TileType[] palette) {
+        byte[] table = new byte[256];
+        for (int id = 1; id < palette.length; id++) {
+            if (palette[id] != palette[EMPTY]) { // Skip the unused ids of a padded palette
+                table[palette[id].getSymbol() & 0xFF] = (byte) id;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return The id of a tile, or EMPTY outside of the map. Coordinates are in tiles, relative to the level.
+     */
+    public byte getTileId(int column, int row) {
+        column -= originColumn;
+        row -= originRow;
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return EMPTY;
+        }
+        return tiles.get(row * columns + column);
+    }
+
+    /**
+     * Sets the id of a tile. Coordinates are in tiles, relative to the level. The first call on a map over
+     * read-only tile ids copies them to the heap; the copy is published to the other threads once complete.
+     */
+    public void setTileId(int column, int row, byte id) {
+        if (tiles.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocate(columns * rows);
+            copy.put(tiles.duplicate().position(0).limit(columns * rows));
+            tiles = copy;
+        }
+        tiles.put((row - originRow) * columns + (column - originColumn), id);
+        modificationCount++;
+    }
+
+    /**
+     * @return The number of tiles set since the map was created. Data derived from the tiles is up to date
+     * as long as this number did not change.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    public TileType getTileType(int column, int row) {
+        return palette[getTileId(column, row) & 0xFF];
+    }
+
+    public boolean isSolid(int column, int row) {
+        return palette[getTileId(column, row) & 0xFF].isSolid();
+    }
+
+    /**
+     * Checks whether a solid tile intersects the given rectangle, looking only at the overlapped tiles.
+     */
+    @Override
+    public boolean anyIntersects(double x, double y, double width, double height, Sprite ignore) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        int minColumn = Math.max(originColumn, (int) Math.floor(x / tileWidth));
+        int maxColumn = Math.min(originColumn + columns - 1, (int) Math.floor(Math.nextDown(x + width) / tileWidth));
+        int minRow = Math.max(originRow, (int) Math.floor(y / tileHeight));
+        int maxRow = Math.min(originRow + rows - 1, (int) Math.floor(Math.nextDown(y + height) / tileHeight));
+        ByteBuffer ids = tiles;
+        for (int row = minRow; row <= maxRow; row++) {
+            int index = (row - originRow) * columns;
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (palette[ids.get(index + column - originColumn) & 0xFF].isSolid()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the solid tiles intersecting the given rectangle, looking only at the overlapped tiles.
+     */
+    @Override
+    public void collectObstacles(double x, double y, double width, double height, Sprite ignore,
+                                 SweptCollision collision) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int minColumn = Math.max(originColumn, (int) Math.floor(x / tileWidth));
+        int maxColumn = Math.min(originColumn + columns - 1, (int) Math.floor(Math.nextDown(x + width) / tileWidth));
+        int minRow = Math.max(originRow, (int) Math.floor(y / tileHeight));
+        int maxRow = Math.min(originRow + rows - 1, (int) Math.floor(Math.nextDown(y + height) / tileHeight));
+        ByteBuffer ids = tiles;
+        for (int row = minRow; row <= maxRow; row++) {
+            int index = (row - originRow) * columns;
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (palette[ids.get(index + column - originColumn) & 0xFF].isSolid()) {
+                    collision.addObstacle((double) column * tileWidth, (double) row * tileHeight, tileWidth, tileHeight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the tiles intersecting the given rectangle, in level coordinates.
+     *
+     * @param g      The Graphics context used for rendering.
+     * @param x      The x-coordinate of the drawn area.
+     * @param y      The y-coordinate of the drawn area.
+     * @param width  The width of the drawn area.
+     * @param height The height of the drawn area.
+     */
+    public void draw(Graphics g, double x, double y, double width, double height) {
+        int minColumn = Math.max(originColumn, (int) Math.floor(x / tileWidth));
+        int maxColumn = Math.min(originColumn + columns - 1, (int) Math.floor((x + width) / tileWidth));
+        int minRow = Math.max(originRow, (int) Math.floor(y / tileHeight));
+        int maxRow = Math.min(originRow + rows - 1, (int) Math.floor((y + height) / tileHeight));
+        ByteBuffer ids = tiles;
+        for (int row = minRow; row <= maxRow; row++) {
+            int index = (row - originRow) * columns;
+            for (int column = minColumn; column <= maxColumn; column++) {
+                Image image = palette[ids.get(index + column - originColumn) & 0xFF].getImage();
+                if (image != null) {
+                    g.drawImage(image, column * tileWidth, row * tileHeight, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates one sprite per non-empty tile, for code that still works on sprite lists.
+     *
+     * @param solidOnly True to only create the sprites of solid tiles.
+     * @return The sprites of the tiles, SolidSprites for solid tiles.
+     */
+    public ArrayList<Sprite> toSprites(boolean solidOnly) {
+        ArrayList<Sprite> sprites = new ArrayList<>();
+        ByteBuffer ids = tiles;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                byte id = ids.get(row * columns + column);
+                TileType type = palette[id & 0xFF];
+                if (id == EMPTY || (solidOnly && !type.isSolid())) {
+                    continue;
+                }
+                double x = (double) (originColumn + column) * tileWidth;
+                double y = (double) (originRow + row) * tileHeight;
+                sprites.add(type.isSolid() ? new SolidSprite(x, y, type.getImage(), tileWidth, tileHeight)
+                        : new Sprite(x, y, type.getImage(), tileWidth, tileHeight));
+            }
+        }
+        return sprites;
+    }
+
+    /**
+     * @return True if the map overlaps the given rectangle, in level coordinates.
+     */
+    public boolean overlaps(double x, double y, double width, double height) {
+        return x < getPixelX() + getPixelWidth() && x + width > getPixelX()
+                && y < getPixelY() + getPixelHeight() && y + height > getPixelY();
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getOriginColumn() {
+        return originColumn;
+    }
+
+    public int getOriginRow() {
+        return originRow;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * @return The tile ids, indexed by row * columns + column. The buffer changes if a tile is set on a
+     * read-only one.
+     */
+    public ByteBuffer getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Computes a checksum of the tile ids on the first call, and again only once a tile was set. A save keeps
+     * it to check that it is loaded on the same level.
+     *
+     * @return The CRC-32C of the columns * rows tile ids.
+     */
+    public long getChecksum() {
+        if (checksumModificationCount != modificationCount) {
+            CRC32C crc = new CRC32C();
+            crc.update(tiles.duplicate().position(0).limit(columns * rows));
+            checksum = crc.getValue();
+            checksumModificationCount = modificationCount;
+        }
+        return checksum;
+    }
+
+    public TileType[] getPalette() {
+        return palette;
+    }
+
+    public double getPixelX() {
+        return (double) originColumn * tileWidth;
+    }
+
+    public double getPixelY() {
+        return (double) originRow * tileHeight;
+    }
+
+    public double getPixelWidth() {
+        return (double) columns * tileWidth;
+    }
+
+    public double getPixelHeight() {
+        return (double) rows * tileHeight;
+    }
+}
@@ -0,0 +1,44 @@
+import java.awt.*;
+
+/**
+ * The TileType class describes a kind of tile of a level: the character representing it in level files,
+ * its image, whether sprites can walk through it and the damage it deals. Types are shared by every tile
+ * of a TileMap, which only stores their ids.
+ */
+public class TileType {
+    private final byte symbol; // Character representing the tile in level files
+    private final Image image; // Image drawn for the tile, null for an empty tile
+    private final boolean solid; // Indicates whether sprites collide with the tile
+    private final int damage; // Damage dealt to the hero touching the tile
+
+    /**
+     * Constructs a TileType.
+     *
+     * @param symbol The character representing the tile in level files.
+     * @param image  The image drawn for the tile, null for an empty tile.
+     * @param solid  True if sprites collide with the tile.
+     * @param damage The damage dealt to the hero touching the tile.
+     */
+    public TileType(char symbol, Image image, boolean solid, int damage) {
+        this.symbol = (byte) symbol;
+        this.image = image;
+        this.solid = solid;
+        this.damage = damage;
+    }
+
+    public byte getSymbol() {
+        return symbol;
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    public boolean isSolid() {
+        return solid;
+    }
+
+    public int getDamage() {
+        return damage;
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The WorldSave class is the saved state of a world: everything the PhysicEngine and the GameEngine change
+ * while the game runs. It is captured on the simulation thread between two ticks, which only copies the
+ * sprites into arrays; encoding and writing the save can then happen on any thread while the game goes on.
+ * The tiles never change while the game runs, so they are not saved: each tile map is referenced by its
+ * position, size and the checksum of its tiles, and a save is only loaded into a world built from the same
+ * level, with the same moving sprites. A save stays small and quick to write whatever the size of the level.
+ *
+ * File layout (big-endian):
+ *   int MAGIC, int VERSION, long tick count, byte flags, int held arrows,
+ *   int number of sprites, int number of contacts, int number of tile maps,
+ *   for each moving sprite: double x, y, previous x, previous y, heading x, heading y, speed,
+ *                           int health (-1 if not a hero), byte direction,
+ *   for each contact: int index of the tracked sprite, byte kind, int index of the sprite or column, int row,
+ *   for each tile map: int origin column, origin row, columns, rows, long checksum of the tile ids.
+ */
+public final class WorldSave {
+    static final int MAGIC = 0x44435356; // "DCSV"
+    static final int VERSION = 2;
+    private static final int GAME_OVER = 1; // Flag: the game is over
+    private static final int HEADER_SIZE = 33;
+    private static final int MOTION_FIELDS = 7; // Doubles per moving sprite
+    private static final int SPRITE_SIZE = MOTION_FIELDS * Double.BYTES + Integer.BYTES + 1;
+    private static final int CONTACT_SIZE = 3 * Integer.BYTES + 1;
+    private static final int TILE_MAP_SIZE = 4 * Integer.BYTES + Long.BYTES;
+    private static final long MAX_SIZE = Integer.MAX_VALUE - 8; // Largest save that fits in an array
+    private static final byte TILE = 0; // Kinds of contact: a trigger tile
+    private static final byte MOVING = 1; // A moving sprite, by index in the moving sprites
+    private static final byte ENVIRONMENT = 2; // A sprite of the environment, by index
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final long tickCount; // Tick the world was captured at
+    private final boolean gameOver;
+    private final int heldArrows;
+    private final double[] motion; // Position, previous position, heading and speed of each moving sprite
+    private final int[] health; // Health of each moving sprite, -1 if it is not a hero
+    private final byte[] directions; // Ordinal of the direction of each moving sprite
+    private final int[] contacts; // Index of the tracked sprite, kind, index or column, row, per contact
+    private final int[] tileMaps; // Origin column, origin row, columns and rows of each tile map
+    private final long[] tileChecksums; // Checksum of the tiles of each tile map
+
+    private WorldSave(long tickCount, boolean gameOver, int heldArrows, double[] motion, int[] health,
+                      byte[] directions, int[] contacts, int[] tileMaps, long[] tileChecksums) {
+        this.tickCount = tickCount;
+        this.gameOver = gameOver;
+        this.heldArrows = heldArrows;
+        this.motion = motion;
+        this.health = health;
+        this.directions = directions;
+        this.contacts = contacts;
+        this.tileMaps = tileMaps;
+        this.tileChecksums = tileChecksums;
+    }
+
+    /**
+     * Captures the state of a world. Must be called by the simulation thread, between two ticks. Only copies
+     * values into arrays, the save is encoded by writeTo.
+     *
+     * @param gameEngine   The game rules of the world.
+     * @param physicEngine The physics of the world.
+     * @return The captured state, which does not change when the world does.
+     */
+    public static WorldSave capture(GameEngine gameEngine, PhysicEngine physicEngine) {
+        List<DynamicSprite> sprites = physicEngine.getMovingSpriteList();
+        int spriteCount = sprites.size();
+        double[] motion = new double[spriteCount * MOTION_FIELDS];
+        int[] health = new int[spriteCount];
+        byte[] directions = new byte[spriteCount];
+        for (int i = 0; i < spriteCount; i++) {
+            DynamicSprite sprite = sprites.get(i);
+            int offset = i * MOTION_FIELDS;
+            motion[offset] = sprite.getX();
+            motion[offset + 1] = sprite.getY();
+            motion[offset + 2] = sprite.getPreviousX();
+            motion[offset + 3] = sprite.getPreviousY();
+            motion[offset + 4] = sprite.getHeadingX();
+            motion[offset + 5] = sprite.getHeadingY();
+            motion[offset + 6] = sprite.getSpeed();
+            health[i] = sprite instanceof HeroWithHealth hero ? hero.getHealth() : -1;
+            directions[i] = (byte) sprite.getDirection().ordinal();
+        }
+
+        ArrayList<Contact> trackedContacts = new ArrayList<>();
+        ArrayList<Integer> trackedIndexes = new ArrayList<>();
+        ContactTracker contactTracker = physicEngine.peekContactTracker();
+        if (contactTracker != null) {
+            for (DynamicSprite tracked : contactTracker.getTrackedSprites()) {
+                int index = sprites.indexOf(tracked);
+                if (index >= 0) {
+                    for (Contact contact : contactTracker.getContacts(tracked)) {
+                        trackedContacts.add(contact);
+                        trackedIndexes.add(index);
+                    }
+                }
+            }
+        }
+        int[] contacts = new int[trackedContacts.size() * 4];
+        for (int i = 0; i < trackedContacts.size(); i++) {
+            Contact contact = trackedContacts.get(i);
+            contacts[i * 4] = trackedIndexes.get(i);
+            if (contact.isTile()) {
+                contacts[i * 4 + 1] = TILE;
+                contacts[i * 4 + 2] = contact.getColumn();
+                contacts[i * 4 + 3] = contact.getRow();
+            } else if (contact.getOther() instanceof DynamicSprite other && sprites.contains(other)) {
+                contacts[i * 4 + 1] = MOVING;
+                contacts[i * 4 + 2] = sprites.indexOf(other);
+            } else {
+                // A sprite of neither list is saved as missing, its overlap begins again after a load
+                contacts[i * 4 + 1] = ENVIRONMENT;
+                contacts[i * 4 + 2] = physicEngine.getEnvironment().indexOf(contact.getOther());
+            }
+        }
+
+        List<TileMap> maps = physicEngine.getTileMaps();
+        int[] tileMaps = new int[maps.size() * 4];
+        long[] tileChecksums = new long[maps.size()];
+        for (int i = 0; i < maps.size(); i++) {
+            TileMap tileMap = maps.get(i);
+            tileMaps[i * 4] = tileMap.getOriginColumn();
+            tileMaps[i * 4 + 1] = tileMap.getOriginRow();
+            tileMaps[i * 4 + 2] = tileMap.getColumns();
+            tileMaps[i * 4 + 3] = tileMap.getRows();
+            tileChecksums[i] = tileMap.getChecksum(); // Computed once per tile map
+        }
+        return new WorldSave(gameEngine.getTickCount(), gameEngine.isGameOver(), gameEngine.getHeldArrows(),
+                motion, health, directions, contacts, tileMaps, tileChecksums);
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return The size of the save file in bytes.
+     */
+    public int getSize() {
+        return HEADER_SIZE + directions.length * SPRITE_SIZE + contacts.length / 4 * CONTACT_SIZE
+                + tileChecksums.length * TILE_MAP_SIZE;
+    }
+
+    /**
+     * @return The save, encoded as in the file.
+     */
+    private ByteBuffer encode() {
+        ByteBuffer state = ByteBuffer.allocate(getSize());
+        state.putInt(MAGIC).putInt(VERSION).putLong(tickCount).put((byte) (gameOver ? GAME_OVER : 0))
+                .putInt(heldArrows).putInt(directions.length).putInt(contacts.length / 4)
+                .putInt(tileChecksums.length);
+        for (int i = 0; i < directions.length; i++) {
+            for (int field = 0; field < MOTION_FIELDS; field++) {
+                state.putDouble(motion[i * MOTION_FIELDS + field]);
+            }
+            state.putInt(health[i]).put(directions[i]);
+        }
+        for (int i = 0; i < contacts.length; i += 4) {
+            state.putInt(contacts[i]).put((byte) contacts[i + 1]).putInt(contacts[i + 2]).putInt(contacts[i + 3]);
+        }
+        for (int i = 0; i < tileChecksums.length; i++) {
+            state.putInt(tileMaps[i * 4]).putInt(tileMaps[i * 4 + 1]).putInt(tileMaps[i * 4 + 2])
+                    .putInt(tileMaps[i * 4 + 3]).putLong(tileChecksums[i]);
+        }
+        return state.flip();
+    }
+
+    /**
+     * Writes the save to a file and forces it to the disk. The file is written next to the destination first
+     * and then moved over it, so a crash while saving leaves the previous save intact. Can be called by any
+     * thread, while the world goes on.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeTo(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buffer = encode();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true); // Makes the move itself durable, where directories can be opened
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Loads a save into a world built from the same level, with the same moving sprites in the same order.
+     * Every tile map of the save must be found in the world, at the same position and with the same size,
+     * holding the tiles it held when the world was saved. Must be called by the simulation thread, between
+     * two ticks.
+     *
+     * @param path         The save file.
+     * @param gameEngine   The game rules of the world.
+     * @param physicEngine The physics of the world.
+     * @return The tick the save was captured at.
+     * @throws IOException If the file cannot be read, is not a save, or does not fit the world.
+     */
+    public static long load(Path path, GameEngine gameEngine, PhysicEngine physicEngine) throws IOException {
+        return load(path, gameEngine, physicEngine, false);
+    }
+
+    /**
+     * Loads a save into a world built from the same level, see load(Path, GameEngine, PhysicEngine).
+     *
+     * @param path          The save file.
+     * @param gameEngine    The game rules of the world.
+     * @param physicEngine  The physics of the world.
+     * @param streamedLevel True if the level of the world is streamed by chunks: the tile maps of the save
+     *                      that the world does not have, the chunks that are not resident, are then ignored.
+     *                      The resident ones must still match.
+     * @return The tick the save was captured at.
+     * @throws IOException If the file cannot be read, is not a save, or does not fit the world.
+     */
+    public static long load(Path path, GameEngine gameEngine, PhysicEngine physicEngine, boolean streamedLevel)
+            throws IOException {
+        if (Files.size(path) > MAX_SIZE) {
+            throw new IOException(path + " is not a saved world");
+        }
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            return load(file, path, gameEngine, physicEngine, streamedLevel);
+        } catch (RuntimeException e) {
+            // Only the checks can fail, they all come before the world changes
+            throw new IOException("Corrupted save " + path, e);
+        }
+    }
+
+    private static long load(ByteBuffer file, Path path, GameEngine gameEngine, PhysicEngine physicEngine,
+                             boolean streamedLevel) throws IOException {
+        if (file.limit() < HEADER_SIZE || file.getInt() != MAGIC) {
+            throw new IOException(path + " is not a saved world");
+        }
+        int version = file.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save version " + version + " in " + path);
+        }
+        long tickCount = file.getLong();
+        boolean gameOver = (file.get() & GAME_OVER) != 0;
+        int heldArrows = file.getInt();
+        int spriteCount = file.getInt();
+        int contactCount = file.getInt();
+        int tileMapCount = file.getInt();
+        List<DynamicSprite> sprites = physicEngine.getMovingSpriteList();
+        if (spriteCount != sprites.size()) {
+            throw new IOException("The save has " + spriteCount + " moving sprites, the world "
+                    + sprites.size());
+        }
+        long size = HEADER_SIZE + (long) spriteCount * SPRITE_SIZE + (long) contactCount * CONTACT_SIZE
+                + (long) tileMapCount * TILE_MAP_SIZE;
+        if (contactCount < 0 || tileMapCount < 0 || size > file.limit()) {
+            throw new IOException("Truncated save " + path);
+        }
+
+        // Everything is checked before the world changes, so a bad save leaves it untouched
+        int spritesStart = file.position();
+        int tileMapsStart = spritesStart + spriteCount * SPRITE_SIZE + contactCount * CONTACT_SIZE;
+        for (int i = 0; i < spriteCount; i++) {
+            int direction = file.get(spritesStart + i * SPRITE_SIZE + SPRITE_SIZE - 1);
+            if (direction < 0 || direction >= DIRECTIONS.length) {
+                throw new IOException("Corrupted save " + path + ": unknown direction " + direction);
+            }
+        }
+        int contactsStart = spritesStart + spriteCount * SPRITE_SIZE;
+        for (int i = 0; i < contactCount; i++) {
+            byte kind = file.get(contactsStart + i * CONTACT_SIZE + Integer.BYTES);
+            if (kind != TILE && kind != MOVING && kind != ENVIRONMENT) {
+                throw new IOException("Corrupted save " + path + ": unknown contact kind " + kind);
+            }
+        }
+        List<TileMap> tileMaps = physicEngine.getTileMaps();
+        for (int i = 0; i < tileMapCount; i++) {
+            int offset = tileMapsStart + i * TILE_MAP_SIZE;
+            TileMap tileMap = findTileMap(tileMaps, file.getInt(offset), file.getInt(offset + 4),
+                    file.getInt(offset + 8), file.getInt(offset + 12));
+            if (tileMap == null ? !streamedLevel : tileMap.getChecksum() != file.getLong(offset + 16)) {
+                throw new IOException(path + " was saved on another level");
+            }
+        }
+
+        for (int i = 0; i < spriteCount; i++) {
+            DynamicSprite sprite = sprites.get(i);
+            double x = file.getDouble();
+            double y = file.getDouble();
+            double previousX = file.getDouble();
+            double previousY = file.getDouble();
+            double headingX = file.getDouble();
+            double headingY = file.getDouble();
+            double speed = file.getDouble();
+            int health = file.getInt();
+            Direction direction = DIRECTIONS[file.get()];
+            sprite.restoreMotion(x, y, direction, headingX, headingY, speed);
+            sprite.restorePreviousPosition(previousX, previousY);
+            if (sprite instanceof HeroWithHealth hero && health >= 0) {
+                hero.setHealth(health);
+            }
+        }
+        physicEngine.reindexDynamicObstacles(); // The sprites were placed, not moved through the grid
+
+        ContactTracker contactTracker = physicEngine.peekContactTracker();
+        if (contactTracker != null) {
+            contactTracker.clearContacts();
+        }
+        for (int i = 0; i < contactCount; i++) {
+            int trackedIndex = file.getInt();
+            byte kind = file.get();
+            int first = file.getInt();
+            int second = file.getInt();
+            if (trackedIndex < 0 || trackedIndex >= spriteCount) {
+                continue;
+            }
+            DynamicSprite tracked = sprites.get(trackedIndex);
+            if (kind == TILE) {
+                TileType tile = findTileType(tileMaps, first, second);
+                if (tile != null) {
+                    physicEngine.getContactTracker().restoreContact(tracked, null, tile, first, second);
+                }
+            } else {
+                List<? extends Sprite> others = kind == MOVING ? sprites : physicEngine.getEnvironment();
+                if (first >= 0 && first < others.size()) {
+                    physicEngine.getContactTracker().restoreContact(tracked, others.get(first), null, 0, 0);
+                }
+            }
+        }
+
+        gameEngine.restoreState(tickCount, gameOver, heldArrows);
+        return tickCount;
+    }
+
+    /**
+     * @return The tile map at the given position with the given size, or null if the world has none.
+     */
+    private static TileMap findTileMap(List<TileMap> tileMaps, int originColumn, int originRow, int columns,
+                                       int rows) {
+        for (TileMap tileMap : tileMaps) {
+            if (tileMap.getOriginColumn() == originColumn && tileMap.getOriginRow() == originRow
+                    && tileMap.getColumns() == columns && tileMap.getRows() == rows) {
+                return tileMap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The type of a tile of the level, or null if no tile map holds it.
+     */
+    private static TileType findTileType(List<TileMap> tileMaps, int column, int row) {
+        for (TileMap tileMap : tileMaps) {
+            if (column >= tileMap.getOriginColumn() && column < tileMap.getOriginColumn() + tileMap.getColumns()
+                    && row >= tileMap.getOriginRow() && row < tileMap.getOriginRow() + tileMap.getRows()) {
+                return tileMap.getTileType(column, row);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,231 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The WorldSnapshot class is an immutable copy of the state of the moving sprites at the end of a tick.
+ * The simulation captures a new snapshot after its ticks and publishes it, while the rendering keeps drawing
+ * the previous one: the two never share mutable state, so rendering can run on another thread than the
+ * simulation. Each snapshot holds both the previous and the current position of the sprites, which is
+ * all the rendering needs to interpolate between the last two ticks.
+ * Only the images and sizes of the sprites, which never change, are read from the sprites themselves.
+ * The sprites are indexed in a grid by the cell of their top-left corner, so that the rendering finds those
+ * inside the view without testing every sprite of the level. The grid covers the sprites only, with about
+ * one cell per sprite, and is built once per snapshot with a counting sort.
+ */
+public final class WorldSnapshot {
+    private static final double MIN_CELL_SIZE = 256; // Smallest cell of the index, in pixels
+
+    private final long tick; // Number of ticks simulated when the snapshot was captured
+    private final boolean gameOver; // Indicates whether the game was over
+    private final DynamicSprite[] sprites; // Captured sprites, only used for their images and sizes
+    private final double[] x; // X-coordinates at the end of the tick
+    private final double[] y; // Y-coordinates at the end of the tick
+    private final double[] previousX; // X-coordinates at the start of the tick
+    private final double[] previousY; // Y-coordinates at the start of the tick
+    private final Direction[] directions; // Directions of the sprites
+    private final int[] health; // Health of the heroes, -1 for the other sprites
+
+    // Index of the sprites by cell, built by capture()
+    private double originX; // Top-left corner of the grid: the smallest coordinates of the sprites
+    private double originY;
+    private double cellSize; // Size of a cell in pixels
+    private int columns; // Number of columns of the grid
+    private int rows; // Number of rows of the grid
+    private int[] cellStarts; // Position in cellSprites of the first sprite of each cell, and the sprite count
+    private int[] cellSprites; // Indices of the sprites, cell by cell, in increasing order within a cell
+    private double maxWidth; // Largest sprite, how far left or up of a rectangle a sprite intersecting it can start
+    private double maxHeight;
+
+    private WorldSnapshot(long tick, boolean gameOver, int count) {
+        this.tick = tick;
+        this.gameOver = gameOver;
+        this.sprites = new DynamicSprite[count];
+        this.x = new double[count];
+        this.y = new double[count];
+        this.previousX = new double[count];
+        this.previousY = new double[count];
+        this.directions = new Direction[count];
+        this.health = new int[count];
+    }
+
+    /**
+     * Copies the state of the given sprites. Must be called by the simulation thread, between two ticks.
+     *
+     * @param tick     The number of ticks simulated so far.
+     * @param gameOver Indicates whether the game is over.
+     * @param sprites  The moving sprites to capture.
+     * @return The snapshot.
+     */
+    public static WorldSnapshot capture(long tick, boolean gameOver, List<DynamicSprite> sprites) {
+        WorldSnapshot snapshot = new WorldSnapshot(tick, gameOver, sprites.size());
+        for (int i = 0; i < sprites.size(); i++) {
+            DynamicSprite sprite = sprites.get(i);
+            snapshot.sprites[i] = sprite;
+            snapshot.x[i] = sprite.getX();
+            snapshot.y[i] = sprite.getY();
+            snapshot.previousX[i] = sprite.getPreviousX();
+            snapshot.previousY[i] = sprite.getPreviousY();
+            snapshot.directions[i] = sprite.getDirection();
+            snapshot.health[i] = sprite instanceof HeroWithHealth hero ? hero.getHealth() : -1;
+        }
+        snapshot.buildIndex();
+        return snapshot;
+    }
+
+    /**
+     * Sorts the sprites by cell: counts the sprites of each cell, turns the counts into the end of each cell
+     * in cellSprites, then places the sprites from the last one, which leaves the start of each cell.
+     */
+    private void buildIndex() {
+        int count = sprites.length;
+        double maxX = 0;
+        double maxY = 0;
+        if (count > 0) {
+            originX = Double.MAX_VALUE;
+            originY = Double.MAX_VALUE;
+            maxX = -Double.MAX_VALUE;
+            maxY = -Double.MAX_VALUE;
+        }
+        for (int i = 0; i < count; i++) {
+            originX = Math.min(originX, x[i]);
+            originY = Math.min(originY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxWidth = Math.max(maxWidth, sprites[i].width);
+            maxHeight = Math.max(maxHeight, sprites[i].height);
+        }
+        cellSize = Math.max(MIN_CELL_SIZE, Math.sqrt((maxX - originX) * (maxY - originY) / Math.max(1, count)));
+        columns = (int) ((maxX - originX) / cellSize) + 1;
+        rows = (int) ((maxY - originY) / cellSize) + 1;
+        cellStarts = new int[columns * rows + 1];
+        cellSprites = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellStarts[cellOf(i)]++;
+        }
+        for (int cell = 1; cell < cellStarts.length; cell++) {
+            cellStarts[cell] += cellStarts[cell - 1];
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            cellSprites[--cellStarts[cellOf(i)]] = i;
+        }
+    }
+
+    private int cellOf(int index) {
+        return (int) ((y[index] - originY) / cellSize) * columns + (int) ((x[index] - originX) / cellSize);
+    }
+
+    /**
+     * Finds the sprites whose bounds, at their position of the end of the tick, intersect the given rectangle,
+     * looking only at the cells where such a sprite can start.
+     *
+     * @param x      The x-coordinate of the rectangle.
+     * @param y      The y-coordinate of the rectangle.
+     * @param width  The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param result Receives the indices of the sprites found, in the order of the snapshot. Must hold size()
+     *               indices.
+     * @return The number of sprites found.
+     */
+    public int query(double x, double y, double width, double height, int[] result) {
+        int minColumn = (int) Math.max(0, Math.floor((x - maxWidth - originX) / cellSize));
+        int maxColumn = (int) Math.min(columns - 1, Math.floor((x + width - originX) / cellSize));
+        int minRow = (int) Math.max(0, Math.floor((y - maxHeight - originY) / cellSize));
+        int maxRow = (int) Math.min(rows - 1, Math.floor((y + height - originY) / cellSize));
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    if (intersects(cellSprites[i], x, y, width, height)) {
+                        result[count++] = cellSprites[i];
+                    }
+                }
+            }
+        }
+        Arrays.sort(result, 0, count); // Sprites overlap in the order they are drawn
+        return count;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public int size() {
+        return sprites.length;
+    }
+
+    public DynamicSprite getSprite(int index) {
+        return sprites[index];
+    }
+
+    /**
+     * @return The index of the sprite in the snapshot, or -1 if it was not captured.
+     */
+    public int indexOf(DynamicSprite sprite) {
+        for (int i = 0; i < sprites.length; i++) {
+            if (sprites[i] == sprite) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The x-coordinate of a sprite interpolated between the previous and current ticks.
+     */
+    public double interpolatedX(int index, double alpha) {
+        return previousX[index] + (x[index] - previousX[index]) * alpha;
+    }
+
+    /**
+     * @return The y-coordinate of a sprite interpolated between the previous and current ticks.
+     */
+    public double interpolatedY(int index, double alpha) {
+        return previousY[index] + (y[index] - previousY[index]) * alpha;
+    }
+
+    /**
+     * Checks whether the bounds of a sprite, at its position of the end of the tick, intersect the given rectangle.
+     *
+     * @return True if the bounds intersect the rectangle, false otherwise.
+     */
+    public boolean intersects(int index, double x, double y, double width, double height) {
+        DynamicSprite sprite = sprites[index];
+        return x < this.x[index] + sprite.width && x + width > this.x[index]
+                && y < this.y[index] + sprite.height && y + height > this.y[index];
+    }
+
+    public Direction getDirection(int index) {
+        return directions[index];
+    }
+
+    /**
+     * @return The health of a hero, or -1 for the other sprites.
+     */
+    public int getHealth(int index) {
+        return health[index];
+    }
+
+    /**
+     * Draws a sprite with its captured state.
+     *
+     * @param index      The index of the sprite.
+     * @param g          The Graphics context used for rendering.
+     * @param alpha      The interpolation factor between the previous and current ticks.
+     * @param timeMillis The time of the drawn frame, selecting the frame of the animation.
+     */
+    public void draw(int index, Graphics g, double alpha, long timeMillis) {
+        double drawX = interpolatedX(index, alpha);
+        double drawY = interpolatedY(index, alpha);
+        DynamicSprite sprite = sprites[index];
+        sprite.drawAt(g, drawX, drawY, directions[index], sprite.getAnimationFrame(timeMillis));
+        if (health[index] >= 0) {
+            ((HeroWithHealth) sprite).drawHealthBar(g, drawX, drawY, health[index]);
+        }
+    }
+}